@@ -1,7 +1,5 @@
 package com.crypto.portfolio.api;
 
-import java.util.Objects;
-
 public class Equity extends Instrument {
 
 	/**
@@ -34,14 +32,8 @@ public class Equity extends Instrument {
 
 	@Override
 	public boolean equals(Object o) {
-		if (this == o) return true;
-		if (o == null || getClass() != o.getClass()) return false;
+		if (!super.equals(o)) return false;
 		Equity equity = (Equity) o;
 		return Double.compare(equity.expectedReturn, expectedReturn) == 0 && Double.compare(equity.annualizedStandardDeviation, annualizedStandardDeviation) == 0;
 	}
-
-	@Override
-	public int hashCode() {
-		return Objects.hash(expectedReturn, annualizedStandardDeviation);
-	}
 }
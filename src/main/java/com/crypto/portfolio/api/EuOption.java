@@ -59,14 +59,8 @@ public class EuOption extends Instrument {
 
 	@Override
 	public boolean equals(Object o) {
-		if (this == o) return true;
-		if (o == null || getClass() != o.getClass()) return false;
+		if (!super.equals(o)) return false;
 		EuOption euOption = (EuOption) o;
 		return underlying.equals(euOption.underlying) && strike.equals(euOption.strike) && maturity.equals(euOption.maturity) && optionType == euOption.optionType;
 	}
-
-	@Override
-	public int hashCode() {
-		return Objects.hash(underlying, strike, maturity, optionType);
-	}
 }
@@ -13,4 +13,22 @@ public class Instrument {
 	public String getTicker() {
 		return ticker;
 	}
+
+	/**
+	 * instruments of the same class and ticker; subclasses compare their own fields too
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		return ticker.equals(((Instrument) o).ticker);
+	}
+
+	/**
+	 * the hash of the ticker, which the String caches: equal instruments have the same ticker
+	 */
+	@Override
+	public int hashCode() {
+		return ticker.hashCode();
+	}
 }
@@ -0,0 +1,47 @@
+package com.crypto.portfolio.api.interfaces;
+
+
+import java.math.BigDecimal;
+
+/**
+ * an option price service which can also price a whole book of options in one call.
+ *
+ * The book is given in struct-of-arrays form: the i-th option is described by the i-th element of each array.
+ * Plain loops over primitive arrays don't allocate, and disjoint ranges of the same book can be priced by different
+ * threads at the same time.
+ */
+public interface BatchOptionPriceService extends OptionPriceService {
+
+	/**
+	 * prices the options from index "from" (included) to "to" (excluded), writing the results in prices.
+	 * Must be thread safe, as long as the ranges of concurrent calls don't overlap
+	 * @param stockPrices					price of the underlying equities
+	 * @param strikePrices
+	 * @param annualizedStandardDeviations	of the underlying equities
+	 * @param yearsToMaturity				days to maturity / 365
+	 * @param calls							true for calls, false for puts
+	 * @param prices						output
+	 * @param from
+	 * @param to
+	 * @throws IllegalArgumentException		if any option is matured
+	 */
+	void priceBatch(
+			double[] stockPrices,
+			double[] strikePrices,
+			double[] annualizedStandardDeviations,
+			double[] yearsToMaturity,
+			boolean[] calls,
+			double[] prices,
+			int from,
+			int to
+	);
+
+	/**
+	 * @param price		as computed by {@link #priceBatch}
+	 * @return	the same price, as returned by {@link #price}
+	 */
+	default BigDecimal toPrice(double price){
+		return BigDecimal.valueOf(price);
+	}
+
+}
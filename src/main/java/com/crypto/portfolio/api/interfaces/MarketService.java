@@ -3,6 +3,7 @@ package com.crypto.portfolio.api.interfaces;
 import javax.annotation.concurrent.ThreadSafe;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -24,4 +25,19 @@ public interface MarketService {
 	 */
 	BigDecimal getPrice(String ticker, LocalDateTime timestamp) throws IllegalStateException;
 
+	/**
+	 * retrieve prices for many equities at once. Implementations should override it when a single request is
+	 * cheaper than one per ticker
+	 * @param tickers	no duplicates expected
+	 * @param timestamp
+	 * @return	ticker -> price, for all the tickers
+	 * @throws IllegalStateException	if any equity is not found
+	 */
+	default Map<String, BigDecimal> getPrices(Collection<String> tickers, LocalDateTime timestamp) throws IllegalStateException {
+		Map<String, BigDecimal> prices = new HashMap<>();
+		for (String ticker : tickers)
+			prices.put(ticker, this.getPrice(ticker, timestamp));
+		return prices;
+	}
+
 }
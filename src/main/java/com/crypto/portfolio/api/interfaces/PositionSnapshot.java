@@ -0,0 +1,47 @@
+package com.crypto.portfolio.api.interfaces;
+
+
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * the open positions as of one version of the book. A new version means the positions may have changed;
+ * the same version means the same positions
+ * @see VersionedPositionService
+ */
+@Immutable
+public final class PositionSnapshot {
+
+	private final long version;
+	private final List<Position> positions;
+
+	/**
+	 * @param version	grows with each new snapshot of the same service
+	 * @param positions	copied
+	 */
+	public PositionSnapshot(long version, List<Position> positions) {
+		this.version = version;
+		this.positions = Collections.unmodifiableList(new ArrayList<>(positions));
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return	unmodifiable
+	 */
+	public List<Position> getPositions() {
+		return positions;
+	}
+
+	@Override
+	public String toString() {
+		return "PositionSnapshot{" +
+				"version=" + version +
+				", positions=" + positions.size() +
+				'}';
+	}
+}
@@ -1,8 +1,13 @@
 package com.crypto.portfolio.api.interfaces;
 
 
+import com.crypto.portfolio.api.EuOption;
 import com.crypto.portfolio.api.Instrument;
 
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
 /**
  * loads the definition of equities or options
  */
@@ -16,4 +21,75 @@ public interface ReferenceDataService {
 	 */
 	Instrument findInstrument(String ticker) throws IllegalArgumentException;
 
+	/**
+	 * loads many instruments at once. Implementations should override it when a single request is
+	 * cheaper than one per ticker
+	 * @param tickers	no duplicates expected
+	 * @return	ticker -> instrument, for all the tickers
+	 * @throws IllegalArgumentException	 if any ticker is not found
+	 */
+	default Map<String, Instrument> findInstruments(Collection<String> tickers) throws IllegalArgumentException {
+		Map<String, Instrument> instruments = new HashMap<>();
+		for (String ticker : tickers)
+			instruments.put(ticker, this.findInstrument(ticker));
+		return instruments;
+	}
+
+	/**
+	 * loads every instrument known to the service, e.g. to warm up a cache at startup.
+	 * Services which can't list their instruments return none: nothing is preloaded from them then, and the default
+	 * option queries below find no option
+	 * @return	ticker -> instrument
+	 */
+	default Map<String, Instrument> findAllInstruments() {
+		return Collections.emptyMap();
+	}
+
+	/**
+	 * by default, scans {@link #findAllInstruments()}: services with an index of the options should override it
+	 * @param equityTicker
+	 * @return	the options on the equity, by maturity and ticker. Empty if there's none
+	 */
+	default List<EuOption> findOptionsOnUnderlying(String equityTicker) {
+		return this.findAllInstruments().values().stream()
+				.filter(instrument -> instrument instanceof EuOption)
+				.map(instrument -> (EuOption) instrument)
+				.filter(option -> option.getUnderlying().getTicker().equals(equityTicker))
+				.sorted(MATURITY_ORDER)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * by default, filters {@link #findOptionsOnUnderlying(String)}
+	 * @param equityTicker
+	 * @param fromMaturity	included
+	 * @param toMaturity	included
+	 * @return	the options on the equity maturing within the range, by maturity and ticker
+	 */
+	default List<EuOption> findOptionsOnUnderlying(String equityTicker, LocalDate fromMaturity, LocalDate toMaturity) {
+		return this.findOptionsOnUnderlying(equityTicker).stream()
+				.filter(option -> !option.getMaturity().isBefore(fromMaturity) && !option.getMaturity().isAfter(toMaturity))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * by default, scans {@link #findAllInstruments()}: services with an index of the options should override it
+	 * @param fromMaturity	included
+	 * @param toMaturity	included
+	 * @return	the options on any underlying maturing within the range, by maturity and ticker
+	 */
+	default List<EuOption> findOptionsMaturingBetween(LocalDate fromMaturity, LocalDate toMaturity) {
+		return this.findAllInstruments().values().stream()
+				.filter(instrument -> instrument instanceof EuOption)
+				.map(instrument -> (EuOption) instrument)
+				.filter(option -> !option.getMaturity().isBefore(fromMaturity) && !option.getMaturity().isAfter(toMaturity))
+				.sorted(MATURITY_ORDER)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * the order of the results of the option queries
+	 */
+	Comparator<EuOption> MATURITY_ORDER = Comparator.comparing(EuOption::getMaturity).thenComparing(EuOption::getTicker);
+
 }
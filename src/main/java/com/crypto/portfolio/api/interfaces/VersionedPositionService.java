@@ -0,0 +1,24 @@
+package com.crypto.portfolio.api.interfaces;
+
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * a position service which tells when the positions changed, through the version of its snapshots.
+ * Consumers can then keep whatever they derived from the positions (tickers, reference data) till the version changes
+ */
+public interface VersionedPositionService extends PositionService {
+
+	/**
+	 * @param timestamp
+	 * @return	the current snapshot of the positions. Expected to be cheap, since it's called at each update
+	 */
+	PositionSnapshot getSnapshot(LocalDateTime timestamp);
+
+	@Override
+	default List<Position> getPositions(LocalDateTime timestamp) {
+		return this.getSnapshot(timestamp).getPositions();
+	}
+
+}
@@ -19,6 +19,12 @@ import java.util.Objects;
  * - price of all equities (either directly owned or by options)
  * - timestamp of this update
  * - total portfolio value
+ * - sequence number, increasing by one at each update produced by the service
+ *
+ * An update is either a full snapshot, or a delta when the subscriber asked for them
+ * (see {@link SubscriptionSpec#withDeltas(int)}): a delta only carries the entries and the equity prices which changed
+ * since the update with the previous sequence number. The total value is always the full one.
+ * A consumer can apply them with a {@link PortfolioView}.
  */
 @Immutable
 public class PortfolioUpdate {
@@ -27,8 +33,28 @@ public class PortfolioUpdate {
 	private final List<PortfolioEntry> entries;
 	private final List<EquityPriceUpdate> equityPriceUpdates;
 	private final BigDecimal totalValue;
+	private final long sequence;
+	private final boolean snapshot;
 
+	/**
+	 * a full snapshot, not sequenced
+	 */
 	public PortfolioUpdate(LocalDateTime timestamp, List<PortfolioEntry> entries, List<EquityPriceUpdate> equityPriceUpdates, BigDecimal totalValue) {
+		this(timestamp, entries, equityPriceUpdates, totalValue, 0, true);
+	}
+
+	/**
+	 * @param sequence		positive for the updates produced by the service
+	 * @param snapshot		false if entries and equity prices are only the ones changed since the previous sequence
+	 */
+	public PortfolioUpdate(
+			LocalDateTime timestamp,
+			List<PortfolioEntry> entries,
+			List<EquityPriceUpdate> equityPriceUpdates,
+			BigDecimal totalValue,
+			long sequence,
+			boolean snapshot
+	) {
 		this.timestamp = Objects.requireNonNull(timestamp);
 		// important to ensure immutability
 		// In our architecture there will be only one physical instance
@@ -36,6 +62,8 @@ public class PortfolioUpdate {
 		this.entries = Collections.unmodifiableList( entries );
 		this.equityPriceUpdates = Collections.unmodifiableList( equityPriceUpdates );
 		this.totalValue = Objects.requireNonNull(totalValue);
+		this.sequence = sequence;
+		this.snapshot = snapshot;
 	}
 
 	public LocalDateTime getTimestamp() {
@@ -54,6 +82,17 @@ public class PortfolioUpdate {
 		return totalValue;
 	}
 
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return	true if the update holds all entries and equity prices, false if it's a delta
+	 */
+	public boolean isSnapshot() {
+		return snapshot;
+	}
+
 	@Override
 	public String toString() {
 		return "PortfolioUpdate{" +
@@ -61,6 +100,8 @@ public class PortfolioUpdate {
 				", entries=" + entries +
 				", equityPriceUpdates=" + equityPriceUpdates +
 				", totalValue=" + totalValue +
+				", sequence=" + sequence +
+				", snapshot=" + snapshot +
 				'}';
 	}
 }
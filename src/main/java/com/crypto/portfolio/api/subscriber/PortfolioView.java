@@ -0,0 +1,97 @@
+package com.crypto.portfolio.api.subscriber;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * rebuilds the full state of the portfolio from a stream of snapshots and deltas.
+ *
+ * A delta can only be applied on top of the update with the previous sequence number. When one is missing (e.g. the
+ * subscriber queue was full) {@link #apply(PortfolioUpdate)} returns false, and the view stays as it was till the
+ * next snapshot: the subscriber should then ask the service for one.
+ */
+@NotThreadSafe
+public class PortfolioView {
+
+	private final List<PortfolioEntry> entries = new ArrayList<>();
+	// position ticker -> index among the entries
+	private final Map<String, Integer> entryIndexes = new HashMap<>();
+	private final Map<String, BigDecimal> equityPrices = new HashMap<>();
+	private BigDecimal totalValue;
+	private LocalDateTime timestamp;
+	private long sequence;
+	private boolean synchronised;
+
+	/**
+	 * @param update	a snapshot or a delta
+	 * @return	false if the update is a delta which can't be applied, because of a gap in the sequence
+	 */
+	public boolean apply(PortfolioUpdate update){
+		if (update.isSnapshot()) {
+			this.entries.clear();
+			this.entryIndexes.clear();
+			this.equityPrices.clear();
+			this.entries.addAll(update.getEntries());
+			for (int i = 0; i < this.entries.size(); i++)
+				this.entryIndexes.put(this.entries.get(i).getPosition().getTicker(), i);
+		}
+		else {
+			if (!this.synchronised || update.getSequence() != this.sequence + 1) {
+				this.synchronised = false;
+				return false;
+			}
+			for (PortfolioEntry entry : update.getEntries()) {
+				Integer index = this.entryIndexes.get(entry.getPosition().getTicker());
+				if (index == null)
+					throw new IllegalStateException("delta for an unknown position: "+entry.getPosition().getTicker());
+				this.entries.set(index, entry);
+			}
+		}
+		for (EquityPriceUpdate equityPriceUpdate : update.getEquityPriceUpdates())
+			this.equityPrices.put(equityPriceUpdate.getEquityTicker(), equityPriceUpdate.getPrice());
+		this.totalValue = update.getTotalValue();
+		this.timestamp = update.getTimestamp();
+		this.sequence = update.getSequence();
+		this.synchronised = true;
+		return true;
+	}
+
+	/**
+	 * @return	false before the first snapshot, and after a gap till the next snapshot
+	 */
+	public boolean isSynchronised() {
+		return synchronised;
+	}
+
+	/**
+	 * @return	all entries of the portfolio, in the order of the last snapshot
+	 */
+	public List<PortfolioEntry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * @return	equity ticker -> price
+	 */
+	public Map<String, BigDecimal> getEquityPrices() {
+		return Collections.unmodifiableMap(equityPrices);
+	}
+
+	public BigDecimal getTotalValue() {
+		return totalValue;
+	}
+
+	public LocalDateTime getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return	sequence number of the last update applied
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+}
@@ -0,0 +1,177 @@
+package com.crypto.portfolio.api.subscriber;
+
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * describes which part of the portfolio updates a subscriber is interested in.
+ *
+ * Positions can be filtered by their ticker and/or by their underlying equity (an equity is the underlying of itself).
+ * When filtered, the total value of the update is the value of the selected positions only, and the equity prices
+ * are the ones of their underlyings.
+ *
+ * Updates are full snapshots, unless deltas are requested: then only the entries and equity prices which changed
+ * are sent, with a full snapshot every so often.
+ *
+ * Subscribers with equal specs share the very same update instances.
+ */
+@Immutable
+public final class SubscriptionSpec {
+
+	public enum Content {
+		/**
+		 * entries, equity prices and total value
+		 */
+		FULL,
+		/**
+		 * entries and total value, no equity prices
+		 */
+		ENTRIES_ONLY,
+		/**
+		 * total value only
+		 */
+		NAV_ONLY
+	}
+
+	private static final SubscriptionSpec ALL = new SubscriptionSpec(ImmutableSet.of(), ImmutableSet.of(), Content.FULL, 0);
+
+	// empty sets mean no filter
+	private final Set<String> tickers;
+	private final Set<String> underlyings;
+	private final Content content;
+	// 0 if every update is a snapshot
+	private final int snapshotInterval;
+
+	private SubscriptionSpec(Set<String> tickers, Set<String> underlyings, Content content, int snapshotInterval) {
+		if (snapshotInterval < 0)
+			throw new IllegalArgumentException("the snapshot interval can't be negative");
+		this.tickers = ImmutableSet.copyOf(tickers);
+		this.underlyings = ImmutableSet.copyOf(underlyings);
+		this.content = Objects.requireNonNull(content);
+		this.snapshotInterval = snapshotInterval;
+	}
+
+	/**
+	 * @return	the whole portfolio update
+	 */
+	public static SubscriptionSpec all(){
+		return ALL;
+	}
+
+	/**
+	 * @return	the total value of the whole portfolio
+	 */
+	public static SubscriptionSpec navOnly(){
+		return ALL.withContent(Content.NAV_ONLY);
+	}
+
+	/**
+	 * @return	a spec selecting the positions with the given tickers only
+	 */
+	public SubscriptionSpec withTickers(Collection<String> tickers){
+		return new SubscriptionSpec(ImmutableSet.copyOf(tickers), this.underlyings, this.content, this.snapshotInterval);
+	}
+
+	/**
+	 * @param underlyings	equity tickers
+	 * @return	a spec selecting the positions on the given equities only, either directly or through options
+	 */
+	public SubscriptionSpec withUnderlyings(Collection<String> underlyings){
+		return new SubscriptionSpec(this.tickers, ImmutableSet.copyOf(underlyings), this.content, this.snapshotInterval);
+	}
+
+	public SubscriptionSpec withContent(Content content){
+		return new SubscriptionSpec(this.tickers, this.underlyings, content, this.snapshotInterval);
+	}
+
+	/**
+	 * @param snapshotInterval	a full snapshot is sent every this many updates, deltas in between.
+	 *                          0 to get snapshots only
+	 * @return	a spec delivering deltas. They can't be conflated, so they're not available with conflating delivery
+	 */
+	public SubscriptionSpec withDeltas(int snapshotInterval){
+		return new SubscriptionSpec(this.tickers, this.underlyings, this.content, snapshotInterval);
+	}
+
+	/**
+	 * @return	the same spec, with full snapshots only
+	 */
+	public SubscriptionSpec withSnapshotsOnly(){
+		return this.withDeltas(0);
+	}
+
+	/**
+	 * @return	true if the subscriber receives the full, unfiltered, update
+	 */
+	public boolean isAll(){
+		return this.equals(ALL);
+	}
+
+	/**
+	 * @return	true if positions are filtered
+	 */
+	public boolean isFiltered(){
+		return !this.tickers.isEmpty() || !this.underlyings.isEmpty();
+	}
+
+	/**
+	 * @param ticker				ticker of the position
+	 * @param underlyingTicker		ticker of its underlying equity
+	 * @return	true if the position is selected by this spec
+	 */
+	public boolean includes(String ticker, String underlyingTicker){
+		return (this.tickers.isEmpty() || this.tickers.contains(ticker)) &&
+				(this.underlyings.isEmpty() || this.underlyings.contains(underlyingTicker));
+	}
+
+	public Set<String> getTickers() {
+		return tickers;
+	}
+
+	public Set<String> getUnderlyings() {
+		return underlyings;
+	}
+
+	public Content getContent() {
+		return content;
+	}
+
+	public int getSnapshotInterval() {
+		return snapshotInterval;
+	}
+
+	/**
+	 * @return	true if the subscriber receives deltas between snapshots
+	 */
+	public boolean isDelta(){
+		return this.snapshotInterval > 0;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		SubscriptionSpec that = (SubscriptionSpec) o;
+		return tickers.equals(that.tickers) && underlyings.equals(that.underlyings) && content == that.content &&
+				snapshotInterval == that.snapshotInterval;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(tickers, underlyings, content, snapshotInterval);
+	}
+
+	@Override
+	public String toString() {
+		return "SubscriptionSpec{" +
+				"tickers=" + tickers +
+				", underlyings=" + underlyings +
+				", content=" + content +
+				", snapshotInterval=" + snapshotInterval +
+				'}';
+	}
+}
@@ -4,15 +4,19 @@ import com.crypto.portfolio.api.Equity;
 import com.crypto.portfolio.api.EuOption;
 import com.crypto.portfolio.api.interfaces.MarketService;
 import com.crypto.portfolio.api.interfaces.OptionPriceService;
+import com.crypto.portfolio.api.interfaces.PositionService;
+import com.crypto.portfolio.api.interfaces.ReferenceDataService;
 import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
 import com.crypto.portfolio.api.subscriber.PortfolioUpdateSubscriberQueue;
 import com.crypto.portfolio.app.database.DbDataPreparer;
 import com.crypto.portfolio.app.database.DbSchemaBuilder;
 import com.crypto.portfolio.app.database.H2Constants;
 import com.crypto.portfolio.app.database.ReferenceDataInDbService;
+import com.crypto.portfolio.app.database.SnapshotReferenceDataService;
+import com.crypto.portfolio.app.implementations.BlackScholesOptionPriceService;
 import com.crypto.portfolio.app.implementations.RandomisedBrownianMarketService;
 import com.crypto.portfolio.app.implementations.StaticPositionService;
-import com.crypto.portfolio.app.utils.OptionCalcUtils;
+import com.crypto.portfolio.app.implementations.WatchingCsvPositionService;
 import com.crypto.portfolio.app.utils.PositionsUtils;
 import com.crypto.portfolio.app.utils.StandardisedDistributionSampler;
 import com.crypto.portfolio.core.PortfolioService;
@@ -21,6 +25,7 @@ import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.time.LocalDate;
@@ -54,9 +59,20 @@ public class Runner {
 
 
 	/**
-	 * the more samples are used, the more precise the option pricing is
+	 * system property with the path of a persistent H2 database. The instruments are inserted the first time only
 	 */
-	private final static StandardisedDistributionSampler SAMPLER = new StandardisedDistributionSampler(10000);
+	private final static String DATABASE_FILE_PROPERTY = "portfolio.database.file";
+
+	/**
+	 * system property with the path of a positions csv file, watched for changes
+	 */
+	private final static String POSITIONS_FILE_PROPERTY = "portfolio.positions.file";
+
+	/**
+	 * the closed form is precise to the last digit of a double; the table engine would be a little faster.
+	 * See StandardisedDistributionSamplerTest for a comparison of the modes
+	 */
+	private final static StandardisedDistributionSampler SAMPLER = StandardisedDistributionSampler.closedForm();
 
 
 	public static void main(String[] args) throws IOException {
@@ -83,9 +99,13 @@ public class Runner {
 
 
 		// static never-changing positions, as defined in the csv file
-		StaticPositionService positionService = new StaticPositionService(PositionsUtils.loadPositionsFromCsv(
-				new InputStreamReader(ClassLoader.getSystemResourceAsStream("positions.csv"))
-		));
+		// unless a positions file is given: then it's reloaded whenever it changes
+		String positionsFile = System.getProperty(POSITIONS_FILE_PROPERTY);
+		PositionService positionService = positionsFile != null ?
+				new WatchingCsvPositionService(Paths.get(positionsFile)) :
+				new StaticPositionService(PositionsUtils.loadPositionsFromCsv(
+						new InputStreamReader(ClassLoader.getSystemResourceAsStream("positions.csv"))
+				));
 
 		// we initialise the price of the equities at BEGIN_TIMESTAMP
 		// From there on, they'll move with a brownian motion
@@ -98,27 +118,26 @@ public class Runner {
 				BEGIN_TIMESTAMP
 		);
 
-		// we define the option-pricing-service on the spot, by relying on the utility calculation library
-		OptionPriceService optionPriceService = new OptionPriceService() {
-			@Override
-			public BigDecimal price(EuOption option, LocalDate localDate, BigDecimal equityPrice) {
-				return OptionCalcUtils.priceOption(SAMPLER, option, equityPrice, localDate);
-			}
-		};
+		// the option-pricing-service relies on the utility calculation library. It can price the whole book at once
+		OptionPriceService optionPriceService = new BlackScholesOptionPriceService(SAMPLER);
 
 
-		// now let's prepare the database from scratch
-		Supplier<Connection> connectionSupplier = H2Constants.connectionSupplier(H2Constants.H2_MEM_URL);
+		// now let's prepare the database: from scratch in memory, unless a file is given
+		String databaseFile = System.getProperty(DATABASE_FILE_PROPERTY);
+		Supplier<Connection> connectionSupplier = H2Constants.connectionSupplier(databaseFile == null ?
+				H2Constants.H2_MEM_URL : H2Constants.fileUrl(Paths.get(databaseFile)));
 		try {
-			// create schema
-			new DbSchemaBuilder(connectionSupplier).createSchema();
-			// insert data
-			new DbDataPreparer(connectionSupplier).insertInstruments(aapl, tsla, rklb, amzn, rklbP, amznP, amznC);
+			// create schema, and insert data only if it's new
+			if (new DbSchemaBuilder(connectionSupplier).createSchema())
+				new DbDataPreparer(connectionSupplier).insertInstruments(aapl, tsla, rklb, amzn, rklbP, amznP, amznC);
 		} catch (SQLException e) {
 			throw new RuntimeException("issues while preparing the database", e);
 		}
-		//.. and define the reference data service using it
-		ReferenceDataInDbService referenceDataInDbService = new ReferenceDataInDbService(connectionSupplier);
+		//.. and define the reference data service using it. A persistent database gets a snapshot next to it,
+		// so the following starts can preload the instruments without querying it
+		ReferenceDataInDbService dbService = new ReferenceDataInDbService(connectionSupplier);
+		ReferenceDataService referenceDataService = databaseFile == null ? dbService :
+				new SnapshotReferenceDataService(dbService, Paths.get(databaseFile + ".snapshot"), dbService::getDataVersion);
 
 
 		// finally, we can initialise the service
@@ -126,11 +145,15 @@ public class Runner {
 				EMULATED_INTERVAL_MILLIS,
 				USER_INTERVAL_MILLIS,
 				10, // max subscription queue capacity
-				positionService, optionPriceService, marketService, referenceDataInDbService
+				positionService, optionPriceService, marketService, referenceDataService
 		);
 
-		// before stating the server, we register our listener, in charge of printing the updates on the console
-		PortfolioUpdateSubscriberQueue subscriberQueue = service.addSubscriber("printer");
+		// the few instruments fit in memory: loading them now saves the first update from waiting for the database
+		service.preloadReferenceData();
+
+		// before stating the server, we register our listener, in charge of printing the updates on the console.
+		// Printing only makes sense for the latest update, older ones can be skipped
+		PortfolioUpdateSubscriberQueue subscriberQueue = service.addSubscriber("printer", PortfolioService.DeliveryPolicy.CONFLATING);
 		PortfolioUpdatePrinter portfolioUpdatePrinter = new PortfolioUpdatePrinter(subscriberQueue);
 
 		// one thread will be created to process the portfolio iterations
@@ -0,0 +1,181 @@
+package com.crypto.portfolio.app.database;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * a bounded pool of connections, each keeping its own prepared statements.
+ * Connections are opened lazily, up to the maximum; when all are in use, borrowers wait for one to be returned, or
+ * for a broken one to be discarded.
+ */
+@ThreadSafe
+public class ConnectionPool implements Closeable {
+
+	// how often a waiting borrower checks whether it may open a connection
+	private static final long RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final Supplier<Connection> connectionFactory;
+	private final int maxConnections;
+	private final long borrowTimeoutMillis;
+
+	private final BlockingQueue<PooledConnection> idle;
+	private final AtomicInteger opened = new AtomicInteger();
+	private volatile boolean closed;
+
+	/**
+	 * @param connectionFactory		opens a new physical connection
+	 * @param maxConnections		connections open at the same time, at most
+	 * @param borrowTimeoutMillis	how long a borrower waits for a connection, when all are in use
+	 */
+	public ConnectionPool(Supplier<Connection> connectionFactory, int maxConnections, long borrowTimeoutMillis) {
+		if (maxConnections < 1)
+			throw new IllegalArgumentException("at least one connection is needed");
+		this.connectionFactory = Objects.requireNonNull(connectionFactory);
+		this.maxConnections = maxConnections;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.idle = new ArrayBlockingQueue<>(maxConnections);
+	}
+
+	/**
+	 * to be closed once done, which gives it back to the pool
+	 * @throws IllegalStateException	if no connection gets available in time, or the pool is closed
+	 */
+	public PooledConnection borrow(){
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.borrowTimeoutMillis);
+		while (true) {
+			if (this.closed)
+				throw new IllegalStateException("the pool is closed");
+			PooledConnection connection = this.idle.poll();
+			if (connection == null)
+				connection = this.open();
+			if (connection == null) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0)
+					throw new IllegalStateException("no connection available after "+this.borrowTimeoutMillis+" ms");
+				// a broken connection given back frees room for a new one without going through the queue,
+				// so the room is checked again every little while
+				try {
+					connection = this.idle.poll(Math.min(remaining, RECHECK_NANOS), TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("interrupted while waiting for a connection", e);
+				}
+			}
+			if (connection != null) {
+				connection.returned = false;
+				return connection;
+			}
+		}
+	}
+
+	/**
+	 * @return	a new connection, or null if the maximum is open already
+	 */
+	private PooledConnection open(){
+		if (this.opened.incrementAndGet() > this.maxConnections) {
+			this.opened.decrementAndGet();
+			return null;
+		}
+		try {
+			return new PooledConnection(this.connectionFactory.get());
+		} catch (RuntimeException e) {
+			this.opened.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * closes the idle connections; the borrowed ones are closed when returned
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		PooledConnection connection;
+		while ((connection = this.idle.poll()) != null)
+			connection.closePhysically();
+	}
+
+	private void giveBack(PooledConnection connection){
+		boolean broken;
+		try {
+			broken = connection.connection.isClosed();
+		} catch (SQLException e) {
+			broken = true;
+		}
+		if (broken || this.closed || !this.idle.offer(connection)) {
+			connection.closePhysically();
+			this.opened.decrementAndGet();
+		} else if (this.closed && this.idle.remove(connection))
+			// the pool was closed while we were giving it back
+			connection.closePhysically();
+	}
+
+	/**
+	 * a connection borrowed from the pool. It's used by one thread at a time, like the statements it caches
+	 */
+	@NotThreadSafe
+	public class PooledConnection implements AutoCloseable {
+
+		private final Connection connection;
+		// sql -> statement, kept open for the life of the connection
+		private final Map<String, PreparedStatement> statements = new HashMap<>();
+		// true once closed by its borrower, till borrowed again
+		private boolean returned;
+
+		private PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		/**
+		 * @return	the underlying connection. Statements prepared on it must be closed by the caller
+		 */
+		public Connection connection(){
+			return this.connection;
+		}
+
+		/**
+		 * @param sql	a query with a fixed text: each distinct text keeps a statement open
+		 * @return	a statement prepared once for this connection. The caller must not close it
+		 */
+		public PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement statement = this.statements.get(sql);
+			if (statement == null) {
+				statement = this.connection.prepareStatement(sql);
+				this.statements.put(sql, statement);
+			}
+			return statement;
+		}
+
+		/**
+		 * gives the connection back to the pool. Closing it again does nothing: it would be borrowed twice
+		 */
+		@Override
+		public void close() {
+			if (this.returned)
+				return;
+			this.returned = true;
+			ConnectionPool.this.giveBack(this);
+		}
+
+		private void closePhysically(){
+			try {
+				this.connection.close();
+			} catch (SQLException e) {
+				// nothing else to do with it
+			}
+		}
+	}
+
+}
@@ -3,24 +3,44 @@ package com.crypto.portfolio.app.database;
 import com.crypto.portfolio.api.Equity;
 import com.crypto.portfolio.api.EuOption;
 import com.crypto.portfolio.api.Instrument;
+import com.crypto.portfolio.api.Logger;
+import com.crypto.portfolio.app.utils.CsvReader;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 /**
  * it performs a bulky, fail-fast setup of instruments upon an empty database.
- * Not suitable for business-as-usual periodic insertions since it doesn't
+ * Not suitable for business-as-usual periodic insertions since it doesn't deal with duplicates.
+ *
+ * Each load runs in a single transaction, sending the rows to the database in batches: either all rows are
+ * stored or none is. It also bumps the version of the reference data (see {@link DbSchemaBuilder}), so the
+ * snapshots taken before are discarded
  */
 public class DbDataPreparer {
 
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/**
+	 * headers of the instrument csv files, see {@link #importEquitiesFromCsv(Reader)} and {@link #importOptionsFromCsv(Reader)}
+	 */
+	public static final String CSV_TICKER = "ticker", CSV_EXPECTED_RETURN = "expectedReturn",
+			CSV_STANDARD_DEVIATION = "standardDeviation", CSV_EQUITY_TICKER = "equityTicker", CSV_STRIKE = "strike",
+			CSV_MATURITY = "maturity", CSV_TYPE = "type";
+
 	private final Supplier<Connection> connectionSupplier;
+	private final int batchSize;
+	private final BatchListener batchListener;
 
 	private static final String INSERT_EQUITY =
 			"insert into Equity(ticker, expectedReturn, standardDeviation) " +
@@ -30,8 +50,25 @@ public class DbDataPreparer {
 			"insert into Option(ticker, equityTicker, strike, maturity, type) " +
 					"values (?,?,?,?,?)";
 
+	private static final String BUMP_VERSION = "update ReferenceDataVersion set version = version + 1";
+
+	/**
+	 * batches of {@link #DEFAULT_BATCH_SIZE} rows, the end of each load is logged
+	 */
 	public DbDataPreparer(Supplier<Connection> connectionSupplier) {
-		this.connectionSupplier = connectionSupplier;
+		this(connectionSupplier, DEFAULT_BATCH_SIZE, BatchListener.LOG_TOTALS);
+	}
+
+	/**
+	 * @param batchSize		rows sent to the database at once
+	 * @param batchListener	notified after each batch
+	 */
+	public DbDataPreparer(Supplier<Connection> connectionSupplier, int batchSize, BatchListener batchListener) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("the batch size must be positive");
+		this.connectionSupplier = Objects.requireNonNull(connectionSupplier);
+		this.batchSize = batchSize;
+		this.batchListener = Objects.requireNonNull(batchListener);
 	}
 
 	/**
@@ -41,7 +78,21 @@ public class DbDataPreparer {
 	 * @throws SQLException
 	 */
 	public void insertInstruments( Instrument... instruments) throws SQLException {
-		Set<String> setupEquities = new HashSet<>();
+		this.insertInstruments(Arrays.asList(instruments));
+	}
+
+	/**
+	 * creates the set of instruments (equities and options) in the database, in one transaction.
+	 * The underlyings of the options are stored too, if not in the collection.
+	 * Assumes the input is correct and doesn't deal with duplicates
+	 * @param instruments
+	 * @return	the number of rows stored
+	 * @throws SQLException
+	 */
+	public int insertInstruments(Collection<? extends Instrument> instruments) throws SQLException {
+		// equities first, since options refer to them
+		Map<String, Equity> equities = new LinkedHashMap<>();
+		List<EuOption> options = new ArrayList<>();
 		for (Instrument instrument : instruments) {
 			Equity equityOrUnderlying;
 
@@ -49,44 +100,159 @@ public class DbDataPreparer {
 				equityOrUnderlying = (Equity) instrument;
 			else if (instrument instanceof EuOption){
 				equityOrUnderlying = ((EuOption)instrument).getUnderlying();
+				options.add((EuOption) instrument);
 			}
 			else throw new IllegalArgumentException(instrument.getClass().getName() +" not expected");
 
-			if (setupEquities.add(equityOrUnderlying.getTicker()))
-				this.storeEquity(equityOrUnderlying);
+			equities.putIfAbsent(equityOrUnderlying.getTicker(), equityOrUnderlying);
+		}
 
-			if (instrument instanceof EuOption){
-				this.storeOption((EuOption) instrument);
-			}
+		return this.inTransaction(connection ->
+				this.load(connection, "Equity", INSERT_EQUITY, equities.values().iterator(), DbDataPreparer::bindEquity)
+				+ this.load(connection, "Option", INSERT_OPTION, options.iterator(), DbDataPreparer::bindOption)
+		);
+	}
+
+	/**
+	 * imports equities from a csv with headers {@value #CSV_TICKER}, {@value #CSV_EXPECTED_RETURN} and
+	 * {@value #CSV_STANDARD_DEVIATION}, in one transaction. The rows are streamed, so files of any size can be
+	 * imported. It also closes the reader
+	 * @return	the number of equities stored
+	 */
+	public int importEquitiesFromCsv(Reader csvFileReader) throws IOException, SQLException {
+		try (CsvReader csvReader = new CsvReader(csvFileReader)) {
+			return this.inTransaction(connection -> this.load(connection, "Equity", INSERT_EQUITY, csvReader.iterator(),
+					(statement, row) -> bindEquity(statement, new Equity(
+							row.get(CSV_TICKER),
+							Double.parseDouble(row.get(CSV_EXPECTED_RETURN)),
+							Double.parseDouble(row.get(CSV_STANDARD_DEVIATION))
+					))
+			));
 		}
 	}
 
+	/**
+	 * imports options from a csv with headers {@value #CSV_TICKER}, {@value #CSV_EQUITY_TICKER},
+	 * {@value #CSV_STRIKE}, {@value #CSV_MATURITY} (yyyy-mm-dd) and {@value #CSV_TYPE} (C or P), in one transaction.
+	 * The underlying equities must be stored already. It also closes the reader
+	 * @return	the number of options stored
+	 */
+	public int importOptionsFromCsv(Reader csvFileReader) throws IOException, SQLException {
+		try (CsvReader csvReader = new CsvReader(csvFileReader)) {
+			return this.inTransaction(connection -> this.load(connection, "Option", INSERT_OPTION, csvReader.iterator(),
+					(statement, row) -> {
+						statement.setString(1, row.get(CSV_TICKER));
+						statement.setString(2, row.get(CSV_EQUITY_TICKER));
+						statement.setBigDecimal(3, new BigDecimal(row.get(CSV_STRIKE)));
+						statement.setDate(4, Date.valueOf(LocalDate.parse(row.get(CSV_MATURITY))));
+						statement.setString(5, EuOption.fromSymbol(row.get(CSV_TYPE)).symbol);
+					}
+			));
+		}
+	}
 
-	private void storeEquity(Equity equity) throws SQLException {
+	/**
+	 * runs the work on one connection and bumps the version of the reference data, committing at the end.
+	 * Nothing is stored if it fails
+	 */
+	private int inTransaction(Work work) throws SQLException {
 		try (Connection connection = this.connectionSupplier.get()) {
-			PreparedStatement preparedStatement = connection.prepareStatement(INSERT_EQUITY);
-			preparedStatement.setString(1, equity.getTicker());
-			preparedStatement.setDouble(2, equity.getExpectedReturn());
-			preparedStatement.setDouble(3, equity.getAnnualizedStandardDeviation());
-			preparedStatement.execute();
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			try {
+				int rows = work.run(connection);
+				try (Statement statement = connection.createStatement()) {
+					statement.executeUpdate(BUMP_VERSION);
+				}
+				connection.commit();
+				return rows;
+			} catch (SQLException | RuntimeException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(autoCommit);
+			}
 		}
 	}
 
+	/**
+	 * @param table		for the batch listener
+	 * @return	the number of rows stored
+	 */
+	private <T> int load(Connection connection, String table, String insert, Iterator<T> rows, Binder<T> binder) throws SQLException {
+		int stored = 0;
+		int batches = 0;
+		long loadStart = System.nanoTime();
+		try (PreparedStatement preparedStatement = connection.prepareStatement(insert)) {
+			int pending = 0;
+			long batchStart = loadStart;
+			while (rows.hasNext()) {
+				binder.bind(preparedStatement, rows.next());
+				preparedStatement.addBatch();
+				if (++pending == this.batchSize || !rows.hasNext()) {
+					preparedStatement.executeBatch();
+					stored += pending;
+					batches++;
+					long now = System.nanoTime();
+					this.batchListener.batchStored(table, batches, pending, stored, now - batchStart);
+					pending = 0;
+					batchStart = now;
+				}
+			}
+		}
+		this.batchListener.loadCompleted(table, batches, stored, System.nanoTime() - loadStart);
+		return stored;
+	}
+
+	private static void bindEquity(PreparedStatement preparedStatement, Equity equity) throws SQLException {
+		preparedStatement.setString(1, equity.getTicker());
+		preparedStatement.setDouble(2, equity.getExpectedReturn());
+		preparedStatement.setDouble(3, equity.getAnnualizedStandardDeviation());
+	}
 
 	/**
 	 * it requires to have already stored the underlying equity
-	 * @param option
-	 * @throws SQLException
 	 */
-	private void storeOption(EuOption option) throws SQLException {
-		try (Connection connection = this.connectionSupplier.get()) {
-			PreparedStatement preparedStatement = connection.prepareStatement(INSERT_OPTION);
-			preparedStatement.setString(1, option.getTicker());
-			preparedStatement.setString(2, option.getUnderlying().getTicker());
-			preparedStatement.setBigDecimal(3, option.getStrike());
-			preparedStatement.setDate(4, Date.valueOf(option.getMaturity()));
-			preparedStatement.setString(5, option.getOptionType().symbol);
-			preparedStatement.execute();
+	private static void bindOption(PreparedStatement preparedStatement, EuOption option) throws SQLException {
+		preparedStatement.setString(1, option.getTicker());
+		preparedStatement.setString(2, option.getUnderlying().getTicker());
+		preparedStatement.setBigDecimal(3, option.getStrike());
+		preparedStatement.setDate(4, Date.valueOf(option.getMaturity()));
+		preparedStatement.setString(5, option.getOptionType().symbol);
+	}
+
+	/**
+	 * progress of the loads. Both calls come before the transaction is committed
+	 */
+	public interface BatchListener {
+
+		/**
+		 * logs the totals of each load only
+		 */
+		BatchListener LOG_TOTALS = (table, batches, rows, nanos) -> Logger.log(String.format(
+				"%,d rows stored into %s in %d batches, %d ms", rows, table, batches, TimeUnit.NANOSECONDS.toMillis(nanos)
+		));
+
+		/**
+		 * @param table			where the rows are stored
+		 * @param batch			1 for the first batch of the load
+		 * @param batchRows		rows in this batch
+		 * @param totalRows		rows stored so far by the load, including this batch
+		 * @param batchNanos	time taken to bind and execute this batch
+		 */
+		default void batchStored(String table, int batch, int batchRows, int totalRows, long batchNanos) {
 		}
+
+		void loadCompleted(String table, int batches, int totalRows, long loadNanos);
+	}
+
+	@FunctionalInterface
+	private interface Work {
+		int run(Connection connection) throws SQLException;
+	}
+
+	@FunctionalInterface
+	private interface Binder<T> {
+		void bind(PreparedStatement preparedStatement, T row) throws SQLException;
 	}
 }
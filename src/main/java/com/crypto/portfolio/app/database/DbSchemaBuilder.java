@@ -1,12 +1,15 @@
 package com.crypto.portfolio.app.database;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.function.Supplier;
 
 /**
- * initialise the database tables
+ * initialise the database tables.
+ * The schema is created only if missing, so a persistent database (see {@link H2Constants#fileUrl}) keeps its data
+ * across restarts
  */
 public class DbSchemaBuilder {
 
@@ -17,15 +20,22 @@ public class DbSchemaBuilder {
 	}
 
 	/**
-	 * creates the tables for reference data (equities and options)
+	 * creates the tables for reference data (equities and options), with the indexes for the queries by underlying
+	 * and by maturity, and the version of the reference data
+	 * @return	false if the tables were already there, e.g. in a persistent database
 	 * @throws SQLException
 	 */
-	public void createSchema() throws SQLException {
+	public boolean createSchema() throws SQLException {
 		try (Connection connection = this.connectionSupplier.get()) {
 
+			boolean existing;
+			try (ResultSet tables = connection.getMetaData().getTables(null, null, "EQUITY", null)) {
+				existing = tables.next();
+			}
+
 			Statement statement = connection.createStatement();
 			statement.execute("" +
-					"CREATE table Equity(" +
+					"CREATE table IF NOT EXISTS Equity(" +
 					"ticker VARCHAR(20) NOT NULL, " +
 					"expectedReturn DOUBLE NOT NULL," +
 					"standardDeviation DOUBLE NOT NULL," +
@@ -34,7 +44,7 @@ public class DbSchemaBuilder {
 			);
 
 			statement.execute("" +
-					"CREATE table Option(" +
+					"CREATE table IF NOT EXISTS Option(" +
 					"ticker VARCHAR(20), " +
 					"equityTicker VARCHAR(20)," +
 					"strike NUMERIC(10,4)," +
@@ -45,6 +55,20 @@ public class DbSchemaBuilder {
 					")"
 			);
 
+			// the options of an underlying, possibly in a maturity range
+			statement.execute("CREATE INDEX IF NOT EXISTS Option_underlying_maturity ON Option(equityTicker, maturity)");
+			// the options of all underlyings in a maturity range, e.g. the expiring ones
+			statement.execute("CREATE INDEX IF NOT EXISTS Option_maturity ON Option(maturity)");
+
+			// a single row, bumped by each load of the DbDataPreparer, so copies of the data can tell they're stale
+			statement.execute("CREATE table IF NOT EXISTS ReferenceDataVersion(version BIGINT NOT NULL)");
+			try (ResultSet version = statement.executeQuery("select count(*) from ReferenceDataVersion")) {
+				version.next();
+				if (version.getLong(1) == 0)
+					statement.execute("insert into ReferenceDataVersion(version) values (0)");
+			}
+
+			return !existing;
 		}
 	}
 
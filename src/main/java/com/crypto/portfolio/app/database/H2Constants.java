@@ -1,5 +1,6 @@
 package com.crypto.portfolio.app.database;
 
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
@@ -12,6 +13,14 @@ public final class H2Constants {
 
 	public static final String H2_MEM_URL = "jdbc:h2:mem:refData;DB_CLOSE_DELAY=-1";
 
+	/**
+	 * @param file	the database file, without the ".mv.db" extension H2 adds
+	 * @return	the url of a persistent database, created on the first connection
+	 */
+	public static String fileUrl(Path file){
+		return "jdbc:h2:file:" + file.toAbsolutePath();
+	}
+
 	public static Supplier<Connection> connectionSupplier(String url){
 		return () -> {
 			try {
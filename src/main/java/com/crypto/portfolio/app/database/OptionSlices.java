@@ -0,0 +1,46 @@
+package com.crypto.portfolio.app.database;
+
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.api.Instrument;
+import com.crypto.portfolio.api.interfaces.ReferenceDataService;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * the option queries of {@link ReferenceDataService} answered by scanning instruments already in memory, e.g. a
+ * loaded snapshot. It's the slow path: a service with an index should query it instead
+ */
+final class OptionSlices {
+
+	private OptionSlices() {
+	}
+
+	static Predicate<EuOption> onUnderlying(String equityTicker) {
+		return option -> option.getUnderlying().getTicker().equals(equityTicker);
+	}
+
+	/**
+	 * @param fromMaturity	included
+	 * @param toMaturity	included
+	 */
+	static Predicate<EuOption> maturingBetween(LocalDate fromMaturity, LocalDate toMaturity) {
+		return option -> !option.getMaturity().isBefore(fromMaturity) && !option.getMaturity().isAfter(toMaturity);
+	}
+
+	/**
+	 * @return	the options among the instruments matching the filter, in {@link ReferenceDataService#MATURITY_ORDER}
+	 */
+	static List<EuOption> filter(Collection<Instrument> instruments, Predicate<EuOption> filter) {
+		return instruments.stream()
+				.filter(instrument -> instrument instanceof EuOption)
+				.map(instrument -> (EuOption) instrument)
+				.filter(filter)
+				.sorted(ReferenceDataService.MATURITY_ORDER)
+				.collect(Collectors.toList());
+	}
+
+}
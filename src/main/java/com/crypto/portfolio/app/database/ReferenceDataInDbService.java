@@ -5,37 +5,77 @@ import com.crypto.portfolio.api.EuOption;
 import com.crypto.portfolio.api.Instrument;
 import com.crypto.portfolio.api.interfaces.ReferenceDataService;
 
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
 import java.math.BigDecimal;
 import java.sql.*;
+import java.sql.Date;
 import java.time.LocalDate;
+import java.util.*;
 import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 /**
  * uses two tables (created in {@link DbSchemaBuilder}) to fetch option and equity data.
  * There's no central "instrument" table, like the java object hierarchy.
  *
- * We rather figure out whether an instrument is an equity or an option by checking the ticker symbol
+ * We rather figure out whether an instrument is an equity or an option by checking the ticker symbol.
+ *
+ * Connections come from a bounded pool and keep their prepared statements, so a lookup is a single query:
+ * options are joined with their underlying equity
  */
-public class ReferenceDataInDbService implements ReferenceDataService {
+@ThreadSafe
+public class ReferenceDataInDbService implements ReferenceDataService, Closeable {
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 4;
+	private static final long BORROW_TIMEOUT_MILLIS = 10_000;
 
-	private final Supplier<Connection> connectionSupplier;
+	private final ConnectionPool connectionPool;
 
-	private static final String EQUITY_TICKER_PATTERN = "[A-Z]+";
-	private static final String OPTION_TICKER_PATTERN = "[A-Z]+\\-[A-Z]{3}\\-[0-9]{4}\\-[0-9]+-[CP]{1}";
+	private static final Pattern EQUITY_TICKER_PATTERN = Pattern.compile("[A-Z]+");
+	private static final Pattern OPTION_TICKER_PATTERN = Pattern.compile("[A-Z]+\\-[A-Z]{3}\\-[0-9]{4}\\-[0-9]+-[CP]{1}");
 
 	private static final String SELECT_EQUITY = "select * from Equity where ticker = ?";
-	private static final String SELECT_OPTION = "select * from Option where ticker = ?";
+	private static final String SELECT_OPTIONS_WITH_UNDERLYING = "" +
+			"select o.ticker, o.strike, o.maturity, o.type, " +
+			"e.ticker as equityTicker, e.expectedReturn, e.standardDeviation " +
+			"from Option o join Equity e on o.equityTicker = e.ticker";
+	private static final String SELECT_OPTION = SELECT_OPTIONS_WITH_UNDERLYING + " where o.ticker = ?";
+	// the IN list is completed with one placeholder per ticker
+	private static final String SELECT_EQUITIES = "select * from Equity where ticker in ";
+	private static final String SELECT_OPTIONS = SELECT_OPTIONS_WITH_UNDERLYING + " where o.ticker in ";
+	private static final String SELECT_ALL_EQUITIES = "select * from Equity";
+	private static final String SELECT_VERSION = "select version from ReferenceDataVersion";
+	// the slices below are read through the indexes on (equityTicker, maturity) and on maturity
+	private static final String MATURITY_ORDER = " order by o.maturity, o.ticker";
+	private static final String SELECT_OPTIONS_ON_UNDERLYING = SELECT_OPTIONS_WITH_UNDERLYING +
+			" where o.equityTicker = ?" + MATURITY_ORDER;
+	private static final String SELECT_OPTIONS_ON_UNDERLYING_MATURING = SELECT_OPTIONS_WITH_UNDERLYING +
+			" where o.equityTicker = ? and o.maturity between ? and ?" + MATURITY_ORDER;
+	private static final String SELECT_OPTIONS_MATURING = SELECT_OPTIONS_WITH_UNDERLYING +
+			" where o.maturity between ? and ?" + MATURITY_ORDER;
 
+	/**
+	 * @param connectionSupplier	opens the connections of a pool of {@link #DEFAULT_MAX_CONNECTIONS}
+	 */
 	public ReferenceDataInDbService(Supplier<Connection> connectionSupplier) {
-		this.connectionSupplier = connectionSupplier;
+		this(connectionSupplier, DEFAULT_MAX_CONNECTIONS);
+	}
+
+	/**
+	 * @param connectionSupplier	opens the connections of the pool
+	 * @param maxConnections		lookups running at the same time, at most. Others wait for a connection
+	 */
+	public ReferenceDataInDbService(Supplier<Connection> connectionSupplier, int maxConnections) {
+		this.connectionPool = new ConnectionPool(connectionSupplier, maxConnections, BORROW_TIMEOUT_MILLIS);
 	}
 
 	@Override
 	public Instrument findInstrument(String ticker) {
-		try (Connection connection = this.connectionSupplier.get()) {
-			if (ticker.matches(EQUITY_TICKER_PATTERN))
+		try (ConnectionPool.PooledConnection connection = this.connectionPool.borrow()) {
+			if (EQUITY_TICKER_PATTERN.matcher(ticker).matches())
 				return this.findEquity(ticker, connection);
-			else if (ticker.matches(OPTION_TICKER_PATTERN))
+			else if (OPTION_TICKER_PATTERN.matcher(ticker).matches())
 				return this.findOption(ticker, connection);
 			else throw new IllegalArgumentException(ticker+" doesn't have a standard format");
 		} catch (SQLException e) {
@@ -43,39 +83,190 @@ public class ReferenceDataInDbService implements ReferenceDataService {
 		}
 	}
 
-	private EuOption findOption(String ticker, Connection connection) throws SQLException {
+	/**
+	 * uses one connection and at most two queries, whatever the number of tickers: the options together with
+	 * their underlyings, and the equities
+	 */
+	@Override
+	public Map<String, Instrument> findInstruments(Collection<String> tickers) {
+		Set<String> equityTickers = new HashSet<>();
+		Set<String> optionTickers = new HashSet<>();
+		for (String ticker : tickers) {
+			if (EQUITY_TICKER_PATTERN.matcher(ticker).matches())
+				equityTickers.add(ticker);
+			else if (OPTION_TICKER_PATTERN.matcher(ticker).matches())
+				optionTickers.add(ticker);
+			else throw new IllegalArgumentException(ticker+" doesn't have a standard format");
+		}
 
-		PreparedStatement preparedStatement = connection.prepareStatement(SELECT_OPTION);
-		preparedStatement.setString(1, ticker);
-		ResultSet resultSet = preparedStatement.executeQuery();
-		if (!resultSet.next())
-			throw new IllegalArgumentException("can't find options with ticker "+ticker);
+		Map<String, Instrument> instruments = new HashMap<>();
+		try (ConnectionPool.PooledConnection connection = this.connectionPool.borrow()) {
+			if (!optionTickers.isEmpty()) {
+				try (PreparedStatement preparedStatement = prepareInQuery(connection.connection(), SELECT_OPTIONS, optionTickers);
+					 ResultSet resultSet = preparedStatement.executeQuery()) {
+					while (resultSet.next()) {
+						EuOption option = optionOf(resultSet);
+						instruments.put(option.getTicker(), option);
+					}
+				}
+				if (instruments.size() < optionTickers.size())
+					throw new IllegalArgumentException("can't find all options among "+optionTickers);
+			}
 
-		BigDecimal strike = resultSet.getBigDecimal("strike");
-		String eqTicker = resultSet.getString("equityTicker");
-		LocalDate maturity = resultSet.getDate("maturity").toLocalDate();
-		EuOption.OptionType optionType = EuOption
-				.fromSymbol(resultSet.getString("type"));
-		resultSet.close();
+			if (!equityTickers.isEmpty()) {
+				try (PreparedStatement preparedStatement = prepareInQuery(connection.connection(), SELECT_EQUITIES, equityTickers);
+					 ResultSet resultSet = preparedStatement.executeQuery()) {
+					while (resultSet.next()) {
+						Equity equity = equityOf(resultSet, "ticker");
+						instruments.put(equity.getTicker(), equity);
+					}
+				}
+				if (instruments.size() < optionTickers.size() + equityTickers.size())
+					throw new IllegalArgumentException("can't find all equities among "+equityTickers);
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException(e);
+		}
+		return instruments;
+	}
 
-		// let's load the underlying equity first
-		Equity underlying = this.findEquity(eqTicker, connection);
+	/**
+	 * @return	the version of the reference data, bumped by each load of the {@link DbDataPreparer}
+	 */
+	public long getDataVersion() {
+		try (ConnectionPool.PooledConnection connection = this.connectionPool.borrow();
+			 ResultSet resultSet = connection.prepare(SELECT_VERSION).executeQuery()) {
+			if (!resultSet.next())
+				throw new IllegalStateException("no reference data version, the schema is not complete");
+			return resultSet.getLong(1);
+		} catch (SQLException e) {
+			throw new IllegalStateException(e);
+		}
+	}
 
-		return new EuOption(
-				ticker, underlying, strike, maturity, optionType
+	/**
+	 * reads both tables once: the equities, then the options joined with their underlyings
+	 */
+	@Override
+	public Map<String, Instrument> findAllInstruments() {
+		Map<String, Instrument> instruments = new HashMap<>();
+		try (ConnectionPool.PooledConnection connection = this.connectionPool.borrow()) {
+			try (ResultSet resultSet = connection.prepare(SELECT_ALL_EQUITIES).executeQuery()) {
+				while (resultSet.next()) {
+					Equity equity = equityOf(resultSet, "ticker");
+					instruments.put(equity.getTicker(), equity);
+				}
+			}
+			try (ResultSet resultSet = connection.prepare(SELECT_OPTIONS_WITH_UNDERLYING).executeQuery()) {
+				while (resultSet.next()) {
+					EuOption option = optionOf(resultSet);
+					instruments.put(option.getTicker(), option);
+				}
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException(e);
+		}
+		return instruments;
+	}
+
+	@Override
+	public List<EuOption> findOptionsOnUnderlying(String equityTicker) {
+		return this.findOptions(SELECT_OPTIONS_ON_UNDERLYING, equityTicker);
+	}
+
+	@Override
+	public List<EuOption> findOptionsOnUnderlying(String equityTicker, LocalDate fromMaturity, LocalDate toMaturity) {
+		return this.findOptions(SELECT_OPTIONS_ON_UNDERLYING_MATURING,
+				equityTicker, Date.valueOf(fromMaturity), Date.valueOf(toMaturity));
+	}
+
+	@Override
+	public List<EuOption> findOptionsMaturingBetween(LocalDate fromMaturity, LocalDate toMaturity) {
+		return this.findOptions(SELECT_OPTIONS_MATURING, Date.valueOf(fromMaturity), Date.valueOf(toMaturity));
+	}
+
+	/**
+	 * @param query			one of the option slices
+	 * @param parameters	bound in order
+	 */
+	private List<EuOption> findOptions(String query, Object... parameters) {
+		List<EuOption> options = new ArrayList<>();
+		try (ConnectionPool.PooledConnection connection = this.connectionPool.borrow()) {
+			PreparedStatement preparedStatement = connection.prepare(query);
+			for (int i = 0; i < parameters.length; i++)
+				preparedStatement.setObject(i + 1, parameters[i]);
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next())
+					options.add(optionOf(resultSet));
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException(e);
+		}
+		return options;
+	}
+
+	/**
+	 * closes the pooled connections
+	 */
+	@Override
+	public void close() {
+		this.connectionPool.close();
+	}
+
+	/**
+	 * @param query		ending with "in "
+	 * @param values	bound in iteration order
+	 */
+	private static PreparedStatement prepareInQuery(Connection connection, String query, Collection<String> values) throws SQLException {
+		PreparedStatement preparedStatement = connection.prepareStatement(
+				query + "(" + String.join(",", Collections.nCopies(values.size(), "?")) + ")"
 		);
+		int index = 1;
+		for (String value : values)
+			preparedStatement.setString(index++, value);
+		return preparedStatement;
 	}
 
-	private Equity findEquity(String ticker, Connection connection) throws SQLException {
-		PreparedStatement preparedStatement = connection.prepareStatement(SELECT_EQUITY);
+	private EuOption findOption(String ticker, ConnectionPool.PooledConnection connection) throws SQLException {
+		PreparedStatement preparedStatement = connection.prepare(SELECT_OPTION);
 		preparedStatement.setString(1, ticker);
-		ResultSet resultSet = preparedStatement.executeQuery();
-		if (!resultSet.next())
-			throw new IllegalArgumentException("can't find equities with ticker "+ticker);
+		try (ResultSet resultSet = preparedStatement.executeQuery()) {
+			if (!resultSet.next())
+				throw new IllegalArgumentException("can't find options with ticker "+ticker);
+			return optionOf(resultSet);
+		}
+	}
+
+	private Equity findEquity(String ticker, ConnectionPool.PooledConnection connection) throws SQLException {
+		PreparedStatement preparedStatement = connection.prepare(SELECT_EQUITY);
+		preparedStatement.setString(1, ticker);
+		try (ResultSet resultSet = preparedStatement.executeQuery()) {
+			if (!resultSet.next())
+				throw new IllegalArgumentException("can't find equities with ticker "+ticker);
+			return equityOf(resultSet, "ticker");
+		}
+	}
+
+	/**
+	 * @param tickerColumn	"equityTicker" when the equity is read as the underlying of an option
+	 */
+	private static Equity equityOf(ResultSet resultSet, String tickerColumn) throws SQLException {
 		return new Equity(
-				resultSet.getString("ticker"),
+				resultSet.getString(tickerColumn),
 				resultSet.getDouble("expectedReturn"),
 				resultSet.getDouble("standardDeviation")
 		);
 	}
+
+	/**
+	 * @param resultSet		a row of the options joined with their underlying
+	 */
+	private static EuOption optionOf(ResultSet resultSet) throws SQLException {
+		BigDecimal strike = resultSet.getBigDecimal("strike");
+		LocalDate maturity = resultSet.getDate("maturity").toLocalDate();
+		EuOption.OptionType optionType = EuOption.fromSymbol(resultSet.getString("type"));
+		return new EuOption(
+				resultSet.getString("ticker"), equityOf(resultSet, "equityTicker"), strike, maturity, optionType
+		);
+	}
 }
@@ -0,0 +1,181 @@
+package com.crypto.portfolio.app.database;
+
+import com.crypto.portfolio.api.Equity;
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.api.Instrument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * reads and writes all the instruments in a compact binary file, so they can be loaded at startup without
+ * querying the database. All numbers are big-endian:
+ *
+ * - header, {@value #HEADER_SIZE} bytes: magic number, format version, number of equities, number of options
+ *   (int each), version of the data it was taken from, length of the payload and its CRC32 (long each)
+ * - equities: ticker, expected return and standard deviation (double each)
+ * - options: ticker, index of the underlying among the equities (int), strike (unscaled value as a string of
+ *   two's-complement bytes, then the scale as int), maturity as epoch day (int), type symbol (byte)
+ *
+ * Strings are an unsigned short length followed by as many UTF-8 bytes.
+ * Reading maps the file, checks the data version and the checksum and builds the instruments straight from the
+ * mapped bytes.
+ */
+public final class ReferenceDataSnapshot {
+
+	private ReferenceDataSnapshot() {
+	}
+
+	static final int MAGIC = 0x52454644; // "REFD"
+	static final int VERSION = 2;
+	static final int HEADER_SIZE = 40;
+
+	/**
+	 * writes to a temporary file first, then moves it in place: a failed write never leaves a partial snapshot
+	 * @param file
+	 * @param dataVersion	of the source of the instruments, e.g. {@link ReferenceDataInDbService#getDataVersion()}
+	 * @param instruments	the underlyings of the options are written too, if not among them
+	 * @throws IOException
+	 */
+	public static void write(Path file, long dataVersion, Collection<? extends Instrument> instruments) throws IOException {
+		// equities first, so options can point at their underlying
+		Map<String, Integer> equityIndexes = new HashMap<>();
+		List<Equity> equities = new ArrayList<>();
+		List<EuOption> options = new ArrayList<>();
+		for (Instrument instrument : instruments) {
+			Equity equity;
+			if (instrument instanceof Equity)
+				equity = (Equity) instrument;
+			else if (instrument instanceof EuOption) {
+				equity = ((EuOption) instrument).getUnderlying();
+				options.add((EuOption) instrument);
+			}
+			else throw new IllegalArgumentException(instrument.getClass().getName() +" not expected");
+			if (!equityIndexes.containsKey(equity.getTicker())) {
+				equityIndexes.put(equity.getTicker(), equities.size());
+				equities.add(equity);
+			}
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * (equities.size() + options.size()));
+		DataOutputStream payload = new DataOutputStream(bytes);
+		for (Equity equity : equities) {
+			writeString(payload, equity.getTicker());
+			payload.writeDouble(equity.getExpectedReturn());
+			payload.writeDouble(equity.getAnnualizedStandardDeviation());
+		}
+		for (EuOption option : options) {
+			writeString(payload, option.getTicker());
+			payload.writeInt(equityIndexes.get(option.getUnderlying().getTicker()));
+			byte[] unscaled = option.getStrike().unscaledValue().toByteArray();
+			payload.writeShort(unscaled.length);
+			payload.write(unscaled);
+			payload.writeInt(option.getStrike().scale());
+			payload.writeInt((int) option.getMaturity().toEpochDay());
+			payload.writeByte(option.getOptionType().symbol.charAt(0));
+		}
+		payload.flush();
+		byte[] payloadBytes = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(payloadBytes);
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putInt(equities.size()).putInt(options.size())
+				.putLong(dataVersion).putLong(payloadBytes.length).putLong(crc.getValue());
+		header.flip();
+
+		Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer body = ByteBuffer.wrap(payloadBytes);
+				while (header.hasRemaining())
+					channel.write(header);
+				while (body.hasRemaining())
+					channel.write(body);
+				channel.force(false);
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * @param file
+	 * @param dataVersion	the current version of the source of the instruments
+	 * @return	ticker -> instrument, equities first
+	 * @throws IOException	if the file can't be read, e.g. it doesn't exist
+	 * @throws IllegalArgumentException	if it's not a snapshot of this format, it was taken from another version of the
+	 * 									data, or it's corrupted
+	 */
+	public static Map<String, Instrument> read(Path file, long dataVersion) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// the mapping stays valid once the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+			throw new IllegalArgumentException(file+" is not a reference data snapshot");
+		if (buffer.getInt(4) != VERSION)
+			throw new IllegalArgumentException("unsupported version "+buffer.getInt(4));
+		int equityCount = buffer.getInt(8);
+		int optionCount = buffer.getInt(12);
+		if (buffer.getLong(16) != dataVersion)
+			throw new IllegalArgumentException(file+" was taken from version "+buffer.getLong(16)+" of the data, not "+dataVersion);
+		long payloadLength = buffer.getLong(24);
+		long checksum = buffer.getLong(32);
+		if (payloadLength != buffer.capacity() - HEADER_SIZE)
+			throw new IllegalArgumentException(file+" is truncated");
+
+		buffer.position(HEADER_SIZE);
+		CRC32 crc = new CRC32();
+		crc.update(buffer.slice());
+		if (crc.getValue() != checksum)
+			throw new IllegalArgumentException(file+" is corrupted");
+
+		Map<String, Instrument> instruments = new LinkedHashMap<>((equityCount + optionCount) * 4 / 3 + 1);
+		Equity[] equities = new Equity[equityCount];
+		for (int i = 0; i < equityCount; i++) {
+			equities[i] = new Equity(readString(buffer), buffer.getDouble(), buffer.getDouble());
+			instruments.put(equities[i].getTicker(), equities[i]);
+		}
+		for (int i = 0; i < optionCount; i++) {
+			String ticker = readString(buffer);
+			Equity underlying = equities[buffer.getInt()];
+			byte[] unscaled = new byte[buffer.getShort() & 0xFFFF];
+			buffer.get(unscaled);
+			BigDecimal strike = new BigDecimal(new BigInteger(unscaled), buffer.getInt());
+			LocalDate maturity = LocalDate.ofEpochDay(buffer.getInt());
+			EuOption.OptionType optionType = EuOption.fromSymbol(String.valueOf((char) buffer.get()));
+			instruments.put(ticker, new EuOption(ticker, underlying, strike, maturity, optionType));
+		}
+		return instruments;
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeShort(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer){
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
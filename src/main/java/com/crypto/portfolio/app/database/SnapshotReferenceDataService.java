@@ -0,0 +1,135 @@
+package com.crypto.portfolio.app.database;
+
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.api.Instrument;
+import com.crypto.portfolio.api.Logger;
+import com.crypto.portfolio.api.interfaces.ReferenceDataService;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * serves the instruments from a {@link ReferenceDataSnapshot}, falling back to another reference data service
+ * (e.g. the database) for anything the snapshot can't answer.
+ *
+ * {@link #findAllInstruments()}, which the cache calls to preload, reads the snapshot if there's a valid one, taken
+ * from the current version of the data. Otherwise it loads everything from the fallback and writes the snapshot for
+ * the next start. A snapshot loaded already is not refreshed when the reference data changes: {@link #invalidate()}
+ * it then.
+ * Tickers missing from the snapshot go to the fallback. Once the snapshot is loaded, the option queries scan it in
+ * memory; before, they go to the fallback.
+ */
+@ThreadSafe
+public class SnapshotReferenceDataService implements ReferenceDataService {
+
+	private final ReferenceDataService fallback;
+	private final Path snapshotFile;
+	private final LongSupplier dataVersion;
+
+	// null till the first findAllInstruments
+	private volatile Map<String, Instrument> instruments;
+
+	/**
+	 * @param dataVersion	the current version of the data of the fallback, e.g. {@link ReferenceDataInDbService#getDataVersion()}.
+	 *                      A snapshot taken from another version is discarded
+	 */
+	public SnapshotReferenceDataService(ReferenceDataService fallback, Path snapshotFile, LongSupplier dataVersion) {
+		this.fallback = Objects.requireNonNull(fallback);
+		this.snapshotFile = Objects.requireNonNull(snapshotFile);
+		this.dataVersion = Objects.requireNonNull(dataVersion);
+	}
+
+	@Override
+	public Instrument findInstrument(String ticker) throws IllegalArgumentException {
+		Map<String, Instrument> instruments = this.instruments;
+		Instrument instrument = instruments == null ? null : instruments.get(ticker);
+		return instrument != null ? instrument : this.fallback.findInstrument(ticker);
+	}
+
+	@Override
+	public Map<String, Instrument> findInstruments(Collection<String> tickers) throws IllegalArgumentException {
+		Map<String, Instrument> instruments = this.instruments;
+		if (instruments == null)
+			return this.fallback.findInstruments(tickers);
+		Map<String, Instrument> found = new HashMap<>();
+		List<String> missing = new ArrayList<>();
+		for (String ticker : tickers) {
+			Instrument instrument = instruments.get(ticker);
+			if (instrument != null)
+				found.put(ticker, instrument);
+			else
+				missing.add(ticker);
+		}
+		if (!missing.isEmpty())
+			found.putAll(this.fallback.findInstruments(missing));
+		return found;
+	}
+
+	@Override
+	public synchronized Map<String, Instrument> findAllInstruments() {
+		if (this.instruments != null)
+			return this.instruments;
+
+		// read before the data: a change in between makes the next start discard the snapshot, not miss the change
+		long dataVersion = this.dataVersion.getAsLong();
+		Map<String, Instrument> instruments = null;
+		try {
+			instruments = ReferenceDataSnapshot.read(this.snapshotFile, dataVersion);
+			Logger.log(instruments.size()+" instruments loaded from "+this.snapshotFile);
+		} catch (NoSuchFileException e) {
+			// first start
+		} catch (IOException | IllegalArgumentException e) {
+			Logger.log("discarding the reference data snapshot: "+e.getMessage());
+		}
+
+		if (instruments == null) {
+			instruments = this.fallback.findAllInstruments();
+			if (!instruments.isEmpty())
+				try {
+					ReferenceDataSnapshot.write(this.snapshotFile, dataVersion, instruments.values());
+				} catch (IOException e) {
+					// it'll be tried again at the next start
+					Logger.log("can't write the reference data snapshot: "+e.getMessage());
+				}
+		}
+		this.instruments = Collections.unmodifiableMap(instruments);
+		return this.instruments;
+	}
+
+	/**
+	 * deletes the snapshot, e.g. because the reference data changed. The next preload reads the fallback
+	 * @throws IOException
+	 */
+	public synchronized void invalidate() throws IOException {
+		this.instruments = null;
+		Files.deleteIfExists(this.snapshotFile);
+	}
+
+	@Override
+	public List<EuOption> findOptionsOnUnderlying(String equityTicker) {
+		Map<String, Instrument> instruments = this.instruments;
+		return instruments == null ? this.fallback.findOptionsOnUnderlying(equityTicker)
+				: OptionSlices.filter(instruments.values(), OptionSlices.onUnderlying(equityTicker));
+	}
+
+	@Override
+	public List<EuOption> findOptionsOnUnderlying(String equityTicker, LocalDate fromMaturity, LocalDate toMaturity) {
+		Map<String, Instrument> instruments = this.instruments;
+		return instruments == null ? this.fallback.findOptionsOnUnderlying(equityTicker, fromMaturity, toMaturity)
+				: OptionSlices.filter(instruments.values(),
+						OptionSlices.onUnderlying(equityTicker).and(OptionSlices.maturingBetween(fromMaturity, toMaturity)));
+	}
+
+	@Override
+	public List<EuOption> findOptionsMaturingBetween(LocalDate fromMaturity, LocalDate toMaturity) {
+		Map<String, Instrument> instruments = this.instruments;
+		return instruments == null ? this.fallback.findOptionsMaturingBetween(fromMaturity, toMaturity)
+				: OptionSlices.filter(instruments.values(), OptionSlices.maturingBetween(fromMaturity, toMaturity));
+	}
+}
@@ -0,0 +1,55 @@
+package com.crypto.portfolio.app.implementations;
+
+
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.api.interfaces.BatchOptionPriceService;
+import com.crypto.portfolio.app.utils.Constants;
+import com.crypto.portfolio.app.utils.OptionCalcUtils;
+import com.crypto.portfolio.app.utils.StandardisedDistributionSampler;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * prices european options with Black-Scholes, either one by one or as a whole book.
+ * Both ways give the same prices
+ */
+@ThreadSafe
+public class BlackScholesOptionPriceService implements BatchOptionPriceService {
+
+	private final StandardisedDistributionSampler distributionSampler;
+
+	/**
+	 * @param distributionSampler	it's read-only once built, so it can be shared by the pricing threads
+	 */
+	public BlackScholesOptionPriceService(StandardisedDistributionSampler distributionSampler) {
+		this.distributionSampler = Objects.requireNonNull(distributionSampler);
+	}
+
+	@Override
+	public BigDecimal price(EuOption option, LocalDate currentDate, BigDecimal equityPrice) {
+		return OptionCalcUtils.priceOption(this.distributionSampler, option, equityPrice, currentDate);
+	}
+
+	@Override
+	public void priceBatch(
+			double[] stockPrices,
+			double[] strikePrices,
+			double[] annualizedStandardDeviations,
+			double[] yearsToMaturity,
+			boolean[] calls,
+			double[] prices,
+			int from,
+			int to
+	) {
+		OptionCalcUtils.priceOptions(this.distributionSampler, stockPrices, strikePrices, annualizedStandardDeviations,
+				yearsToMaturity, calls, prices, from, to);
+	}
+
+	@Override
+	public BigDecimal toPrice(double price) {
+		return Constants.asInternalPrice(price);
+	}
+}
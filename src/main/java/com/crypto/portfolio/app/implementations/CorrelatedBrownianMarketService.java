@@ -0,0 +1,261 @@
+package com.crypto.portfolio.app.implementations;
+
+
+import com.crypto.portfolio.api.Equity;
+import com.crypto.portfolio.api.interfaces.MarketService;
+import com.crypto.portfolio.app.utils.BrownianUtils;
+import com.crypto.portfolio.app.utils.Constants;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * moves the prices of a set of equities together, as correlated Brownian motions. Like
+ * {@link RandomisedBrownianMarketService}, the new prices depend on the time "virtually" passed since the last request,
+ * and backwards requests are not accepted.
+ *
+ * Each request moves all the equities at once: one vector of independent gaussians is drawn, then correlated by the
+ * Cholesky factor of the correlation matrix, computed once. Each price moves by exp((mu - sigma^2 / 2) * dt +
+ * sigma * sqrt(dt) * Z), the geometric version of the (1 + mu * dt + sigma * sqrt(dt) * Z) step of {@link BrownianUtils}:
+ * the sigma^2 / 2 correction makes the expected price grow at the expected return of the equity like there, but it
+ * can't go negative, so there's never a need to draw again.
+ *
+ * Whole price paths on a fixed time grid can be generated ahead with {@link #pregeneratePath(long, int)}: requests on
+ * the grid then just read the path, leaving the CPU to the valuation during backtests.
+ *
+ * It's thread safe and lock free: the prices are an immutable state, replaced by compare-and-set
+ */
+@ThreadSafe
+public class CorrelatedBrownianMarketService implements MarketService {
+
+	private final int size;
+	private final Map<String, Integer> tickerIndexes;
+	private final double[] expectedReturns;
+	private final double[] standardDeviations;
+	// L, such that L * L^T is the correlation matrix, flattened by rows
+	private final double[] choleskyFactor;
+
+	private final AtomicReference<MarketState> currentState;
+	// holds null if no path was generated, or if the prices moved away from it
+	private final AtomicReference<PricePath> path = new AtomicReference<>();
+
+	/**
+	 * @param equities			the equities which can be enquired
+	 * @param initialPrices		the price of each equity at the begin timestamp, in the same order
+	 * @param correlations		correlation between the returns of the equities, in the same order
+	 * @param beginTimestamp	it's the "initial" timestamp for which the initialised prices apply
+	 * @throws IllegalArgumentException	if the sizes don't match, or the correlations are not a valid correlation matrix
+	 */
+	public CorrelatedBrownianMarketService(
+			List<Equity> equities,
+			double[] initialPrices,
+			double[][] correlations,
+			LocalDateTime beginTimestamp
+	) {
+		this.size = equities.size();
+		if (initialPrices.length != this.size || correlations.length != this.size)
+			throw new IllegalArgumentException("one initial price and one row of correlations are needed for each equity");
+		this.choleskyFactor = BrownianUtils.cholesky(correlations);
+
+		Map<String, Integer> indexes = new HashMap<>();
+		this.expectedReturns = new double[this.size];
+		this.standardDeviations = new double[this.size];
+		for (int i = 0; i < this.size; i++) {
+			Equity equity = equities.get(i);
+			if (indexes.put(equity.getTicker(), i) != null)
+				throw new IllegalArgumentException("duplicated equity "+equity.getTicker());
+			if (initialPrices[i] <= 0)
+				throw new IllegalArgumentException("the price of "+equity.getTicker()+" must be positive");
+			this.expectedReturns[i] = equity.getExpectedReturn();
+			this.standardDeviations[i] = equity.getAnnualizedStandardDeviation();
+		}
+		this.tickerIndexes = Collections.unmodifiableMap(indexes);
+		this.currentState = new AtomicReference<>(new MarketState(beginTimestamp, initialPrices.clone(), 0));
+	}
+
+	/**
+	 * moves all equities
+	 * @throws IllegalStateException	if the equity is not known
+	 * @throws IllegalArgumentException	if the timestamp is before the last one requested
+	 */
+	@Override
+	public BigDecimal getPrice(String ticker, LocalDateTime timestamp) {
+		int index = this.indexOf(ticker);
+		MarketState state = this.moveTo(timestamp);
+		return Constants.asInternalPrice(state.prices[state.offset + index]);
+	}
+
+	/**
+	 * moves all equities once, so the prices are consistent with each other
+	 * @throws IllegalStateException	if any equity is not known
+	 * @throws IllegalArgumentException	if the timestamp is before the last one requested
+	 */
+	@Override
+	public Map<String, BigDecimal> getPrices(Collection<String> tickers, LocalDateTime timestamp) {
+		MarketState state = this.moveTo(timestamp);
+		Map<String, BigDecimal> prices = new HashMap<>(tickers.size() * 4 / 3 + 1);
+		for (String ticker : tickers)
+			prices.put(ticker, Constants.asInternalPrice(state.prices[state.offset + this.indexOf(ticker)]));
+		return prices;
+	}
+
+	/**
+	 * generates the prices of all equities on a time grid, starting from the last prices requested.
+	 * Requests for timestamps on the grid read them, till a request outside the grid moves the prices away from it.
+	 * It takes (steps + 1) * (number of equities) doubles of memory
+	 * @param stepMillis	interval of the grid, e.g. the emulated interval of the portfolio service
+	 * @param steps			number of intervals to generate
+	 */
+	public void pregeneratePath(long stepMillis, int steps){
+		if (stepMillis <= 0 || steps <= 0)
+			throw new IllegalArgumentException("the interval and the number of steps must be positive");
+		MarketState origin = this.currentState.get();
+
+		double[] prices = new double[(steps + 1) * this.size];
+		System.arraycopy(origin.prices, origin.offset, prices, 0, this.size);
+		double[] drifts = new double[this.size];
+		double[] diffusions = new double[this.size];
+		this.stepFactors(stepMillis, drifts, diffusions);
+		double[] gaussians = new double[this.size];
+		for (int step = 1; step <= steps; step++)
+			this.step(prices, (step - 1) * this.size, prices, step * this.size, drifts, diffusions, gaussians);
+
+		this.path.set(new PricePath(origin, stepMillis, steps, prices));
+	}
+
+	private int indexOf(String ticker){
+		Integer index = this.tickerIndexes.get(ticker);
+		if (index == null)
+			throw new IllegalStateException("unknown equity "+ticker);
+		return index;
+	}
+
+	/**
+	 * @return	the state at the requested timestamp, after moving all prices if needed
+	 */
+	private MarketState moveTo(LocalDateTime timestamp){
+		while (true) {
+			MarketState state = this.currentState.get();
+			long deltaMillis = ChronoUnit.MILLIS.between(state.time, timestamp);
+			if (deltaMillis < 0)
+				throw new IllegalArgumentException("prices were already requested for "+state.time);
+			if (deltaMillis == 0)
+				return state;
+
+			PricePath path = this.path.get();
+			MarketState next = path == null ? null : path.stateAt(state, timestamp);
+			if (next == null) {
+				double[] prices = new double[this.size];
+				double[] drifts = new double[this.size];
+				double[] diffusions = new double[this.size];
+				this.stepFactors(deltaMillis, drifts, diffusions);
+				this.step(state.prices, state.offset, prices, 0, drifts, diffusions, new double[this.size]);
+				next = new MarketState(timestamp, prices, 0);
+			}
+
+			// if another thread moved the prices in the meantime, we start again from its prices
+			if (this.currentState.compareAndSet(state, next)) {
+				if (path != null && next.prices != path.prices)
+					// off the grid: the path doesn't follow from these prices anymore. Unless a new one was generated
+					this.path.compareAndSet(path, null);
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * the deterministic and the random part of the log return of each equity, for the given interval:
+	 * (mu - sigma^2 / 2) * dt and sigma * sqrt(dt)
+	 */
+	private void stepFactors(long millis, double[] drifts, double[] diffusions){
+		for (int i = 0; i < this.size; i++) {
+			diffusions[i] = BrownianUtils.deltaMultiplier(millis, 0, this.standardDeviations[i], 1);
+			drifts[i] = BrownianUtils.deltaMultiplier(millis, this.expectedReturns[i], this.standardDeviations[i], 0)
+					- diffusions[i] * diffusions[i] / 2;
+		}
+	}
+
+	/**
+	 * moves all prices by one interval
+	 * @param from			previous prices, starting at fromOffset
+	 * @param to			where the new prices are written, from toOffset
+	 * @param gaussians		scratch array
+	 */
+	private void step(
+			double[] from, int fromOffset,
+			double[] to, int toOffset,
+			double[] drifts, double[] diffusions,
+			double[] gaussians
+	){
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int i = 0; i < this.size; i++)
+			gaussians[i] = random.nextGaussian();
+
+		for (int i = 0; i < this.size; i++) {
+			// correlated gaussian: row i of the lower triangular factor, times the independent ones
+			double correlated = 0;
+			int row = i * this.size;
+			for (int k = 0; k <= i; k++)
+				correlated += this.choleskyFactor[row + k] * gaussians[k];
+			to[toOffset + i] = from[fromOffset + i] * Math.exp(drifts[i] + diffusions[i] * correlated);
+		}
+	}
+
+	/**
+	 * prices of all equities at a given time. The prices array is never modified once the state is published
+	 */
+	@Immutable
+	private static class MarketState {
+		private final LocalDateTime time;
+		private final double[] prices;
+		private final int offset;
+
+		private MarketState(LocalDateTime time, double[] prices, int offset) {
+			this.time = time;
+			this.prices = prices;
+			this.offset = offset;
+		}
+	}
+
+	/**
+	 * prices generated ahead, on a time grid starting from the origin state
+	 */
+	@Immutable
+	private static class PricePath {
+		private final MarketState origin;
+		private final long stepMillis;
+		private final int steps;
+		// the prices at each step, one after the other. Step 0 is the origin
+		private final double[] prices;
+
+		private PricePath(MarketState origin, long stepMillis, int steps, double[] prices) {
+			this.origin = origin;
+			this.stepMillis = stepMillis;
+			this.steps = steps;
+			this.prices = prices;
+		}
+
+		/**
+		 * @param current	the current state
+		 * @param timestamp	the requested time
+		 * @return	the state at the requested time, read from the path. Null if the current state is not on
+		 * 			the path, or the time is not on the grid
+		 */
+		private MarketState stateAt(MarketState current, LocalDateTime timestamp){
+			if (current != this.origin && current.prices != this.prices)
+				return null;
+			long millis = ChronoUnit.MILLIS.between(this.origin.time, timestamp);
+			if (millis % this.stepMillis != 0 || millis / this.stepMillis > this.steps)
+				return null;
+			int equities = this.prices.length / (this.steps + 1);
+			return new MarketState(timestamp, this.prices, (int) (millis / this.stepMillis) * equities);
+		}
+	}
+
+}
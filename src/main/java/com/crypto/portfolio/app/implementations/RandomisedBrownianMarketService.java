@@ -4,14 +4,19 @@ package com.crypto.portfolio.app.implementations;
 import com.crypto.portfolio.api.Equity;
 import com.crypto.portfolio.api.interfaces.MarketService;
 import com.crypto.portfolio.app.utils.BrownianUtils;
+import com.crypto.portfolio.app.utils.Constants;
 
-import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
@@ -22,13 +27,20 @@ import java.util.stream.Collectors;
  * time "virtually" passed since then.
  *
  * Please note that this implementation does not accept backwards prices; once the price for the timestamp T has been
- * requested, you cannot ask for T1 where T1 < T
+ * requested, you cannot ask for T1 where T1 < T. Requests for T itself get the very same price.
+ *
+ * It's thread safe and lock free: the last price of each equity is an immutable object, replaced by compare-and-set.
+ * So concurrent requests for the same equity and timestamp all get the same price, and each move of the price
+ * starts from the previous one.
+ *
+ * Prices are kept as doubles and become BigDecimal only when returned
  */
-@NotThreadSafe
+@ThreadSafe
 public class RandomisedBrownianMarketService implements MarketService {
 
 	private final Map<String, Equity> referenceData;
-	private final Map<String, LastPrice> currentPrices;
+	// the keys never change after construction, only the referenced prices do
+	private final Map<String, AtomicReference<LastPrice>> currentPrices;
 
 	/**
 	 * initialise the random market service
@@ -38,33 +50,65 @@ public class RandomisedBrownianMarketService implements MarketService {
 	public RandomisedBrownianMarketService(Map<Equity, BigDecimal> initialPrices, LocalDateTime beginTimestamp) {
 		// cache the equity reference data
 		this.referenceData = initialPrices.keySet().stream().collect(Collectors.toMap(Equity::getTicker, equity -> equity));
-		this.currentPrices = new HashMap<>();
+		Map<String, AtomicReference<LastPrice>> prices = new HashMap<>();
 		initialPrices.forEach(
-				(equity, price) -> this.currentPrices.put(equity.getTicker(), new LastPrice(beginTimestamp, price))
+				(equity, price) -> prices.put(equity.getTicker(),
+						new AtomicReference<>(new LastPrice(beginTimestamp, price.doubleValue())))
 		);
+		this.currentPrices = Collections.unmodifiableMap(prices);
 	}
 
+	/**
+	 * @throws IllegalArgumentException	if the timestamp is before the last one requested for the equity
+	 */
 	@Override
 	public BigDecimal getPrice(String ticker, LocalDateTime timestamp) {
+		return Constants.asInternalPrice(this.movePrice(ticker, timestamp));
+	}
 
+	/**
+	 * all prices are moved in a single pass, into a map sized once. Each price moves atomically, but the
+	 * batch as a whole doesn't
+	 * @throws IllegalArgumentException	if the timestamp is before the last one requested for any of the equities
+	 */
+	@Override
+	public Map<String, BigDecimal> getPrices(Collection<String> tickers, LocalDateTime timestamp) {
+		Map<String, BigDecimal> prices = new HashMap<>(tickers.size() * 4 / 3 + 1);
+		for (String ticker : tickers)
+			prices.put(ticker, Constants.asInternalPrice(this.movePrice(ticker, timestamp)));
+		return prices;
+	}
+
+	/**
+	 * @return	the new price, after the time passed since the previous request
+	 */
+	private double movePrice(String ticker, LocalDateTime timestamp){
 		Equity equity = Objects.requireNonNull(this.referenceData.get(ticker));
-		LastPrice lastPrice = this.currentPrices.get(ticker);
+		AtomicReference<LastPrice> currentPrice = this.currentPrices.get(ticker);
 
-		long deltaMillis = ChronoUnit.MILLIS.between(lastPrice.time, timestamp);
+		while (true) {
+			LastPrice lastPrice = currentPrice.get();
+			long deltaMillis = ChronoUnit.MILLIS.between(lastPrice.time, timestamp);
+			if (deltaMillis < 0)
+				throw new IllegalArgumentException("the price of "+ticker+" was already requested for "+lastPrice.time);
+			if (deltaMillis == 0)
+				return lastPrice.price;
 
-		BigDecimal newPrice = BrownianUtils.brownianMotionPrice(lastPrice.price, deltaMillis,
-				equity.getExpectedReturn(), equity.getAnnualizedStandardDeviation());
+			double newPrice = BrownianUtils.brownianMotionPrice(lastPrice.price, deltaMillis,
+					equity.getExpectedReturn(), equity.getAnnualizedStandardDeviation());
 
-		// update price / timestamp in the local map
-		this.currentPrices.put(ticker, new LastPrice(timestamp, newPrice));
-		return newPrice;
+			// if another thread moved the price in the meantime, we start again from its price
+			if (currentPrice.compareAndSet(lastPrice, new LastPrice(timestamp, newPrice)))
+				return newPrice;
+		}
 	}
 
+	@Immutable
 	private static class LastPrice{
 		private final LocalDateTime time;
-		private final BigDecimal price;
+		private final double price;
 
-		public LastPrice(LocalDateTime time, BigDecimal price) {
+		public LastPrice(LocalDateTime time, double price) {
 			this.time = time;
 			this.price = price;
 		}
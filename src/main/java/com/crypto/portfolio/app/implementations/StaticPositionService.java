@@ -2,26 +2,26 @@ package com.crypto.portfolio.app.implementations;
 
 
 import com.crypto.portfolio.api.interfaces.Position;
-import com.crypto.portfolio.api.interfaces.PositionService;
+import com.crypto.portfolio.api.interfaces.PositionSnapshot;
+import com.crypto.portfolio.api.interfaces.VersionedPositionService;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Objects;
 
 /**
- * Always return the same set of given positions
+ * Always return the same set of given positions, copied when the service is created: a single version
  */
-public class StaticPositionService implements PositionService {
+public class StaticPositionService implements VersionedPositionService {
 
-	private final List<Position> positions;
+	private final PositionSnapshot snapshot;
 
 
 	public StaticPositionService(List<Position> positions) {
-		this.positions = Objects.requireNonNull(positions);
+		this.snapshot = new PositionSnapshot(0, positions);
 	}
 
 	@Override
-	public List<Position> getPositions(LocalDateTime timestamp) {
-		return this.positions;
+	public PositionSnapshot getSnapshot(LocalDateTime timestamp) {
+		return this.snapshot;
 	}
 }
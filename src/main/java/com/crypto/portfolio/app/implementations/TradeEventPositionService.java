@@ -0,0 +1,211 @@
+package com.crypto.portfolio.app.implementations;
+
+
+import com.crypto.portfolio.api.Logger;
+import com.crypto.portfolio.api.interfaces.Position;
+import com.crypto.portfolio.api.interfaces.PositionSnapshot;
+import com.crypto.portfolio.api.interfaces.VersionedPositionService;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * keeps the positions from a feed of trade fills, instead of reading the whole book again at each update.
+ *
+ * Fills can be submitted by any thread to a lock-free queue; they're applied when positions are asked for.
+ * Each fill is appended to a log, sorted by timestamp, and the net quantity of its ticker (interned as an int id,
+ * indexing an array of longs) is updated. Every {@code checkpointInterval} fills, the net quantities are copied into
+ * a checkpoint, so the positions at any past timestamp cost a binary search in the log plus the replay of at most
+ * {@code checkpointInterval} fills from the previous checkpoint.
+ *
+ * The log is never rewritten, so the positions already served for a timestamp don't change afterwards: a fill
+ * older than the last one applied, or than the latest timestamp asked for, is booked just after them.
+ *
+ * A fill which would overflow the net quantity of its ticker is rejected.
+ *
+ * The version of a snapshot is the number of fills it includes: the same version means the same positions
+ */
+@ThreadSafe
+public class TradeEventPositionService implements VersionedPositionService {
+
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 1024;
+
+	private final Queue<Fill> inbound = new ConcurrentLinkedQueue<>();
+	private final int checkpointInterval;
+
+	// all below guarded by this
+	private final Map<String, Integer> tickerIds = new HashMap<>();
+	private final List<String> tickers = new ArrayList<>();
+	// net quantity by ticker id, after all the fills of the log
+	private long[] netQuantities = new long[16];
+
+	// the log: timestamp as epoch millis of the emulated UTC time, ticker id and quantity of each fill
+	private long[] eventTimestamps = new long[1024];
+	private int[] eventTickerIds = new int[1024];
+	private long[] eventQuantities = new long[1024];
+	private int eventCount;
+	// the latest timestamp positions were served for, in epoch millis
+	private long servedUntil = Long.MIN_VALUE;
+
+	// checkpoint i: net quantities after the first (i + 1) * checkpointInterval fills
+	private final List<long[]> checkpoints = new ArrayList<>();
+
+	// the last snapshot served, returned again while no fill changes it
+	private PositionSnapshot lastSnapshot;
+
+	public TradeEventPositionService() {
+		this(DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	/**
+	 * @param checkpointInterval	fills between two checkpoints: the most replayed by a point-in-time query
+	 */
+	public TradeEventPositionService(int checkpointInterval) {
+		if (checkpointInterval < 1)
+			throw new IllegalArgumentException("the checkpoint interval must be positive");
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * queues a fill, without waiting for the positions to be read
+	 * @param ticker
+	 * @param quantity	positive when bought, negative when sold
+	 * @param timestamp	when it was executed
+	 */
+	public void submit(String ticker, long quantity, LocalDateTime timestamp) {
+		this.inbound.add(new Fill(ticker, quantity, timestamp));
+	}
+
+	/**
+	 * @param timestamp
+	 * @return	the positions including all the fills executed at or before the timestamp; tickers netted to zero
+	 * 			are left out
+	 */
+	@Override
+	public synchronized PositionSnapshot getSnapshot(LocalDateTime timestamp) {
+		this.drain();
+		long epochMillis = toEpochMillis(timestamp);
+		this.servedUntil = Math.max(this.servedUntil, epochMillis);
+		int events = this.eventsAtOrBefore(epochMillis);
+		if (this.lastSnapshot != null && this.lastSnapshot.getVersion() == events)
+			return this.lastSnapshot;
+
+		long[] quantities;
+		if (events == this.eventCount)
+			quantities = this.netQuantities;
+		else {
+			// from the closest checkpoint before, replaying the fills after it
+			int checkpoint = events / this.checkpointInterval;
+			quantities = new long[this.tickers.size()];
+			if (checkpoint > 0) {
+				long[] checkpointed = this.checkpoints.get(checkpoint - 1);
+				System.arraycopy(checkpointed, 0, quantities, 0, checkpointed.length);
+			}
+			for (int event = checkpoint * this.checkpointInterval; event < events; event++)
+				quantities[this.eventTickerIds[event]] += this.eventQuantities[event];
+		}
+
+		List<Position> positions = new ArrayList<>();
+		for (int id = 0; id < this.tickers.size(); id++)
+			if (quantities[id] != 0)
+				positions.add(new Position(BigInteger.valueOf(quantities[id]), this.tickers.get(id)));
+		this.lastSnapshot = new PositionSnapshot(events, positions);
+		return this.lastSnapshot;
+	}
+
+	/**
+	 * @return	the fills applied so far, not counting the ones still queued
+	 */
+	public synchronized int getEventCount() {
+		return this.eventCount;
+	}
+
+	/**
+	 * applies the queued fills, in the order of their timestamps
+	 */
+	private void drain() {
+		if (this.inbound.isEmpty())
+			return;
+		List<Fill> fills = new ArrayList<>();
+		Fill fill;
+		while ((fill = this.inbound.poll()) != null)
+			fills.add(fill);
+		fills.sort(Comparator.comparingLong(f -> f.epochMillis));
+		for (Fill each : fills)
+			this.append(each);
+	}
+
+	private void append(Fill fill) {
+		Integer id = this.tickerIds.get(fill.ticker);
+		if (id == null) {
+			id = this.tickers.size();
+			this.tickerIds.put(fill.ticker, id);
+			this.tickers.add(fill.ticker);
+			if (id == this.netQuantities.length)
+				this.netQuantities = Arrays.copyOf(this.netQuantities, id * 2);
+		}
+		long netQuantity;
+		try {
+			netQuantity = Math.addExact(this.netQuantities[id], fill.quantity);
+		} catch (ArithmeticException e) {
+			Logger.log("rejecting the fill of "+fill.quantity+" "+fill.ticker+": the position would overflow");
+			return;
+		}
+		this.netQuantities[id] = netQuantity;
+
+		if (this.eventCount == this.eventTimestamps.length) {
+			int capacity = this.eventCount * 2;
+			this.eventTimestamps = Arrays.copyOf(this.eventTimestamps, capacity);
+			this.eventTickerIds = Arrays.copyOf(this.eventTickerIds, capacity);
+			this.eventQuantities = Arrays.copyOf(this.eventQuantities, capacity);
+		}
+		long booked = Math.max(fill.epochMillis, this.servedUntil == Long.MIN_VALUE ? Long.MIN_VALUE : this.servedUntil + 1);
+		if (this.eventCount > 0)
+			booked = Math.max(booked, this.eventTimestamps[this.eventCount - 1]);
+		this.eventTimestamps[this.eventCount] = booked;
+		this.eventTickerIds[this.eventCount] = id;
+		this.eventQuantities[this.eventCount] = fill.quantity;
+		this.eventCount++;
+
+		if (this.eventCount % this.checkpointInterval == 0)
+			this.checkpoints.add(Arrays.copyOf(this.netQuantities, this.tickers.size()));
+	}
+
+	/**
+	 * @return	how many fills of the log have a timestamp at or before the given one
+	 */
+	private int eventsAtOrBefore(long epochMillis) {
+		int low = 0, high = this.eventCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.eventTimestamps[middle] <= epochMillis)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	private static long toEpochMillis(LocalDateTime timestamp) {
+		return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+	}
+
+	@Immutable
+	private static final class Fill {
+		private final String ticker;
+		private final long quantity;
+		private final long epochMillis;
+
+		private Fill(String ticker, long quantity, LocalDateTime timestamp) {
+			this.ticker = Objects.requireNonNull(ticker);
+			this.quantity = quantity;
+			this.epochMillis = toEpochMillis(timestamp);
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.crypto.portfolio.app.implementations;
+
+
+import com.crypto.portfolio.api.Logger;
+import com.crypto.portfolio.api.interfaces.Position;
+import com.crypto.portfolio.api.interfaces.PositionSnapshot;
+import com.crypto.portfolio.api.interfaces.VersionedPositionService;
+import com.crypto.portfolio.app.utils.PositionCsvParser;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * serves the positions of a csv file, reloading it in the background whenever it changes.
+ *
+ * A thread watches the directory of the file; once the writes settle, the file is parsed and a new
+ * {@link PositionSnapshot} replaces the current one. If the new content can't be parsed, the previous positions
+ * stay. Readers just read the current snapshot, so {@link #getSnapshot(LocalDateTime)} never waits for a reload.
+ */
+@ThreadSafe
+public class WatchingCsvPositionService implements VersionedPositionService, Closeable {
+
+	// several events usually come with one save: the file is reloaded once none came for this long
+	private static final long SETTLE_MILLIS = 100;
+
+	private final Path csvFile;
+	private final WatchService watchService;
+	private volatile PositionSnapshot snapshot;
+
+	/**
+	 * loads the file, then starts watching it
+	 * @param csvFile	see {@link PositionCsvParser} for the format
+	 * @throws IOException	if the file can't be loaded at first
+	 */
+	public WatchingCsvPositionService(Path csvFile) throws IOException {
+		this.csvFile = csvFile.toAbsolutePath();
+		this.snapshot = new PositionSnapshot(1, this.parse());
+		this.watchService = this.csvFile.getFileSystem().newWatchService();
+		this.csvFile.getParent().register(this.watchService,
+				StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		Thread watcher = new Thread(this::watch, "positionWatcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	@Override
+	public PositionSnapshot getSnapshot(LocalDateTime timestamp) {
+		return this.snapshot;
+	}
+
+	/**
+	 * reads the file again and publishes its positions as a new version, without waiting for the watcher
+	 * @return	the new snapshot
+	 * @throws IOException	if it can't be parsed: the previous snapshot stays
+	 */
+	public synchronized PositionSnapshot reload() throws IOException {
+		PositionSnapshot reloaded = new PositionSnapshot(this.snapshot.getVersion() + 1, this.parse());
+		this.snapshot = reloaded;
+		return reloaded;
+	}
+
+	/**
+	 * stops watching the file. The last positions are still served
+	 */
+	@Override
+	public void close() throws IOException {
+		this.watchService.close();
+	}
+
+	private List<Position> parse() throws IOException {
+		try (Reader reader = Files.newBufferedReader(this.csvFile, StandardCharsets.UTF_8)) {
+			return PositionCsvParser.parse(reader);
+		}
+	}
+
+	private void watch(){
+		Path fileName = this.csvFile.getFileName();
+		try {
+			while (true) {
+				WatchKey key = this.watchService.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents())
+					changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context());
+				if (!key.reset()) {
+					Logger.log("can't watch "+this.csvFile.getParent()+" anymore");
+					return;
+				}
+				if (!changed)
+					continue;
+
+				while ((key = this.watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+					key.pollEvents();
+					key.reset();
+				}
+				try {
+					Logger.log("positions reloaded: "+this.reload());
+				} catch (IOException | RuntimeException e) {
+					// e.g. the file is being written by a program which doesn't save in one go
+					Logger.log("keeping the previous positions, can't load "+this.csvFile+": "+e.getMessage());
+				}
+			}
+		} catch (ClosedWatchServiceException | InterruptedException e) {
+			// closed
+		}
+	}
+
+}
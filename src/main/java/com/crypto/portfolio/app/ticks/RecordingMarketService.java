@@ -0,0 +1,53 @@
+package com.crypto.portfolio.app.ticks;
+
+import com.crypto.portfolio.api.interfaces.MarketService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * wraps a market service, recording each price it returns into a tick file, so that the same market can be
+ * replayed later by a {@link TickReplayMarketService}.
+ * Prices must be requested in time order, as it happens within a portfolio service
+ */
+public class RecordingMarketService implements MarketService {
+
+	private final MarketService marketService;
+	private final TickFileWriter tickFileWriter;
+
+	/**
+	 * @param marketService		the actual source of the prices
+	 * @param tickFileWriter	to be closed by the caller once done
+	 */
+	public RecordingMarketService(MarketService marketService, TickFileWriter tickFileWriter) {
+		this.marketService = Objects.requireNonNull(marketService);
+		this.tickFileWriter = Objects.requireNonNull(tickFileWriter);
+	}
+
+	@Override
+	public BigDecimal getPrice(String ticker, LocalDateTime timestamp) {
+		BigDecimal price = this.marketService.getPrice(ticker, timestamp);
+		this.record(ticker, timestamp, price);
+		return price;
+	}
+
+	@Override
+	public Map<String, BigDecimal> getPrices(Collection<String> tickers, LocalDateTime timestamp) {
+		Map<String, BigDecimal> prices = this.marketService.getPrices(tickers, timestamp);
+		prices.forEach((ticker, price) -> this.record(ticker, timestamp, price));
+		return prices;
+	}
+
+	private void record(String ticker, LocalDateTime timestamp, BigDecimal price){
+		try {
+			this.tickFileWriter.write(ticker, timestamp, price);
+		} catch (IOException e) {
+			throw new IllegalStateException("can't record the price of "+ticker, e);
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.crypto.portfolio.app.ticks;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * layout of a binary tick file, all numbers big-endian:
+ *
+ * - header, {@value #HEADER_SIZE} bytes: magic number, format version, index interval (int each),
+ *   number of ticks, offset of the ticker dictionary and offset of the index (long each), 4 bytes unused
+ * - ticks, {@value #TICK_SIZE} bytes each, sorted by timestamp: timestamp as epoch millis of the emulated UTC time
+ *   (long), ticker id (int), price (double)
+ * - ticker dictionary: number of tickers (int), then each ticker as modified UTF-8 (see DataOutput#writeUTF),
+ *   the id being its position
+ * - index: one row every index interval ticks, the i-th one covering the first (i + 1) * interval ticks. A row has
+ *   a long per ticker, by id: the index of its last tick among the ones covered, -1 if none
+ *
+ * A row of the index takes {@value Long#BYTES} bytes per ticker, so with many tickers it would outgrow the ticks it
+ * covers: the writer doubles the interval till a row is at most 1/{@value #INDEX_SHARE} of the size of the ticks
+ * between two rows. 10k tickers then get a row every 16k ticks or so, instead of every 1024: the replay scans more
+ * ticks back, sequentially, but the index stays a fraction of the file.
+ *
+ * Prices are doubles, as the simulators compute them: the 13 significant digits of the internal prices
+ * (see Constants#asInternalPrice) are kept, which a fixed-point format would truncate for small prices.
+ *
+ * The dictionary and the index go last, since the tickers are only known once all ticks are written.
+ */
+final class TickFileFormat {
+
+	private TickFileFormat() {}
+
+	static final int MAGIC = 0x5449434B; // "TICK"
+	static final int VERSION = 2;
+
+	static final int HEADER_SIZE = 40;
+	static final int MAGIC_OFFSET = 0;
+	static final int VERSION_OFFSET = 4;
+	static final int INDEX_INTERVAL_OFFSET = 8;
+	static final int TICK_COUNT_OFFSET = 12;
+	static final int DICTIONARY_OFFSET_OFFSET = 20;
+	static final int INDEX_OFFSET_OFFSET = 28;
+
+	// the ticks between two rows of the index are at least this many times the size of a row
+	static final int INDEX_SHARE = 4;
+
+	static final int TICK_SIZE = 20;
+	static final int TICK_TIMESTAMP_OFFSET = 0;
+	static final int TICK_TICKER_OFFSET = 8;
+	static final int TICK_PRICE_OFFSET = 12;
+
+	static long toEpochMillis(LocalDateTime timestamp){
+		return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+	}
+
+}
@@ -0,0 +1,198 @@
+package com.crypto.portfolio.app.ticks;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static com.crypto.portfolio.app.ticks.TickFileFormat.*;
+
+/**
+ * writes ticks to a binary file, as described in {@link TickFileFormat}. Ticks are buffered and the file is only
+ * complete once closed.
+ * Ticks must come in time order, as they're read back by binary search on the timestamp.
+ *
+ * The rows of the index are written to a temporary file next to the tick file as the ticks come, since there
+ * are more tickers at the end than when the first rows were taken; they're copied after the dictionary, padded to
+ * all the tickers, when closing. The index interval doubles whenever the tickers outgrow it (see
+ * {@link TickFileFormat}): the rows written before which don't fall on the final interval are left out then
+ */
+@ThreadSafe
+public class TickFileWriter implements Closeable {
+
+	/**
+	 * a replayed price scans at most this many ticks before using the index
+	 */
+	public static final int DEFAULT_INDEX_INTERVAL = 1024;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(TICK_SIZE * 4096);
+	// grows with the tickers, always the first one times a power of two
+	private int indexInterval;
+	private final Path indexFile;
+	private final DataOutputStream indexRows;
+	private long indexRowCount;
+
+	private final Map<String, Integer> tickerIds = new HashMap<>();
+	private final List<String> tickers = new ArrayList<>();
+	// index of the last tick of each ticker, by id
+	private long[] lastTicks = new long[16];
+	private long tickCount;
+	private long lastTimestamp = Long.MIN_VALUE;
+
+	/**
+	 * indexes the ticks every {@value #DEFAULT_INDEX_INTERVAL}
+	 * @param file	created, or overwritten if it exists
+	 * @throws IOException
+	 */
+	public TickFileWriter(Path file) throws IOException {
+		this(file, DEFAULT_INDEX_INTERVAL);
+	}
+
+	/**
+	 * @param file			created, or overwritten if it exists
+	 * @param indexInterval	ticks between two rows of the index: the fewer, the bigger the index and the shorter
+	 *                      the scans of the replay. It's doubled as many times as needed for the index to stay
+	 *                      small next to the ticks
+	 * @throws IOException
+	 */
+	public TickFileWriter(Path file, int indexInterval) throws IOException {
+		if (indexInterval < 1)
+			throw new IllegalArgumentException("the index interval must be positive");
+		this.indexInterval = indexInterval;
+		this.channel = FileChannel.open(file,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try {
+			this.indexFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".index");
+			this.indexRows = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(this.indexFile)));
+		} catch (IOException | RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+		// the header is written last, when counts and offsets are known
+		this.channel.position(HEADER_SIZE);
+	}
+
+	/**
+	 * @param ticker
+	 * @param timestamp		not before the one of the previous tick
+	 * @param price			stored as a double: up to 15 significant digits are kept exactly
+	 * @throws IOException
+	 * @throws IllegalArgumentException	if the timestamp goes backwards, or the price is too large for a double
+	 */
+	public synchronized void write(String ticker, LocalDateTime timestamp, BigDecimal price) throws IOException {
+		long millis = toEpochMillis(timestamp);
+		if (millis < this.lastTimestamp)
+			throw new IllegalArgumentException("ticks must be written in time order");
+		double doublePrice = price.doubleValue();
+		if (Double.isInfinite(doublePrice))
+			throw new IllegalArgumentException(price+" can't be stored as a double");
+
+		Integer tickerId = this.tickerIds.get(ticker);
+		if (tickerId == null) {
+			tickerId = this.tickers.size();
+			this.tickerIds.put(ticker, tickerId);
+			this.tickers.add(ticker);
+			if (tickerId == this.lastTicks.length)
+				this.lastTicks = Arrays.copyOf(this.lastTicks, tickerId * 2);
+			while ((long) this.tickers.size() * Long.BYTES * INDEX_SHARE > (long) this.indexInterval * TICK_SIZE
+					&& this.indexInterval <= Integer.MAX_VALUE / 2)
+				this.indexInterval *= 2;
+		}
+
+		if (this.buffer.remaining() < TICK_SIZE)
+			this.flush();
+		this.buffer.putLong(millis).putInt(tickerId).putDouble(doublePrice);
+		this.lastTimestamp = millis;
+		this.lastTicks[tickerId] = this.tickCount;
+		this.tickCount++;
+
+		if (this.tickCount % this.indexInterval == 0) {
+			// the ticks covered, then the tickers seen so far, all with a tick already
+			this.indexRows.writeLong(this.tickCount);
+			this.indexRows.writeInt(this.tickers.size());
+			for (int id = 0; id < this.tickers.size(); id++)
+				this.indexRows.writeLong(this.lastTicks[id]);
+			this.indexRowCount++;
+		}
+	}
+
+	/**
+	 * writes the buffered ticks, the ticker dictionary, the index and the header, then closes the file
+	 * @throws IOException
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (!this.channel.isOpen())
+			return;
+		try {
+			this.flush();
+			long dictionaryOffset = this.channel.position();
+
+			ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+			try (DataOutputStream output = new DataOutputStream(dictionary)) {
+				output.writeInt(this.tickers.size());
+				for (String ticker : this.tickers)
+					output.writeUTF(ticker);
+			}
+			writeFully(ByteBuffer.wrap(dictionary.toByteArray()));
+
+			long indexOffset = this.channel.position();
+			this.indexRows.close();
+			try (DataInputStream rows = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.indexFile)))) {
+				for (long row = this.indexRowCount; row > 0; row--) {
+					long covered = rows.readLong();
+					int tickers = rows.readInt();
+					if (covered % this.indexInterval != 0) {
+						// taken before the interval grew
+						for (int id = 0; id < tickers; id++)
+							rows.readLong();
+						continue;
+					}
+					for (int id = 0; id < this.tickers.size(); id++) {
+						if (this.buffer.remaining() < Long.BYTES)
+							this.flush();
+						// the tickers seen after the row have no tick yet
+						this.buffer.putLong(id < tickers ? rows.readLong() : -1);
+					}
+				}
+			}
+			this.flush();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC_OFFSET, MAGIC)
+					.putInt(VERSION_OFFSET, VERSION)
+					.putInt(INDEX_INTERVAL_OFFSET, this.indexInterval)
+					.putLong(TICK_COUNT_OFFSET, this.tickCount)
+					.putLong(DICTIONARY_OFFSET_OFFSET, dictionaryOffset)
+					.putLong(INDEX_OFFSET_OFFSET, indexOffset);
+			this.channel.position(0);
+			writeFully(header);
+		} finally {
+			try {
+				this.channel.close();
+			} finally {
+				this.indexRows.close();
+				Files.deleteIfExists(this.indexFile);
+			}
+		}
+	}
+
+	private void flush() throws IOException {
+		this.buffer.flip();
+		writeFully(this.buffer);
+		this.buffer.clear();
+	}
+
+	private void writeFully(ByteBuffer source) throws IOException {
+		while (source.hasRemaining())
+			this.channel.write(source);
+	}
+
+}
@@ -0,0 +1,224 @@
+package com.crypto.portfolio.app.ticks;
+
+import com.crypto.portfolio.api.interfaces.MarketService;
+import com.crypto.portfolio.app.utils.Constants;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static com.crypto.portfolio.app.ticks.TickFileFormat.*;
+
+/**
+ * replays the prices recorded in a tick file (see {@link TickFileFormat}): the price of an equity at a timestamp is
+ * the last one recorded at or before it.
+ *
+ * The ticks are memory mapped, not loaded: they're read straight from the OS page cache, so even huge files take
+ * almost no heap and are ready as soon as opened. The timestamp is found by binary search, then the ticks after the
+ * last row of the index are scanned backwards: fewer than the index interval. An equity not found among them has
+ * its last tick in the row, however long ago it was recorded.
+ *
+ * Prices are read back rounded to the internal precision, so the ones of the simulators are replayed as they were.
+ *
+ * Unlike the simulators, any timestamp can be requested, in any order. Reads don't change any state,
+ * so it's thread safe.
+ */
+@ThreadSafe
+public class TickReplayMarketService implements MarketService, Closeable {
+
+	// a mapped buffer can't exceed 2GB, so longer files are split in segments of whole ticks
+	private static final int TICKS_PER_SEGMENT = Integer.MAX_VALUE / TICK_SIZE;
+	private static final int INDEX_ENTRIES_PER_SEGMENT = Integer.MAX_VALUE / Long.BYTES;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer[] segments;
+	private final long tickCount;
+	private final Map<String, Integer> tickerIds;
+	private final int indexInterval;
+	private final MappedByteBuffer[] indexSegments;
+
+	/**
+	 * @param file	written by a {@link TickFileWriter}
+	 * @throws IOException
+	 * @throws IllegalArgumentException	if it's not a tick file
+	 */
+	public TickReplayMarketService(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			int read = 0, bytes;
+			while (read < HEADER_SIZE && (bytes = this.channel.read(header, read)) > 0)
+				read += bytes;
+			if (read < HEADER_SIZE || header.getInt(MAGIC_OFFSET) != MAGIC)
+				throw new IllegalArgumentException(file+" is not a tick file");
+			if (header.getInt(VERSION_OFFSET) != VERSION)
+				throw new IllegalArgumentException("unsupported version "+header.getInt(VERSION_OFFSET));
+			this.indexInterval = header.getInt(INDEX_INTERVAL_OFFSET);
+			if (this.indexInterval < 1)
+				throw new IllegalArgumentException(file+" has no valid index");
+			this.tickCount = header.getLong(TICK_COUNT_OFFSET);
+			long dictionaryOffset = header.getLong(DICTIONARY_OFFSET_OFFSET);
+			long indexOffset = header.getLong(INDEX_OFFSET_OFFSET);
+
+			Map<String, Integer> ids = new HashMap<>();
+			InputStream dictionaryStream = Channels.newInputStream(this.channel.position(dictionaryOffset));
+			DataInputStream dictionary = new DataInputStream(dictionaryStream);
+			int tickers = dictionary.readInt();
+			for (int id = 0; id < tickers; id++)
+				ids.put(dictionary.readUTF(), id);
+			this.tickerIds = Collections.unmodifiableMap(ids);
+
+			this.segments = this.map(HEADER_SIZE, this.tickCount, TICK_SIZE, TICKS_PER_SEGMENT);
+			this.indexSegments = this.map(indexOffset, this.tickCount / this.indexInterval * tickers,
+					Long.BYTES, INDEX_ENTRIES_PER_SEGMENT);
+		} catch (IOException | RuntimeException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException	if the equity was never recorded up to the timestamp
+	 */
+	@Override
+	public BigDecimal getPrice(String ticker, LocalDateTime timestamp) {
+		int tickerId = this.idOf(ticker);
+		long last = this.lastIndexAtOrBefore(toEpochMillis(timestamp));
+		long row = (last + 1) / this.indexInterval;
+		for (long index = last; index >= row * this.indexInterval; index--)
+			if (this.tickerAt(index) == tickerId)
+				return this.priceAt(index);
+		long index = row > 0 ? this.indexedTick(row - 1, tickerId) : -1;
+		if (index < 0)
+			throw new IllegalStateException("no price recorded for "+ticker+" up to "+timestamp);
+		return this.priceAt(index);
+	}
+
+	/**
+	 * a single binary search and backward scan for all the equities, the ones not found reading the same row
+	 * of the index
+	 * @throws IllegalStateException	if any equity was never recorded up to the timestamp
+	 */
+	@Override
+	public Map<String, BigDecimal> getPrices(Collection<String> tickers, LocalDateTime timestamp) {
+		// ticker id -> requested ticker
+		Map<Integer, String> missing = new HashMap<>();
+		for (String ticker : tickers)
+			missing.put(this.idOf(ticker), ticker);
+
+		Map<String, BigDecimal> prices = new HashMap<>(tickers.size() * 4 / 3 + 1);
+		long last = this.lastIndexAtOrBefore(toEpochMillis(timestamp));
+		long row = (last + 1) / this.indexInterval;
+		for (long index = last; index >= row * this.indexInterval && !missing.isEmpty(); index--) {
+			String ticker = missing.remove(this.tickerAt(index));
+			if (ticker != null)
+				prices.put(ticker, this.priceAt(index));
+		}
+		if (row > 0)
+			for (Iterator<Map.Entry<Integer, String>> iterator = missing.entrySet().iterator(); iterator.hasNext(); ) {
+				Map.Entry<Integer, String> entry = iterator.next();
+				long index = this.indexedTick(row - 1, entry.getKey());
+				if (index >= 0) {
+					prices.put(entry.getValue(), this.priceAt(index));
+					iterator.remove();
+				}
+			}
+		if (!missing.isEmpty())
+			throw new IllegalStateException("no price recorded for "+missing.values()+" up to "+timestamp);
+		return prices;
+	}
+
+	/**
+	 * @return	the tickers recorded in the file
+	 */
+	public Set<String> getTickers(){
+		return this.tickerIds.keySet();
+	}
+
+	public long getTickCount() {
+		return tickCount;
+	}
+
+	/**
+	 * closes the file. The mapped memory is released when garbage collected
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	/**
+	 * maps a region of the file in segments of whole entries, since a mapped buffer can't exceed 2GB
+	 */
+	private MappedByteBuffer[] map(long offset, long entries, int entrySize, int entriesPerSegment) throws IOException {
+		int segmentCount = (int) ((entries + entriesPerSegment - 1) / entriesPerSegment);
+		MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+		for (int segment = 0; segment < segmentCount; segment++) {
+			long first = (long) segment * entriesPerSegment;
+			long count = Math.min(entriesPerSegment, entries - first);
+			segments[segment] = this.channel.map(FileChannel.MapMode.READ_ONLY,
+					offset + first * entrySize, count * entrySize);
+		}
+		return segments;
+	}
+
+	private int idOf(String ticker){
+		Integer tickerId = this.tickerIds.get(ticker);
+		if (tickerId == null)
+			throw new IllegalStateException(ticker+" was never recorded");
+		return tickerId;
+	}
+
+	/**
+	 * @return	index of the last tick whose timestamp is not after the given one, -1 if there's none
+	 */
+	private long lastIndexAtOrBefore(long millis){
+		long low = 0, high = this.tickCount;
+		// first tick after millis, in [low, high]
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (this.timestampAt(middle) <= millis)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low - 1;
+	}
+
+	private long timestampAt(long index){
+		return this.segments[(int) (index / TICKS_PER_SEGMENT)]
+				.getLong((int) (index % TICKS_PER_SEGMENT) * TICK_SIZE + TICK_TIMESTAMP_OFFSET);
+	}
+
+	private int tickerAt(long index){
+		return this.segments[(int) (index / TICKS_PER_SEGMENT)]
+				.getInt((int) (index % TICKS_PER_SEGMENT) * TICK_SIZE + TICK_TICKER_OFFSET);
+	}
+
+	private BigDecimal priceAt(long index){
+		return Constants.asInternalPrice(this.segments[(int) (index / TICKS_PER_SEGMENT)]
+				.getDouble((int) (index % TICKS_PER_SEGMENT) * TICK_SIZE + TICK_PRICE_OFFSET));
+	}
+
+	/**
+	 * @return	the index of the last tick of the ticker covered by the row, -1 if none
+	 */
+	private long indexedTick(long row, int tickerId){
+		long entry = row * this.tickerIds.size() + tickerId;
+		return this.indexSegments[(int) (entry / INDEX_ENTRIES_PER_SEGMENT)]
+				.getLong((int) (entry % INDEX_ENTRIES_PER_SEGMENT) * Long.BYTES);
+	}
+
+}
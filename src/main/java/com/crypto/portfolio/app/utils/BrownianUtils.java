@@ -1,20 +1,22 @@
 package com.crypto.portfolio.app.utils;
 
 import java.math.BigDecimal;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * the static method simulates the price of an equity according a brownian motion
+ * the static method simulates the price of an equity according a brownian motion.
+ * Each thread draws from its own random generator, so concurrent simulations don't contend on a shared one
  */
 public final class BrownianUtils {
 
 	private BrownianUtils() {}
 
 	private static final long TWELVE_WEEKS_IN_SECONDS = 3600*24*7*12;
-	private static final Random RANDOM = new Random();
 
 	/**
-	 * produces the next price of an equity
+	 * produces the next price of an equity.
+	 * Shortcut for {@link #brownianMotionPrice(double, long, double, double)}, the result is rounded
+	 * to the internal price precision
 	 * @param previousPrice		previous known price of the equity
 	 * @param millisInterval	number of millis which have passed in our scenario before simulating the next price.
 	 *                          It can't be a negative number
@@ -27,12 +29,30 @@ public final class BrownianUtils {
 			long millisInterval,
 			double expectedReturn,
 			double annualizedStandardDeviation
+	){
+		return Constants.asInternalPrice(brownianMotionPrice(
+				previousPrice.doubleValue(), millisInterval, expectedReturn, annualizedStandardDeviation
+		));
+	}
+
+	/**
+	 * produces the next price of an equity, without allocating any object
+	 * @param previousPrice		previous known price of the equity
+	 * @param millisInterval	number of millis which have passed in our scenario before simulating the next price.
+	 *                          It can't be a negative number
+	 * @param expectedReturn	equity's expected return
+	 * @param annualizedStandardDeviation	equity's standard deviation
+	 * @return
+	 */
+	public static double brownianMotionPrice(
+			double previousPrice,
+			long millisInterval,
+			double expectedReturn,
+			double annualizedStandardDeviation
 	){
 		if (millisInterval<0)
 			throw new IllegalArgumentException("the time interval must be non negative");
 
-		double timeDeltaSeconds = (double) millisInterval / 1000;
-
 		/*
 		calculated according the appendix notes.
 		If the "nextGaussian" is a big-negative number and lots of seconds have passed,
@@ -40,16 +60,65 @@ public final class BrownianUtils {
 		 */
 		double deltaMultiplier;
 		do{
-			deltaMultiplier = // all doubles sub-expressions here
-					// first operand (deterministic using expected-return and time)
-					expectedReturn * timeDeltaSeconds / TWELVE_WEEKS_IN_SECONDS
-							// second operand (random factor and standard-deviation). Positive or negative
-							+ annualizedStandardDeviation * RANDOM.nextGaussian() *
-							Math.sqrt(timeDeltaSeconds/ TWELVE_WEEKS_IN_SECONDS);
+			deltaMultiplier = deltaMultiplier(millisInterval, expectedReturn, annualizedStandardDeviation, ThreadLocalRandom.current().nextGaussian());
 		}while(deltaMultiplier < -1);
 
-		return previousPrice
-				.multiply(new BigDecimal(deltaMultiplier, Constants.INTERNAL_PRICE_CONTEXT))
-				.add(previousPrice, Constants.INTERNAL_PRICE_CONTEXT);
+		return previousPrice + previousPrice * deltaMultiplier;
+	}
+
+	/**
+	 * the relative price change for a given draw of the random factor
+	 * @param millisInterval				number of millis which have passed
+	 * @param expectedReturn				equity's expected return
+	 * @param annualizedStandardDeviation	equity's standard deviation
+	 * @param gaussian						a sample from a normal standardised distribution
+	 * @return	the multiplier: the new price is (1 + multiplier) times the previous one
+	 */
+	public static double deltaMultiplier(
+			long millisInterval,
+			double expectedReturn,
+			double annualizedStandardDeviation,
+			double gaussian
+	){
+		double timeDeltaSeconds = (double) millisInterval / 1000;
+		return // all doubles sub-expressions here
+				// first operand (deterministic using expected-return and time)
+				expectedReturn * timeDeltaSeconds / TWELVE_WEEKS_IN_SECONDS
+						// second operand (random factor and standard-deviation). Positive or negative
+						+ annualizedStandardDeviation * gaussian *
+						Math.sqrt(timeDeltaSeconds/ TWELVE_WEEKS_IN_SECONDS);
+	}
+
+	/**
+	 * factors a correlation matrix as L * L^T, so that L times a vector of independent standard gaussians gives
+	 * gaussians correlated as requested
+	 * @param correlations	symmetric, with ones on the diagonal, positive definite
+	 * @return	L, lower triangular, flattened by rows: L[i][j] is at i * n + j
+	 * @throws IllegalArgumentException	if the matrix is not a valid correlation matrix
+	 */
+	public static double[] cholesky(double[][] correlations){
+		int n = correlations.length;
+		double[] lower = new double[n * n];
+		for (int i = 0; i < n; i++) {
+			if (correlations[i].length != n)
+				throw new IllegalArgumentException("the correlation matrix must be square");
+			if (correlations[i][i] != 1)
+				throw new IllegalArgumentException("the correlation of an equity with itself must be 1");
+			for (int j = 0; j <= i; j++) {
+				if (correlations[i][j] != correlations[j][i])
+					throw new IllegalArgumentException("the correlation matrix must be symmetric");
+				double sum = correlations[i][j];
+				for (int k = 0; k < j; k++)
+					sum -= lower[i * n + k] * lower[j * n + k];
+				if (i == j) {
+					if (sum <= 0)
+						throw new IllegalArgumentException("the correlation matrix must be positive definite");
+					lower[i * n + i] = Math.sqrt(sum);
+				}
+				else
+					lower[i * n + j] = sum / lower[j * n + j];
+			}
+		}
+		return lower;
 	}
 }
@@ -1,5 +1,6 @@
 package com.crypto.portfolio.app.utils;
 
+import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
 
@@ -7,4 +8,13 @@ public class Constants {
 
 	static final MathContext INTERNAL_PRICE_CONTEXT = new MathContext(13, RoundingMode.HALF_UP);
 	static final MathContext EXTERNAL_PRICE_CONTEXT = new MathContext(10, RoundingMode.HALF_UP);
+
+	/**
+	 * calculations are performed with doubles; this is where they become BigDecimal again
+	 * @param price
+	 * @return	the price, rounded to the internal precision
+	 */
+	public static BigDecimal asInternalPrice(double price){
+		return new BigDecimal(price, INTERNAL_PRICE_CONTEXT);
+	}
 }
@@ -43,7 +43,8 @@ public final class OptionCalcUtils {
 
 	/**
 	 * returns the price of an option using a gaussian sampler.
-	 * The more samples have been taken, the more precise the calculation is
+	 * Shortcut for {@link #priceOption(StandardisedDistributionSampler, double, double, double, double, EuOption.OptionType)},
+	 * the result is rounded to the internal price precision
 	 * @param distributionSampler
 	 * @param stockPrice
 	 * @param strikePrice
@@ -59,40 +60,108 @@ public final class OptionCalcUtils {
 			double annualizedStandardDeviation, // o¬
 			double yearsToMaturity,
 			EuOption.OptionType optionType
+	){
+		return Constants.asInternalPrice(priceOption(
+				distributionSampler,
+				stockPrice.doubleValue(),
+				strikePrice.doubleValue(),
+				annualizedStandardDeviation,
+				yearsToMaturity,
+				optionType
+		));
+	}
+
+	/**
+	 * returns the price of an option (Black-Scholes), without allocating any object.
+	 * The precision of the result depends on the sampler
+	 * @param distributionSampler
+	 * @param stockPrice
+	 * @param strikePrice
+	 * @param annualizedStandardDeviation
+	 * @param yearsToMaturity
+	 * @param optionType
+	 * @return
+	 */
+	public static double priceOption(
+			StandardisedDistributionSampler distributionSampler,
+			double stockPrice, // S
+			double strikePrice, // K
+			double annualizedStandardDeviation, // sigma
+			double yearsToMaturity,
+			EuOption.OptionType optionType
 	){
 		if (yearsToMaturity<=0)
 			throw new IllegalArgumentException("the option is matured");
 
-		double stockPriceDb = stockPrice.doubleValue();
-		double strikePriceDb = strikePrice.doubleValue();
-
 		double d1 = (
-				Math.log(stockPriceDb/strikePriceDb) +
+				Math.log(stockPrice/strikePrice) +
 				( IR + annualizedStandardDeviation * annualizedStandardDeviation / 2 ) * yearsToMaturity
 		) /
 		( annualizedStandardDeviation * Math.sqrt(yearsToMaturity) );
 
 		double d2 = d1 - annualizedStandardDeviation * Math.sqrt(yearsToMaturity);
 
+		double discountedStrike = strikePrice * Math.exp(- IR * yearsToMaturity);
+
 		switch (optionType){
 			case CALL:
-					return stockPrice.multiply( asBD(distributionSampler.oddsLessThan( d1 )), Constants.INTERNAL_PRICE_CONTEXT)
-							.add(
-									strikePrice.negate().multiply( asBD(
-											Math.pow(Math.E, - IR * yearsToMaturity)
-											*
-											distributionSampler.oddsLessThan(d2)
-									), Constants.EXTERNAL_PRICE_CONTEXT)
-							);
+					return stockPrice * distributionSampler.oddsLessThan(d1)
+							- discountedStrike * distributionSampler.oddsLessThan(d2);
 			case PUT:
-					return strikePrice.multiply(asBD(Math.pow(Math.E, - IR * yearsToMaturity) * distributionSampler.oddsLessThan (-d2)), Constants.INTERNAL_PRICE_CONTEXT)
-							.add(stockPrice.negate().multiply(asBD(distributionSampler.oddsLessThan(-d1)), Constants.EXTERNAL_PRICE_CONTEXT));
+					return discountedStrike * distributionSampler.oddsLessThan(-d2)
+							- stockPrice * distributionSampler.oddsLessThan(-d1);
 			default: throw new Error("not implemented");
 		}
 	}
 
-	private static BigDecimal asBD(double d){
-		return new BigDecimal(d, Constants.INTERNAL_PRICE_CONTEXT);
+	/**
+	 * prices a book of options given as parallel arrays, from index "from" (included) to "to" (excluded).
+	 * Same formula as {@link #priceOption(StandardisedDistributionSampler, double, double, double, double, EuOption.OptionType)},
+	 * with the same results, in a single loop over primitive arrays: no object is allocated and there's no
+	 * branch on the option type, a put being the call formula with the signs flipped.
+	 * Disjoint ranges can be priced concurrently
+	 * @param distributionSampler
+	 * @param stockPrices
+	 * @param strikePrices
+	 * @param annualizedStandardDeviations
+	 * @param yearsToMaturity
+	 * @param calls							true for calls, false for puts
+	 * @param prices						output
+	 * @param from
+	 * @param to
+	 */
+	public static void priceOptions(
+			StandardisedDistributionSampler distributionSampler,
+			double[] stockPrices,
+			double[] strikePrices,
+			double[] annualizedStandardDeviations,
+			double[] yearsToMaturity,
+			boolean[] calls,
+			double[] prices,
+			int from,
+			int to
+	){
+		for (int i = from; i < to; i++) {
+			double years = yearsToMaturity[i];
+			if (years <= 0)
+				throw new IllegalArgumentException("the option is matured");
+			double deviation = annualizedStandardDeviations[i];
+
+			double d1 = (
+					Math.log(stockPrices[i]/strikePrices[i]) +
+					( IR + deviation * deviation / 2 ) * years
+			) /
+			( deviation * Math.sqrt(years) );
+			double d2 = d1 - deviation * Math.sqrt(years);
+			double discountedStrike = strikePrices[i] * Math.exp(- IR * years);
+
+			// call: S N(d1) - K' N(d2), put: -(S N(-d1) - K' N(-d2))
+			double sign = calls[i] ? 1 : -1;
+			prices[i] = sign * (
+					stockPrices[i] * distributionSampler.oddsLessThan(sign * d1)
+					- discountedStrike * distributionSampler.oddsLessThan(sign * d2)
+			);
+		}
 	}
 
 }
@@ -0,0 +1,319 @@
+package com.crypto.portfolio.app.utils;
+
+import com.crypto.portfolio.api.interfaces.Position;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * parses position csv files, with headers {@value #SYMBOL_HEADER} and {@value #POSITION_SIZE_HEADER} in any order,
+ * among any other column. Unlike the general {@link CsvReader}, it's meant for books of millions of positions:
+ * the columns are resolved once from the header, the characters are scanned without regular expressions and
+ * each row only allocates its position (the ticker and, for sizes beyond a long, the digits).
+ *
+ * Files can also be memory mapped and split in chunks parsed by several threads, see {@link #parse(Path, int)}.
+ * No quotes or other decorators supported, like the CsvReader.
+ */
+public final class PositionCsvParser {
+
+	public static final String SYMBOL_HEADER = "symbol", POSITION_SIZE_HEADER = "positionSize";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// in mapped mode, chunks are extended by this much to complete their last line
+	private static final int MAX_LINE_LENGTH = 4096;
+	private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+
+	private PositionCsvParser() {
+	}
+
+	/**
+	 * streams the positions to the consumer, in the order of the file. It doesn't close the reader
+	 * @throws IOException	if the header or a row is not valid
+	 */
+	public static void parse(Reader csvReader, Consumer<Position> consumer) throws IOException {
+		char[] buffer = new char[BUFFER_SIZE];
+		int start = 0, end = 0, scanned = 0;
+		long lineNumber = 0;
+		Columns columns = null;
+		while (true) {
+			int newLine = -1;
+			for (int i = scanned; i < end; i++)
+				if (buffer[i] == '\n') {
+					newLine = i;
+					break;
+				}
+
+			if (newLine < 0) {
+				// the line continues beyond the buffer: keep its beginning and read more
+				if (start > 0) {
+					System.arraycopy(buffer, start, buffer, 0, end - start);
+					end -= start;
+					start = 0;
+				} else if (end == buffer.length) {
+					char[] larger = new char[buffer.length * 2];
+					System.arraycopy(buffer, 0, larger, 0, end);
+					buffer = larger;
+				}
+				scanned = end;
+				int read = csvReader.read(buffer, end, buffer.length - end);
+				if (read > 0) {
+					end += read;
+					continue;
+				}
+				// the last line has no line feed
+				newLine = end;
+				if (start == end)
+					break;
+			}
+
+			lineNumber++;
+			if (columns == null)
+				columns = new Columns(new String(buffer, start, newLine - start));
+			else {
+				Position position = columns.parse(buffer, start, newLine, lineNumber);
+				if (position != null)
+					consumer.accept(position);
+			}
+			if (newLine == end)
+				break;
+			start = scanned = newLine + 1;
+		}
+		if (columns == null)
+			throw new IOException("the CSV doesn't seem to contain a header");
+	}
+
+	/**
+	 * @return	all the positions of the reader, in an array-backed list. It doesn't close the reader
+	 */
+	public static List<Position> parse(Reader csvReader) throws IOException {
+		List<Position> positions = new ArrayList<>();
+		parse(csvReader, positions::add);
+		return positions;
+	}
+
+	/**
+	 * memory maps the file and parses chunks of it in parallel. Each chunk starts at the line following its
+	 * nominal start, and ends with the line crossing its nominal end. Characters are expected in UTF-8
+	 * @param file
+	 * @param threads	number of threads parsing the chunks, created for this call only
+	 * @return	all the positions, in the order of the file
+	 * @throws IOException	if the header or a row is not valid
+	 */
+	public static List<Position> parse(Path file, int threads) throws IOException {
+		if (threads < 1)
+			throw new IllegalArgumentException("at least one thread is needed");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+
+			// the header is read first, on this thread
+			MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAX_LINE_LENGTH));
+			int headerEnd = 0;
+			while (headerEnd < head.limit() && head.get(headerEnd) != '\n')
+				headerEnd++;
+			if (headerEnd == 0 || headerEnd == head.limit() && headerEnd == MAX_LINE_LENGTH)
+				throw new IOException("the CSV doesn't seem to contain a header");
+			byte[] headerBytes = new byte[headerEnd];
+			head.get(headerBytes);
+			Columns columns = new Columns(new String(headerBytes, StandardCharsets.UTF_8));
+			long bodyStart = Math.min(size, headerEnd + 1L);
+
+			// at most 1GB per chunk, so each fits in a mapped buffer
+			long bodySize = size - bodyStart;
+			long chunkSize = Math.max(MIN_CHUNK_SIZE, (bodySize + threads - 1) / threads);
+			chunkSize = Math.min(chunkSize, 1L << 30);
+			int chunks = (int) Math.max(1, (bodySize + chunkSize - 1) / chunkSize);
+
+			List<Callable<List<Position>>> tasks = new ArrayList<>(chunks);
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				long from = bodyStart + chunk * chunkSize;
+				long to = Math.min(size, from + chunkSize);
+				tasks.add(() -> parseChunk(channel, columns, from, to, size, bodyStart));
+			}
+
+			List<Position> positions = new ArrayList<>();
+			if (chunks == 1) {
+				positions.addAll(parseChunk(channel, columns, bodyStart, size, size, bodyStart));
+				return positions;
+			}
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunks),
+					new ThreadFactoryBuilder().setNameFormat("positionParser-%d").setDaemon(true).build());
+			try {
+				for (Future<List<Position>> future : executor.invokeAll(tasks))
+					positions.addAll(future.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while parsing "+file, e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof UncheckedIOException)
+					throw ((UncheckedIOException) e.getCause()).getCause();
+				throw new IllegalStateException(e.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+			return positions;
+		}
+	}
+
+	/**
+	 * @param from		nominal start of the chunk: if it's in the middle of a line, that line belongs to the previous chunk
+	 * @param to		nominal end: the line crossing it is parsed till its end
+	 * @param bodyStart	where the line after the header starts
+	 */
+	private static List<Position> parseChunk(FileChannel channel, Columns columns, long from, long to, long size, long bodyStart) {
+		try {
+			// one byte before, to see whether the chunk starts a line; some bytes after, to complete the last line
+			long mapStart = from == bodyStart ? from : from - 1;
+			long mapEnd = Math.min(size, to + MAX_LINE_LENGTH);
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+			int position = 0;
+			if (from != bodyStart) {
+				while (position < bytes.limit() && bytes.get(position) != '\n')
+					position++;
+				position++;
+			}
+			int nominalEnd = (int) (to - mapStart);
+
+			List<Position> positions = new ArrayList<>();
+			char[] line = new char[256];
+			int limit = bytes.limit();
+			while (position < nominalEnd && position < limit) {
+				// one pass: the bytes are copied as chars till the line feed
+				int lineStart = position, length = 0;
+				boolean ascii = true;
+				byte b;
+				while (position < limit && (b = bytes.get(position)) != '\n') {
+					if (length == line.length) {
+						if (length >= MAX_LINE_LENGTH)
+							throw new IOException("line longer than "+MAX_LINE_LENGTH+" at byte "+(mapStart + lineStart));
+						char[] larger = new char[length * 2];
+						System.arraycopy(line, 0, larger, 0, length);
+						line = larger;
+					}
+					ascii &= b >= 0;
+					line[length++] = (char) b;
+					position++;
+				}
+				if (position == limit && mapEnd < size)
+					throw new IOException("line longer than "+MAX_LINE_LENGTH+" at byte "+(mapStart + lineStart));
+
+				char[] chars = line;
+				if (!ascii) {
+					byte[] raw = new byte[length];
+					for (int i = 0; i < length; i++)
+						raw[i] = bytes.get(lineStart + i);
+					chars = new String(raw, StandardCharsets.UTF_8).toCharArray();
+					length = chars.length;
+				}
+				Position parsed = columns.parse(chars, 0, length, -(mapStart + lineStart));
+				if (parsed != null)
+					positions.add(parsed);
+				position++;
+			}
+			return positions;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * where the interesting columns are, resolved from the header
+	 */
+	private static final class Columns {
+		private final int columnCount;
+		private final int symbolColumn;
+		private final int sizeColumn;
+
+		private Columns(String header) throws IOException {
+			if (header.endsWith("\r"))
+				header = header.substring(0, header.length() - 1);
+			String[] names = header.split(",", -1);
+			int symbol = -1, size = -1;
+			for (int i = 0; i < names.length; i++) {
+				if (names[i].equals(SYMBOL_HEADER))
+					symbol = i;
+				else if (names[i].equals(POSITION_SIZE_HEADER))
+					size = i;
+			}
+			if (symbol < 0 || size < 0)
+				throw new IOException("the CSV header must contain "+SYMBOL_HEADER+" and "+POSITION_SIZE_HEADER+": "+header);
+			this.columnCount = names.length;
+			this.symbolColumn = symbol;
+			this.sizeColumn = size;
+		}
+
+		/**
+		 * @param where	the line number if positive, the byte offset in the file if negative; only for errors
+		 * @return	null for blank lines
+		 */
+		private Position parse(char[] line, int from, int to, long where) throws IOException {
+			if (to > from && line[to - 1] == '\r')
+				to--;
+			if (to == from)
+				return null;
+
+			int column = 0, fieldStart = from;
+			int symbolStart = -1, symbolEnd = -1, sizeStart = -1, sizeEnd = -1;
+			for (int i = from; i <= to; i++) {
+				if (i < to && line[i] != ',')
+					continue;
+				if (column == this.symbolColumn) {
+					symbolStart = fieldStart;
+					symbolEnd = i;
+				} else if (column == this.sizeColumn) {
+					sizeStart = fieldStart;
+					sizeEnd = i;
+				}
+				column++;
+				fieldStart = i + 1;
+			}
+			if (column != this.columnCount)
+				throw new IOException("inconsistent csv data. Header size is " + this.columnCount + " and found row with "
+						+ column + " entries " + location(where) + ": " + new String(line, from, to - from));
+
+			return new Position(
+					parseSize(line, sizeStart, sizeEnd, where),
+					new String(line, symbolStart, symbolEnd - symbolStart)
+			);
+		}
+
+		private static BigInteger parseSize(char[] line, int from, int to, long where) throws IOException {
+			boolean negative = from < to && line[from] == '-';
+			int digits = negative ? from + 1 : from;
+			// up to 18 digits always fit in a long
+			if (digits < to && to - digits <= 18) {
+				long value = 0;
+				int i = digits;
+				for (; i < to; i++) {
+					char c = line[i];
+					if (c < '0' || c > '9')
+						break;
+					value = value * 10 + (c - '0');
+				}
+				if (i == to)
+					return BigInteger.valueOf(negative ? -value : value);
+			}
+			try {
+				return new BigInteger(new String(line, from, to - from));
+			} catch (NumberFormatException e) {
+				throw new IOException("invalid position size " + location(where) + ": " + new String(line, from, to - from), e);
+			}
+		}
+
+		private static String location(long where){
+			return where > 0 ? "at line " + where : "at byte " + (-where);
+		}
+	}
+
+}
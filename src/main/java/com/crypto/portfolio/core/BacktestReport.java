@@ -0,0 +1,43 @@
+package com.crypto.portfolio.core;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * outcome of {@link PortfolioService#runBacktest}
+ */
+@Immutable
+public final class BacktestReport {
+
+	private final long ticks;
+	private final long elapsedNanos;
+
+	BacktestReport(long ticks, long elapsedNanos) {
+		this.ticks = ticks;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * @return	number of portfolio updates produced
+	 */
+	public long getTicks() {
+		return ticks;
+	}
+
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+	}
+
+	public double getTicksPerSecond() {
+		return elapsedNanos == 0 ? 0 : ticks * 1e9 / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "BacktestReport{" +
+				"ticks=" + ticks +
+				", elapsedMillis=" + getElapsedMillis() +
+				", ticksPerSecond=" + String.format("%.1f", getTicksPerSecond()) +
+				'}';
+	}
+}
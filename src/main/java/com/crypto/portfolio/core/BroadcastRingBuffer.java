@@ -0,0 +1,76 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * a preallocated ring of the latest portfolio updates, written by the service thread only and read by any number
+ * of subscribers, each one with its own sequence cursor (see {@link RingSubscriberTopic}).
+ *
+ * Publishing an update costs the same no matter how many subscribers there are: no locks are taken
+ * and nothing is allocated. The producer never waits for the readers: an update which was not read before the ring
+ * wraps around is lost for that reader.
+ */
+class BroadcastRingBuffer {
+
+	private final AtomicReferenceArray<PortfolioUpdate> slots;
+	private final int mask;
+
+	// sequence of the last published update, -1 if none
+	private final AtomicLong lastPublished = new AtomicLong(-1);
+
+	/**
+	 * @param minCapacity	the updates readers can lag behind without losing any. The actual capacity is
+	 *                      the next power of two
+	 */
+	BroadcastRingBuffer(int minCapacity) {
+		if (minCapacity < 1)
+			throw new IllegalArgumentException("the capacity must be positive");
+		// one slot is kept as a guard between the producer and the slowest readers
+		int size = Integer.highestOneBit(minCapacity) << 1;
+		this.slots = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * to be called by a single thread
+	 * @param portfolioUpdate
+	 */
+	void publish(PortfolioUpdate portfolioUpdate){
+		long sequence = this.lastPublished.get() + 1;
+		// ordered writes: readers seeing the new sequence also see the update
+		this.slots.lazySet((int) (sequence & this.mask), portfolioUpdate);
+		this.lastPublished.lazySet(sequence);
+	}
+
+	long getLastPublished(){
+		return this.lastPublished.get();
+	}
+
+	/**
+	 * the update might have been overwritten already: check {@link #isAvailable(long)} after reading it
+	 */
+	PortfolioUpdate get(long sequence){
+		return this.slots.get((int) (sequence & this.mask));
+	}
+
+	/**
+	 * @param sequence
+	 * @return	true if the update with the given sequence was published and is not going to be overwritten
+	 * 			by the update being published right now
+	 */
+	boolean isAvailable(long sequence){
+		long lastPublished = this.lastPublished.get();
+		return sequence <= lastPublished && lastPublished - sequence < this.getUsableCapacity();
+	}
+
+	/**
+	 * @return	how many updates a reader can lag behind without losing any
+	 */
+	int getUsableCapacity(){
+		return this.mask;
+	}
+
+}
@@ -3,25 +3,148 @@ package com.crypto.portfolio.core;
 import com.crypto.portfolio.api.Instrument;
 import com.crypto.portfolio.api.interfaces.ReferenceDataService;
 
-import java.util.HashMap;
-import java.util.Map;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * we assume reference data is immutable (and the number of instruments throughout the life of the service is small),
- * so we can keep it all in memory
+ * so we can keep it all in memory.
+ *
+ * The whole reference data can be loaded ahead with {@link #preload()}, so the first update doesn't wait for the
+ * database. Tickers which are not found are remembered too, so asking again for them fails without a new request.
+ *
+ * It's thread safe: two threads missing the same ticker at the same time may both load it, which is harmless
+ * since the instruments are immutable
  */
+@ThreadSafe
 public class CachingReferenceData {
 
 	private final ReferenceDataService referenceDataService;
 
-	private final Map<String, Instrument> cache = new HashMap<>();
+	private final Map<String, Instrument> cache = new ConcurrentHashMap<>();
+	// ticker -> why it was not found
+	private final Map<String, String> notFound = new ConcurrentHashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder notFoundHits = new LongAdder();
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder loadNanos = new LongAdder();
 
 	public CachingReferenceData(ReferenceDataService referenceDataService) {
-		this.referenceDataService = referenceDataService;
+		this.referenceDataService = Objects.requireNonNull(referenceDataService);
+	}
+
+	/**
+	 * loads all the instruments the reference data service can list, with a single request
+	 * @return	the number of instruments loaded
+	 */
+	public int preload(){
+		long start = System.nanoTime();
+		Map<String, Instrument> all = this.referenceDataService.findAllInstruments();
+		this.recordLoad(start);
+		this.cache.putAll(all);
+		this.notFound.keySet().removeAll(all.keySet());
+		return all.size();
 	}
 
+	/**
+	 * @throws IllegalArgumentException	if the ticker is not found, now or in a previous request
+	 */
 	public Instrument getInstrument(String ticker){
-		return this.cache.computeIfAbsent(ticker, referenceDataService::findInstrument);
+		Instrument instrument = this.cached(ticker);
+		return instrument != null ? instrument : this.load(ticker);
+	}
+
+	/**
+	 * @param tickers
+	 * @return	ticker -> instrument, for all the tickers. The instruments not cached yet are loaded with a single request
+	 * @throws IllegalArgumentException	if any ticker is not found
+	 */
+	public Map<String, Instrument> getInstruments(Collection<String> tickers){
+		Map<String, Instrument> instruments = new HashMap<>();
+		List<String> missing = null;
+		for (String ticker : tickers) {
+			Instrument instrument = this.cached(ticker);
+			if (instrument != null)
+				instruments.put(ticker, instrument);
+			else {
+				if (missing == null)
+					missing = new ArrayList<>();
+				missing.add(ticker);
+			}
+		}
+		if (missing != null) {
+			long start = System.nanoTime();
+			Map<String, Instrument> loaded;
+			try {
+				loaded = this.referenceDataService.findInstruments(missing);
+			} catch (IllegalArgumentException e) {
+				loaded = null;
+			} finally {
+				this.recordLoad(start);
+			}
+			if (loaded == null) {
+				// the batch doesn't tell which tickers are unknown: one by one, they get remembered
+				for (String ticker : missing)
+					instruments.put(ticker, this.load(ticker));
+				return instruments;
+			}
+			this.cache.putAll(loaded);
+			instruments.putAll(loaded);
+		}
+		return instruments;
+	}
+
+	/**
+	 * @return	how often the cache answered without asking the reference data service
+	 */
+	public ReferenceDataStatistics statistics(){
+		return new ReferenceDataStatistics(
+				this.hits.sum(), this.misses.sum(), this.notFoundHits.sum(),
+				this.loads.sum(), this.loadNanos.sum(), this.cache.size(), this.notFound.size()
+		);
+	}
+
+	private Instrument load(String ticker){
+		Instrument instrument;
+		long start = System.nanoTime();
+		try {
+			instrument = this.referenceDataService.findInstrument(ticker);
+		} catch (IllegalArgumentException e) {
+			this.notFound.put(ticker, String.valueOf(e.getMessage()));
+			throw e;
+		} finally {
+			this.recordLoad(start);
+		}
+		Instrument previous = this.cache.putIfAbsent(ticker, instrument);
+		return previous == null ? instrument : previous;
+	}
+
+	/**
+	 * @return	the instrument if cached, null if it must be loaded
+	 * @throws IllegalArgumentException	if the ticker is known not to exist
+	 */
+	private Instrument cached(String ticker){
+		Instrument instrument = this.cache.get(ticker);
+		if (instrument != null) {
+			this.hits.increment();
+			return instrument;
+		}
+		String reason = this.notFound.get(ticker);
+		if (reason != null) {
+			this.notFoundHits.increment();
+			throw new IllegalArgumentException(reason);
+		}
+		this.misses.increment();
+		return null;
+	}
+
+	private void recordLoad(long startNanos){
+		this.loads.increment();
+		this.loadNanos.add(System.nanoTime() - startNanos);
 	}
 
 }
@@ -0,0 +1,63 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+import com.crypto.portfolio.api.subscriber.SubscriptionSpec;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps only the latest portfolio update not consumed yet by a subscriber: a new update replaces the pending one.
+ * So the subscriber always reads the freshest snapshot, and a slow subscriber never builds up a backlog.
+ * Suitable for subscribers which only display the current state of the portfolio.
+ */
+class ConflatingSubscriberTopic extends SubscriberTopic {
+
+	private final AtomicReference<PortfolioUpdate> pending = new AtomicReference<>();
+
+	// subscribers waiting for an update park on this monitor
+	private final Object lock = new Object();
+
+	ConflatingSubscriberTopic(String description, SubscriptionSpec spec) {
+		super(description, spec);
+	}
+
+	@Override
+	public PortfolioUpdate waitForNextUpdate() throws InterruptedException {
+		PortfolioUpdate update = this.pending.getAndSet(null);
+		if (update != null)
+			return update;
+		synchronized (this.lock) {
+			while ((update = this.pending.getAndSet(null)) == null)
+				this.lock.wait();
+		}
+		return update;
+	}
+
+	/**
+	 * replaces the pending update, if any. It never fails
+	 * @param portfolioUpdate
+	 * @return	true
+	 */
+	@Override
+	boolean add(PortfolioUpdate portfolioUpdate){
+		this.pending.set(portfolioUpdate);
+		synchronized (this.lock) {
+			this.lock.notifyAll();
+		}
+		return true;
+	}
+
+	/**
+	 * conflating means never waiting for the subscriber: same as {@link #add(PortfolioUpdate)}
+	 */
+	@Override
+	boolean add(PortfolioUpdate portfolioUpdate, long timeout, TimeUnit unit) {
+		return this.add(portfolioUpdate);
+	}
+
+	@Override
+	long getLag() {
+		return this.pending.get() == null ? 0 : 1;
+	}
+}
@@ -0,0 +1,137 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.subscriber.EquityPriceUpdate;
+import com.crypto.portfolio.api.subscriber.PortfolioEntry;
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * turns the stream of full updates for one subscription spec into deltas: only the entries and the equity prices
+ * which changed since the previous update are kept.
+ *
+ * A full snapshot is produced every snapshotInterval updates, when requested by a subscriber (e.g. after detecting a
+ * gap in the sequence numbers), or when a delta can't describe the change: positions opened or closed,
+ * equities not priced anymore, or the same ticker held in more than one position.
+ *
+ * Only the service thread encodes; snapshots can be requested by any thread.
+ */
+class DeltaEncoder {
+
+	private final int snapshotInterval;
+
+	// the previous update, as a snapshot. Null before the first one
+	private PortfolioEntry[] previousEntries;
+	private final Map<String, BigDecimal> previousEquityPrices = new HashMap<>();
+	private int updatesSinceSnapshot;
+
+	private volatile boolean snapshotRequested;
+
+	/**
+	 * @param snapshotInterval	a snapshot is produced at least every this many updates
+	 */
+	DeltaEncoder(int snapshotInterval) {
+		if (snapshotInterval < 1)
+			throw new IllegalArgumentException("the snapshot interval must be positive");
+		this.snapshotInterval = snapshotInterval;
+	}
+
+	/**
+	 * the next update will be a full snapshot
+	 */
+	void requestSnapshot(){
+		this.snapshotRequested = true;
+	}
+
+	/**
+	 * @param update	a full update, whose sequence follows the previous one
+	 * @return	the update itself if a snapshot is due, the delta otherwise
+	 */
+	PortfolioUpdate encode(PortfolioUpdate update){
+		List<PortfolioEntry> entries = update.getEntries();
+		List<EquityPriceUpdate> equityPriceUpdates = update.getEquityPriceUpdates();
+
+		boolean snapshot = this.snapshotRequested || this.previousEntries == null ||
+				++this.updatesSinceSnapshot >= this.snapshotInterval ||
+				!this.samePositions(entries) ||
+				!this.sameEquities(equityPriceUpdates);
+
+		if (snapshot) {
+			this.snapshotRequested = false;
+			this.updatesSinceSnapshot = 0;
+			this.previousEntries = this.uniqueTickers(entries) ? entries.toArray(new PortfolioEntry[0]) : null;
+			this.previousEquityPrices.clear();
+			for (EquityPriceUpdate equityPriceUpdate : equityPriceUpdates)
+				this.previousEquityPrices.put(equityPriceUpdate.getEquityTicker(), equityPriceUpdate.getPrice());
+			return update;
+		}
+
+		List<PortfolioEntry> changedEntries = new ArrayList<>();
+		int index = 0;
+		for (PortfolioEntry entry : entries) {
+			PortfolioEntry previous = this.previousEntries[index];
+			if (previous != entry && !sameValue(previous, entry))
+				changedEntries.add(entry);
+			this.previousEntries[index++] = entry;
+		}
+
+		List<EquityPriceUpdate> changedPrices = new ArrayList<>();
+		for (EquityPriceUpdate equityPriceUpdate : equityPriceUpdates) {
+			BigDecimal previous = this.previousEquityPrices.put(equityPriceUpdate.getEquityTicker(), equityPriceUpdate.getPrice());
+			if (previous.compareTo(equityPriceUpdate.getPrice()) != 0)
+				changedPrices.add(equityPriceUpdate);
+		}
+
+		return new PortfolioUpdate(
+				update.getTimestamp(),
+				changedEntries,
+				changedPrices,
+				update.getTotalValue(),
+				update.getSequence(),
+				false
+		);
+	}
+
+	/**
+	 * @return	true if the entries are for the same tickers, in the same order, as the previous update
+	 */
+	private boolean samePositions(List<PortfolioEntry> entries){
+		if (entries.size() != this.previousEntries.length)
+			return false;
+		int index = 0;
+		for (PortfolioEntry entry : entries)
+			if (!entry.getPosition().getTicker().equals(this.previousEntries[index++].getPosition().getTicker()))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return	true if the same equities as the previous update are priced
+	 */
+	private boolean sameEquities(List<EquityPriceUpdate> equityPriceUpdates){
+		if (equityPriceUpdates.size() != this.previousEquityPrices.size())
+			return false;
+		for (EquityPriceUpdate equityPriceUpdate : equityPriceUpdates)
+			if (!this.previousEquityPrices.containsKey(equityPriceUpdate.getEquityTicker()))
+				return false;
+		return true;
+	}
+
+	/**
+	 * deltas are applied by ticker, so a ticker held in more than one position can only be sent in snapshots
+	 */
+	private boolean uniqueTickers(List<PortfolioEntry> entries){
+		Set<String> tickers = new HashSet<>();
+		for (PortfolioEntry entry : entries)
+			if (!tickers.add(entry.getPosition().getTicker()))
+				return false;
+		return true;
+	}
+
+	private static boolean sameValue(PortfolioEntry previous, PortfolioEntry entry){
+		return previous.getPosition().getPositionSize().equals(entry.getPosition().getPositionSize()) &&
+				previous.getUnitValue().compareTo(entry.getUnitValue()) == 0;
+	}
+
+}
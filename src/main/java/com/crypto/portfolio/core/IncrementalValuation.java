@@ -0,0 +1,342 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.subscriber.EquityPriceUpdate;
+import com.crypto.portfolio.api.subscriber.PortfolioEntry;
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * keeps the valuation of the previous tick, so that only what changed is computed again:
+ * - an option is re-priced only if the price of its underlying or the pricing date changed
+ * - a portfolio entry is re-created only if its unit price or the quantity of its position changed
+ * - the NAV is adjusted by the difference between the new and old value of the re-created entries
+ *
+ * Options and positions are tracked by instrument id (see {@link InstrumentRegistry}), in arrays: the
+ * {@link PositionTable} nets the positions on the same instrument.
+ *
+ * While the positions don't change (the same option ids and position table as the previous tick), a tick costs
+ * a comparison per equity, plus the work on the options of the underlyings which moved: the options are indexed by
+ * underlying, and the entries are kept by row. Only a new set of positions, or a new pricing date for the options,
+ * goes through all of them.
+ *
+ * BigDecimal additions and subtractions without a MathContext are exact, so the NAV is the same as the one
+ * summed from scratch.
+ *
+ * It is only used by the service thread.
+ */
+@NotThreadSafe
+class IncrementalValuation {
+
+	private final InstrumentRegistry registry;
+
+	// by instrument id, null for the ones never priced or held
+	private OptionQuote[] optionQuotes = new OptionQuote[64];
+	private PositionState[] positionStates = new PositionState[64];
+
+	// the options priced last, indexed by underlying, and the prices they were written to
+	private int[] indexedOptionIds;
+	private BigDecimal[] pricedInto;
+	private LocalDate pricingDate;
+	// distinct underlyings of the options, with their options and their price when the options were last priced
+	private int[] underlyingIds = new int[0];
+	private int[][] optionsByUnderlying = new int[0][];
+	private BigDecimal[] underlyingPrices = new BigDecimal[0];
+	// the options priced by the last call, the first repricedOptions ones
+	private int[] toReprice = new int[0];
+
+	// the positions valued last, with their entry by row. The array is published as is, so it's copied before an entry
+	// changes (copy on write): an update without any change publishes the same list as the previous one
+	private PositionTable positionTable;
+	private PortfolioEntry[] entries = new PortfolioEntry[0];
+	private List<PortfolioEntry> publishedEntries = Collections.emptyList();
+	// true once the entries were copied for the current update
+	private boolean entriesCopied;
+	// rows of the equities, the other ones being options
+	private int[] equityRows = new int[0];
+	// instrument ids of the positions at the last update
+	private int[] heldIds = new int[0];
+	private BigDecimal nav = BigDecimal.ZERO;
+
+	// increased at each new set of positions, used to find out positions which are not open anymore
+	private long tick;
+
+	// only for monitoring purposes
+	private int repricedOptions;
+	private int revaluedPositions;
+
+	/**
+	 * @param registry	where the positions and options are registered
+	 */
+	IncrementalValuation(InstrumentRegistry registry) {
+		this.registry = Objects.requireNonNull(registry);
+	}
+
+	/**
+	 * sets the price of the given options which need it, re-using the previous prices otherwise
+	 * @param optionIds		the options among the open positions: the same instance while the positions don't change
+	 * @param unitPrices	by instrument id: it must contain the prices of the underlyings, and it receives the
+	 *                      prices of the options. The prices of the options not re-priced are left as they are when
+	 *                      it's the same array as in the previous call, and set again otherwise
+	 * @param pricingDate
+	 * @param pricer		prices the first n options of the array into the unit prices
+	 */
+	void optionPrices(
+			int[] optionIds,
+			BigDecimal[] unitPrices,
+			LocalDate pricingDate,
+			ObjIntConsumer<int[]> pricer
+	) {
+		if (this.optionQuotes.length < this.registry.size())
+			this.optionQuotes = Arrays.copyOf(this.optionQuotes, Math.max(this.registry.size(), this.optionQuotes.length * 2));
+		if (this.toReprice.length < optionIds.length)
+			this.toReprice = new int[optionIds.length];
+
+		int toReprice = 0;
+		if (optionIds == this.indexedOptionIds && unitPrices == this.pricedInto && pricingDate.equals(this.pricingDate)) {
+			// only the options on the underlyings which moved
+			for (int i = 0; i < this.underlyingIds.length; i++) {
+				BigDecimal underlyingPrice = unitPrices[this.underlyingIds[i]];
+				if (underlyingPrice.equals(this.underlyingPrices[i]))
+					continue;
+				this.underlyingPrices[i] = underlyingPrice;
+				for (int id : this.optionsByUnderlying[i])
+					this.toReprice[toReprice++] = id;
+			}
+		} else {
+			if (optionIds != this.indexedOptionIds)
+				this.indexOptions(optionIds);
+			for (int i = 0; i < this.underlyingIds.length; i++)
+				this.underlyingPrices[i] = unitPrices[this.underlyingIds[i]];
+			for (int id : optionIds) {
+				OptionQuote quote = this.optionQuotes[id];
+				BigDecimal underlyingPrice = unitPrices[this.registry.underlyingId(id)];
+				if (quote != null && quote.pricingDate.equals(pricingDate) && quote.underlyingPrice.equals(underlyingPrice))
+					unitPrices[id] = quote.price;
+				else
+					this.toReprice[toReprice++] = id;
+			}
+			this.pricingDate = pricingDate;
+			this.pricedInto = unitPrices;
+		}
+
+		if (toReprice > 0)
+			pricer.accept(this.toReprice, toReprice);
+		for (int i = 0; i < toReprice; i++) {
+			int id = this.toReprice[i];
+			this.optionQuotes[id] = new OptionQuote(unitPrices[this.registry.underlyingId(id)], pricingDate, unitPrices[id]);
+		}
+		this.repricedOptions = toReprice;
+	}
+
+	/**
+	 * groups the options by underlying, and forgets the quotes of the options not held anymore
+	 */
+	private void indexOptions(int[] optionIds){
+		boolean[] held = new boolean[this.registry.size()];
+		for (int id : optionIds)
+			held[id] = true;
+		if (this.indexedOptionIds != null)
+			for (int id : this.indexedOptionIds)
+				if (!held[id])
+					this.optionQuotes[id] = null;
+
+		// underlying id -> its position among the distinct underlyings
+		int[] underlyingIndexes = new int[this.registry.size()];
+		Arrays.fill(underlyingIndexes, -1);
+		int[] underlyingIds = new int[optionIds.length];
+		int[] optionCounts = new int[optionIds.length];
+		int underlyings = 0;
+		for (int id : optionIds) {
+			int underlyingId = this.registry.underlyingId(id);
+			if (underlyingIndexes[underlyingId] < 0) {
+				underlyingIndexes[underlyingId] = underlyings;
+				underlyingIds[underlyings++] = underlyingId;
+			}
+			optionCounts[underlyingIndexes[underlyingId]]++;
+		}
+		int[][] optionsByUnderlying = new int[underlyings][];
+		for (int i = 0; i < underlyings; i++)
+			optionsByUnderlying[i] = new int[optionCounts[i]];
+		int[] filled = new int[underlyings];
+		for (int id : optionIds) {
+			int index = underlyingIndexes[this.registry.underlyingId(id)];
+			optionsByUnderlying[index][filled[index]++] = id;
+		}
+
+		this.underlyingIds = Arrays.copyOf(underlyingIds, underlyings);
+		this.optionsByUnderlying = optionsByUnderlying;
+		this.underlyingPrices = new BigDecimal[underlyings];
+		this.indexedOptionIds = optionIds;
+	}
+
+	/**
+	 * create the user-side object which will be consumed by subscribers, once the options are priced by
+	 * {@link #optionPrices}.
+	 * Entries of positions which didn't change are the same instances of the previous update, and so is the list of
+	 * entries if none changed
+	 * @param positions				one row per instrument, registered: the same instance while the positions don't change
+	 * @param unitPrices			by instrument id, for all the positions
+	 * @param equityPriceUpdates
+	 */
+	PortfolioUpdate buildPortfolioUpdate(
+			PositionTable positions,
+			BigDecimal[] unitPrices,
+			List<EquityPriceUpdate> equityPriceUpdates,
+			LocalDateTime currentTimestamp,
+			long sequence
+	) {
+		this.entriesCopied = false;
+		if (positions != this.positionTable)
+			this.revalueAll(positions, unitPrices);
+		else {
+			int revalued = 0;
+			for (int row : this.equityRows)
+				if (this.revalue(row, unitPrices))
+					revalued++;
+			// the options re-priced for this tick, the only ones whose price may have changed
+			for (int i = 0; i < this.repricedOptions; i++)
+				if (this.revalue(this.positionStates[this.toReprice[i]].row, unitPrices))
+					revalued++;
+			this.revaluedPositions = revalued;
+		}
+		if (this.entriesCopied)
+			this.publishedEntries = Collections.unmodifiableList(Arrays.asList(this.entries));
+
+		return new PortfolioUpdate(
+				currentTimestamp,
+				this.publishedEntries,
+				equityPriceUpdates,
+				this.nav,
+				sequence,
+				true
+		);
+	}
+
+	/**
+	 * a new set of positions: each one is compared to its previous entry, and the closed ones are taken out
+	 */
+	private void revalueAll(PositionTable positions, BigDecimal[] unitPrices){
+		this.tick++;
+		int revalued = 0;
+		if (this.positionStates.length < unitPrices.length)
+			this.positionStates = Arrays.copyOf(this.positionStates, unitPrices.length);
+
+		this.entries = new PortfolioEntry[positions.size()];
+		this.entriesCopied = true;
+		int[] heldIds = new int[positions.size()];
+		int[] equityRows = new int[positions.size()];
+		int equities = 0;
+		for (int row = 0; row < positions.size(); row++) {
+			int id = positions.instrumentId(row);
+			heldIds[row] = id;
+			if (this.registry.underlyingId(id) < 0)
+				equityRows[equities++] = row;
+			BigDecimal price = unitPrices[id];
+			if (price == null)
+				throw new IllegalStateException("can't price "+positions.ticker(row));
+
+			PositionState state = this.positionStates[id];
+			if (state == null) {
+				state = new PositionState();
+				this.positionStates[id] = state;
+			}
+			state.row = row;
+
+			if (state.entry == null || state.quantity != positions.quantity(row) || !state.entry.getUnitValue().equals(price)) {
+				BigDecimal entryValue = price.multiply(positions.decimalQuantity(row));
+				this.nav = state.entry == null ?
+						this.nav.add(entryValue) :
+						this.nav.add(entryValue.subtract(state.entry.getValue()));
+				state.entry = new PortfolioEntry(positions.position(row), price, entryValue);
+				state.quantity = positions.quantity(row);
+				revalued++;
+			}
+			state.lastTick = this.tick;
+			this.entries[row] = state.entry;
+		}
+		this.revaluedPositions = revalued;
+
+		// closed positions leave the portfolio, and their value with them
+		for (int id : this.heldIds) {
+			PositionState state = this.positionStates[id];
+			if (state != null && state.lastTick != this.tick) {
+				this.nav = this.nav.subtract(state.entry.getValue());
+				this.positionStates[id] = null;
+			}
+		}
+		this.heldIds = heldIds;
+		this.equityRows = Arrays.copyOf(equityRows, equities);
+		this.positionTable = positions;
+	}
+
+	/**
+	 * re-creates the entry of the row if its unit price changed, the quantity being the same
+	 * @return	true if re-created
+	 */
+	private boolean revalue(int row, BigDecimal[] unitPrices){
+		PortfolioEntry entry = this.entries[row];
+		int id = this.positionTable.instrumentId(row);
+		BigDecimal price = unitPrices[id];
+		if (price == null)
+			throw new IllegalStateException("can't price "+this.positionTable.ticker(row));
+		if (entry.getUnitValue().equals(price))
+			return false;
+
+		BigDecimal entryValue = price.multiply(this.positionTable.decimalQuantity(row));
+		this.nav = this.nav.add(entryValue.subtract(entry.getValue()));
+		entry = new PortfolioEntry(entry.getPosition(), price, entryValue);
+		if (!this.entriesCopied) {
+			// the current array is published already
+			this.entries = this.entries.clone();
+			this.entriesCopied = true;
+		}
+		this.entries[row] = entry;
+		this.positionStates[id].entry = entry;
+		return true;
+	}
+
+	/**
+	 * @return	number of options priced during the last update
+	 */
+	int getRepricedOptions() {
+		return repricedOptions;
+	}
+
+	/**
+	 * @return	number of portfolio entries re-created during the last update
+	 */
+	int getRevaluedPositions() {
+		return revaluedPositions;
+	}
+
+
+	private static class OptionQuote {
+		private final BigDecimal underlyingPrice;
+		private final LocalDate pricingDate;
+		private final BigDecimal price;
+
+		OptionQuote(BigDecimal underlyingPrice, LocalDate pricingDate, BigDecimal price) {
+			this.underlyingPrice = underlyingPrice;
+			this.pricingDate = pricingDate;
+			this.price = price;
+		}
+	}
+
+	private static class PositionState {
+		private PortfolioEntry entry;
+		private long quantity;
+		private long lastTick;
+		// in the current position table
+		private int row;
+	}
+
+}
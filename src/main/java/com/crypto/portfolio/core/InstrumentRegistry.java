@@ -0,0 +1,85 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.api.Instrument;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * gives every instrument a dense int id, from 0, the first time it's seen. Ids never change, so prices and any other
+ * per-instrument state can live in arrays indexed by id: the update loop then reads them without hashing tickers.
+ * The underlying of an option is registered with it, and linked by id.
+ *
+ * Tickers are only looked up when registering, i.e. when the positions change. It is only used by the service thread.
+ */
+@NotThreadSafe
+class InstrumentRegistry {
+
+	private final Map<String, Integer> ids = new HashMap<>();
+	private Instrument[] instruments = new Instrument[64];
+	// -1 for anything but options
+	private int[] underlyingIds = new int[64];
+	private int size;
+
+	/**
+	 * @param instrument	an option registers its underlying too. If the ticker is known already, the instrument
+	 *                      replaces the previous one (e.g. the reference data changed) and keeps its id
+	 * @return	the id of the instrument
+	 */
+	int register(Instrument instrument){
+		int underlyingId = instrument instanceof EuOption ? this.register(((EuOption) instrument).getUnderlying()) : -1;
+		Integer id = this.ids.get(instrument.getTicker());
+		if (id == null) {
+			id = this.size++;
+			this.ids.put(instrument.getTicker(), id);
+			if (id == this.instruments.length) {
+				this.instruments = Arrays.copyOf(this.instruments, id * 2);
+				this.underlyingIds = Arrays.copyOf(this.underlyingIds, id * 2);
+			}
+		}
+		this.instruments[id] = instrument;
+		this.underlyingIds[id] = underlyingId;
+		return id;
+	}
+
+	/**
+	 * @return	-1 if the ticker was never registered
+	 */
+	int idOf(String ticker){
+		Integer id = this.ids.get(ticker);
+		return id == null ? -1 : id;
+	}
+
+	Instrument instrument(int id){
+		return this.instruments[id];
+	}
+
+	/**
+	 * @throws ClassCastException	if it's not an option
+	 */
+	EuOption option(int id){
+		return (EuOption) this.instruments[id];
+	}
+
+	String ticker(int id){
+		return this.instruments[id].getTicker();
+	}
+
+	/**
+	 * @return	the id of the underlying for options, -1 otherwise
+	 */
+	int underlyingId(int id){
+		return this.underlyingIds[id];
+	}
+
+	/**
+	 * @return	the number of instruments registered: ids are below it
+	 */
+	int size(){
+		return this.size;
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.api.interfaces.BatchOptionPriceService;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * the options to price at one update, laid out as parallel primitive arrays for a {@link BatchOptionPriceService}.
+ * The arrays are kept and only grow, so a book of stable size is filled without allocating.
+ *
+ * Filled by the service thread; once filled, disjoint ranges can be priced by different threads.
+ */
+@NotThreadSafe
+class OptionBook {
+
+	private double[] stockPrices = new double[0];
+	private double[] strikePrices = new double[0];
+	private double[] standardDeviations = new double[0];
+	private double[] yearsToMaturity = new double[0];
+	private boolean[] calls = new boolean[0];
+	private double[] prices = new double[0];
+	private int size;
+
+	/**
+	 * @param optionIds		ids of the options to price, in the registry
+	 * @param count			how many of the ids to take, from the first
+	 * @param registry
+	 * @param currentDate
+	 * @param unitPrices	by instrument id, it must contain the prices of all the underlyings
+	 */
+	void fill(int[] optionIds, int count, InstrumentRegistry registry, LocalDate currentDate, BigDecimal[] unitPrices){
+		this.size = count;
+		if (this.size > this.prices.length) {
+			this.stockPrices = new double[this.size];
+			this.strikePrices = new double[this.size];
+			this.standardDeviations = new double[this.size];
+			this.yearsToMaturity = new double[this.size];
+			this.calls = new boolean[this.size];
+			this.prices = new double[this.size];
+		}
+		for (int i = 0; i < count; i++) {
+			EuOption option = registry.option(optionIds[i]);
+			this.stockPrices[i] = unitPrices[registry.underlyingId(optionIds[i])].doubleValue();
+			this.strikePrices[i] = option.getStrike().doubleValue();
+			this.standardDeviations[i] = option.getUnderlying().getAnnualizedStandardDeviation();
+			this.yearsToMaturity[i] = (double) ChronoUnit.DAYS.between(currentDate, option.getMaturity()) / 365;
+			this.calls[i] = option.getOptionType() == EuOption.OptionType.CALL;
+		}
+	}
+
+	/**
+	 * prices the options from index "from" (included) to "to" (excluded)
+	 */
+	void price(BatchOptionPriceService priceService, int from, int to){
+		priceService.priceBatch(this.stockPrices, this.strikePrices, this.standardDeviations, this.yearsToMaturity,
+				this.calls, this.prices, from, to);
+	}
+
+	int size(){
+		return this.size;
+	}
+
+	/**
+	 * @param index
+	 * @return	the price of the option, once priced
+	 */
+	double priceAt(int index){
+		return this.prices[index];
+	}
+
+}
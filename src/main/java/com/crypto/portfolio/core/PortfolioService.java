@@ -10,13 +10,15 @@ import com.crypto.portfolio.api.subscriber.EquityPriceUpdate;
 import com.crypto.portfolio.api.subscriber.PortfolioEntry;
 import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
 import com.crypto.portfolio.api.subscriber.PortfolioUpdateSubscriberQueue;
+import com.crypto.portfolio.api.subscriber.SubscriptionSpec;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
 
 /**
  * prepares the portfolio service.
@@ -26,7 +28,7 @@ public class PortfolioService {
 
 	private final long emulatedUpdatesInterval;
 	private final long updatesInterval;
-	private final int maxQueueCapacity;
+	private final int pricingParallelism;
 
 	private final PositionService positionService;
 	private final OptionPriceService priceService;
@@ -37,8 +39,64 @@ public class PortfolioService {
 
 	private final CachingReferenceData cachingReferenceData;
 
-	// list of topics interested in portfolio updates
-	public Collection<SubscriberTopic> subscriberTopics = new LinkedBlockingQueue<>();
+	// null if options are priced sequentially by the service thread
+	private final ExecutorService pricingExecutor;
+
+	// only used with a batch price service
+	private final OptionBook optionBook = new OptionBook();
+
+	// ids of all the instruments ever held, and their prices at the current update by id. Only used by the service thread
+	private final InstrumentRegistry instrumentRegistry = new InstrumentRegistry();
+	private BigDecimal[] unitPrices = new BigDecimal[0];
+
+	// null when every update is valued from scratch
+	private IncrementalValuation incrementalValuation;
+
+	/**
+	 * how the portfolio is valued at each update
+	 */
+	public enum ValuationMode {
+		/**
+		 * every option is priced and every entry is valued at each update
+		 */
+		FULL,
+		/**
+		 * only options whose underlying price or pricing date changed are priced again, and only entries whose
+		 * price or position changed are valued again. The NAV is adjusted by the differences
+		 */
+		INCREMENTAL
+	}
+
+	private OverrunPolicy overrunPolicy = OverrunPolicy.COALESCE;
+
+	// created when the service starts
+	private volatile TickScheduler tickScheduler;
+
+	/**
+	 * what to do with the updates that were due while the previous one was still being computed
+	 */
+	public enum OverrunPolicy {
+		/**
+		 * the missed updates are dropped, the next one will be produced when due.
+		 * Emulated time jumps forward accordingly
+		 */
+		SKIP,
+		/**
+		 * the missed updates are merged into one, produced straight away; its emulated time is the one of the
+		 * last update which was due
+		 */
+		COALESCE
+	}
+
+	// subscribers interested in portfolio updates
+	private final SubscriberRegistry subscribers;
+
+	// sequence number of the last update produced. Only used by the thread computing the updates
+	private long updateSequence;
+
+	// derived from the last snapshot of a versioned position service, null otherwise. Only used by the service thread
+	private OpenPositions openPositions;
+	private long derivedPositionVersions;
 
 	/**
 	 *
@@ -58,26 +116,102 @@ public class PortfolioService {
 			MarketService marketDataService,
 			ReferenceDataService referenceDataService
 	) {
+		this(emulatedUpdatesInterval, updatesInterval, maxQueueCapacity, 1,
+				positionService, priceService, marketDataService, referenceDataService);
+	}
+
+	/**
+	 *
+	 * @param emulatedUpdatesInterval		the virtual time between portfolio updates, in millis
+	 * @param updatesInterval				the actual time between updates, in millis
+	 * @param maxQueueCapacity				maximum number of portfolio updates which will be stored, per subscriber
+	 * @param pricingParallelism			number of threads pricing the options of each update. With 1, the options
+	 *                                      are priced by the service thread itself. With more, the priceService
+	 *                                      must be thread safe
+	 * @param positionService
+	 * @param priceService
+	 * @param marketDataService
+	 * @param referenceDataService
+	 */
+	public PortfolioService(
+			long emulatedUpdatesInterval,
+			long updatesInterval,
+			int maxQueueCapacity,
+			int pricingParallelism,
+			PositionService positionService,
+			OptionPriceService priceService,
+			MarketService marketDataService,
+			ReferenceDataService referenceDataService
+	) {
+		if (pricingParallelism < 1)
+			throw new IllegalArgumentException("the pricing parallelism must be positive");
 		this.emulatedUpdatesInterval = emulatedUpdatesInterval;
 		this.updatesInterval = updatesInterval;
-		this.maxQueueCapacity = maxQueueCapacity;
+		this.pricingParallelism = pricingParallelism;
 		this.positionService = Objects.requireNonNull(positionService);
 		this.priceService = Objects.requireNonNull(priceService);
 		this.marketDataService = Objects.requireNonNull(marketDataService);
 		this.referenceDataService = Objects.requireNonNull(referenceDataService);
 		this.cachingReferenceData = new CachingReferenceData(this.referenceDataService);
+		this.subscribers = new SubscriberRegistry(maxQueueCapacity);
+		this.pricingExecutor = pricingParallelism == 1 ? null : Executors.newFixedThreadPool(
+				pricingParallelism,
+				// daemons, so that a pool which is not shut down won't keep the JVM alive
+				new ThreadFactoryBuilder().setNameFormat("optionPricer-%d").setDaemon(true).build()
+		);
 	}
 
 
 	/**
-	 * registers interest in portfolio updates.
+	 * how updates are delivered to a subscriber which is not consuming them as fast as they're produced
+	 */
+	public enum DeliveryPolicy {
+		/**
+		 * updates are queued, up to the max queue capacity. When the queue is full new updates are discarded
+		 */
+		BOUNDED_QUEUE,
+		/**
+		 * only the latest update is kept: a new update replaces the one not consumed yet
+		 */
+		CONFLATING,
+		/**
+		 * the service publishes each update once, to a ring of max queue capacity shared by all these subscribers.
+		 * Each subscriber reads at its own pace; one falling behind more than the capacity skips the oldest updates.
+		 * Cheaper than the queues when there are many subscribers, which should keep up with the updates
+		 */
+		BROADCAST_RING
+	}
+
+	/**
+	 * registers interest in the whole portfolio updates, with a {@link DeliveryPolicy#BOUNDED_QUEUE}.
 	 * @param 	id		only for log purposes. There's no actual requirement to keep this id different among listeners
 	 * @return	the queue from which portfolio updates will be retrieved
 	 */
 	public PortfolioUpdateSubscriberQueue addSubscriber(String id){
-		SubscriberTopic observer = new SubscriberTopic(id, this.maxQueueCapacity);
-		this.subscriberTopics.add(observer);
-		return observer;
+		return this.addSubscriber(id, SubscriptionSpec.all(), DeliveryPolicy.BOUNDED_QUEUE);
+	}
+
+	/**
+	 * registers interest in the whole portfolio updates.
+	 * @param 	id				only for log purposes. There's no actual requirement to keep this id different among listeners
+	 * @param	deliveryPolicy
+	 * @return	the queue from which portfolio updates will be retrieved
+	 */
+	public PortfolioUpdateSubscriberQueue addSubscriber(String id, DeliveryPolicy deliveryPolicy){
+		return this.addSubscriber(id, SubscriptionSpec.all(), deliveryPolicy);
+	}
+
+	/**
+	 * registers interest in (part of) the portfolio updates.
+	 * The updates for each distinct spec are built once, and shared by all subscribers with that spec
+	 * @param 	id				only for log purposes. There's no actual requirement to keep this id different among listeners
+	 * @param	spec			which positions and which content of the updates the subscriber is interested in
+	 * @param	deliveryPolicy	deltas can't be delivered by {@link DeliveryPolicy#CONFLATING}
+	 * @return	the queue from which portfolio updates will be retrieved
+	 * @throws IllegalArgumentException	if deltas are asked with a conflating delivery
+	 */
+	public PortfolioUpdateSubscriberQueue addSubscriber(String id, SubscriptionSpec spec, DeliveryPolicy deliveryPolicy){
+		return this.subscribers.add(id, spec, deliveryPolicy);
 	}
 
 
@@ -88,160 +222,423 @@ public class PortfolioService {
 	 * @return	true if the lister was successfully removed
 	 */
 	public boolean removeSubscriber(PortfolioUpdateSubscriberQueue subscriber){
-		// sequential lookup, using memory address. Makes sense as long as we don't have too many listeners
-		return this.subscriberTopics.remove(subscriber);
+		return this.subscribers.remove(subscriber);
 	}
 
 	/**
-	 * non-blocking. Starts the service with another thread
+	 * to be called by a subscriber receiving deltas which detected a gap in the sequence numbers, e.g. because
+	 * its queue was full. The next update of its spec will be a full snapshot
+	 * @param subscriber
+	 * @throws IllegalArgumentException	if the subscriber is not registered
+	 */
+	public void requestSnapshot(PortfolioUpdateSubscriberQueue subscriber){
+		this.subscribers.requestSnapshot(subscriber);
+	}
+
+	/**
+	 * a lag growing over time means the subscriber can't keep up with the updates
+	 * @param subscriber
+	 * @return	the number of updates the subscriber has not consumed yet
+	 * @throws IllegalArgumentException	if the subscriber is not registered
+	 */
+	public long getSubscriberLag(PortfolioUpdateSubscriberQueue subscriber){
+		return this.subscribers.getLag(subscriber);
+	}
+
+	/**
+	 * to be set before starting the service. Default is {@link ValuationMode#FULL}
+	 * @param valuationMode
+	 */
+	public void setValuationMode(ValuationMode valuationMode){
+		this.incrementalValuation = Objects.requireNonNull(valuationMode) == ValuationMode.INCREMENTAL ?
+				new IncrementalValuation(this.instrumentRegistry) : null;
+	}
+
+	/**
+	 * to be set before starting the service. Default is {@link OverrunPolicy#COALESCE}
+	 * @param overrunPolicy
+	 */
+	public void setOverrunPolicy(OverrunPolicy overrunPolicy){
+		this.overrunPolicy = Objects.requireNonNull(overrunPolicy);
+	}
+
+	/**
+	 * non-blocking. Starts the service with another thread.
+	 * Updates are produced at a fixed rate: the time spent computing an update is not added to the interval
 	 */
 	public void startService(LocalDateTime timestamp){
+		this.tickScheduler = new TickScheduler(this.updatesInterval, this.overrunPolicy);
 		new Thread( () -> this.runner(timestamp), "portfolioService").start();
 	}
 
-	public void kill(){
-		this.running = true;
+	/**
+	 * @return	how well the service is keeping up with the update interval.
+	 * @throws IllegalStateException	if the service was not started
+	 */
+	public TickStatistics getTickStatistics(){
+		TickScheduler scheduler = this.tickScheduler;
+		if (scheduler == null)
+			throw new IllegalStateException("the service is not started");
+		return scheduler.statistics();
 	}
 
+	/**
+	 * loads all the reference data ahead, so the first update runs as fast as the following ones.
+	 * Call it before starting the service
+	 * @return	the number of instruments loaded: none if the reference data service can't list its instruments
+	 */
+	public int preloadReferenceData(){
+		return this.cachingReferenceData.preload();
+	}
 
-	private void runner(LocalDateTime timestamp){
-		LocalDateTime currentTimestamp = timestamp;
-		while(this.running){
-
-			if (! this.subscriberTopics.isEmpty()){
+	/**
+	 * @return	how the reference data cache is doing
+	 */
+	public ReferenceDataStatistics getReferenceDataStatistics(){
+		return this.cachingReferenceData.statistics();
+	}
 
-				// we won't call the
-				List<Position> positions = this.positionService.getPositions(currentTimestamp);
+	public void kill(){
+		this.running = false;
+	}
 
-				// collect all traded instruments (no duplicates in this set)
-				final Set<String> positionTickers = positions.stream().map(
-						Position::getTicker
-				).collect(Collectors.toSet());
 
-				// .. and be sure they're loaded into the cache
-				Map<String, Instrument> openPositionsWithRef =
-						positionTickers.stream().collect(Collectors.toMap(
-								ticker -> ticker, ticker -> this.cachingReferenceData.getInstrument(ticker)
-						));
+	/**
+	 * blocking. Runs the service on the current thread from the begin to the end timestamp (included), without
+	 * waiting between updates: emulated time passes as fast as the CPU allows.
+	 * Updates are never dropped; if a subscriber's queue is full the service waits for it to consume,
+	 * so the slowest subscriber sets the pace.
+	 * It's meant for backtests, so it should not run together with {@link #startService(LocalDateTime)}.
+	 * It can be interrupted by {@link #kill()}
+	 * @param beginTimestamp
+	 * @param endTimestamp
+	 * @return	the number of updates produced and the time it took
+	 */
+	public BacktestReport runBacktest(LocalDateTime beginTimestamp, LocalDateTime endTimestamp){
+		if (this.emulatedUpdatesInterval <= 0)
+			throw new IllegalStateException("the emulated interval must be positive to reach the end timestamp");
+		long ticks = 0;
+		long start = System.nanoTime();
+		try {
+			for (LocalDateTime currentTimestamp = beginTimestamp;
+				 this.running && !currentTimestamp.isAfter(endTimestamp);
+				 currentTimestamp = currentTimestamp.plus(this.emulatedUpdatesInterval, ChronoUnit.MILLIS)) {
+
+				PortfolioUpdate update = this.computeUpdate(currentTimestamp);
+				this.subscribers.publishWaiting(update, this.cachingReferenceData::getInstrument,
+						() -> this.running, this.updatesInterval);
+				ticks++;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			Logger.log("backtest interrupted");
+		}
+		BacktestReport report = new BacktestReport(ticks, System.nanoTime() - start);
+		Logger.log("backtest completed: " + report);
+		return report;
+	}
 
-				// get equity prices, including the ones non directly traded but underlying of options
-				Map<String, BigDecimal> equityPrices = extractEquityPricesFromPositions(currentTimestamp, openPositionsWithRef);
+	private void runner(LocalDateTime timestamp){
+		LocalDateTime currentTimestamp = timestamp;
+		this.tickScheduler.start();
+		while(this.running){
 
-				Map<String, BigDecimal> optionPrices = retrieveOptionPrices(currentTimestamp, openPositionsWithRef, equityPrices);
+			if (! this.subscribers.isEmpty()){
 
-				PortfolioUpdate update = this.buildPortfolioUpdate(positions, equityPrices, optionPrices, currentTimestamp);
+				PortfolioUpdate update = this.computeUpdate(currentTimestamp);
 
 				// push the update to all subscribers
-				for (SubscriberTopic subscriberTopic : this.subscriberTopics) {
-					if (!subscriberTopic.add(update))
-						Logger.log("the queue for the subscriber "+subscriberTopic.getDescription()+" is full");
-				}
+				this.subscribers.publish(update, this.cachingReferenceData::getInstrument);
 			}
 			else
 				Logger.log("no subscribers found yet");
 
 
+			int periods;
 			try {
-				Thread.sleep(this.updatesInterval);
+				periods = this.tickScheduler.awaitNextTick();
 			} catch (InterruptedException e) {
 				throw new Error("unexpected termination", e);
 			}
 
-			currentTimestamp = currentTimestamp.plus(this.emulatedUpdatesInterval, ChronoUnit.MILLIS);
+			currentTimestamp = currentTimestamp.plus(periods * this.emulatedUpdatesInterval, ChronoUnit.MILLIS);
 		}
+		if (this.pricingExecutor != null)
+			this.pricingExecutor.shutdown();
 		Logger.log("service terminated");
 	}
 
+	/**
+	 * fetches positions, reference data and prices, and values the whole portfolio.
+	 * Past the market service, prices are read and written by instrument id, in {@link #unitPrices}
+	 * @param currentTimestamp
+	 * @return	the update for the subscribers
+	 */
+	private PortfolioUpdate computeUpdate(LocalDateTime currentTimestamp){
+		long sequence = ++this.updateSequence;
+
+		OpenPositions openPositions = this.openPositions(currentTimestamp);
+		if (this.unitPrices.length < this.instrumentRegistry.size())
+			this.unitPrices = new BigDecimal[Math.max(this.instrumentRegistry.size(), this.unitPrices.length * 2)];
+		BigDecimal[] unitPrices = this.unitPrices;
+
+		// get equity prices, including the ones non directly traded but underlying of options
+		Map<String, BigDecimal> equityPrices = this.marketDataService.getPrices(openPositions.equityTickers, currentTimestamp);
+		List<EquityPriceUpdate> equityPriceUpdates = new ArrayList<>(openPositions.equityIds.length);
+		for (int i = 0; i < openPositions.equityIds.length; i++) {
+			String ticker = openPositions.equityTickers.get(i);
+			BigDecimal price = equityPrices.get(ticker);
+			if (price == null)
+				throw new IllegalStateException("can't price "+ticker);
+			unitPrices[openPositions.equityIds[i]] = price;
+			equityPriceUpdates.add(new EquityPriceUpdate(ticker, price));
+		}
+
+		int[] optionIds = openPositions.optionIds;
+		if (this.incrementalValuation == null) {
+			retrieveOptionPrices(currentTimestamp, optionIds, optionIds.length, unitPrices);
+			return this.buildPortfolioUpdate(openPositions.positions, unitPrices, equityPriceUpdates, currentTimestamp, sequence);
+		}
+		this.incrementalValuation.optionPrices(
+				optionIds, unitPrices, currentTimestamp.toLocalDate(),
+				(toReprice, count) -> retrieveOptionPrices(currentTimestamp, toReprice, count, unitPrices)
+		);
+		return this.incrementalValuation.buildPortfolioUpdate(openPositions.positions, unitPrices, equityPriceUpdates, currentTimestamp, sequence);
+	}
+
 	/**
 	 * create the user-side object which will be consumed by subscribers
-	 * @param positions
-	 * @param equityPrices
-	 * @param optionPrices
+	 * @param positions				one row per instrument, registered
+	 * @param unitPrices			by instrument id, for all the positions
+	 * @param equityPriceUpdates
 	 * @param currentTimestamp
+	 * @param sequence
 	 * @return
 	 */
 	private PortfolioUpdate buildPortfolioUpdate(
-			List<Position> positions,
-			Map<String, BigDecimal> equityPrices,
-			Map<String, BigDecimal> optionPrices,
-			LocalDateTime currentTimestamp) {
+			PositionTable positions,
+			BigDecimal[] unitPrices,
+			List<EquityPriceUpdate> equityPriceUpdates,
+			LocalDateTime currentTimestamp,
+			long sequence) {
 
-		List<PortfolioEntry> entries = new LinkedList<>();
+		List<PortfolioEntry> entries = new ArrayList<>(positions.size());
 		BigDecimal nav = BigDecimal.ZERO;
 
-		for (Position position : positions) {
-			BigDecimal price = equityPrices.get(position.getTicker());
-			if (price == null) // it must be an option then
-				price = optionPrices.get(position.getTicker());
+		for (int row = 0; row < positions.size(); row++) {
+			BigDecimal price = unitPrices[positions.instrumentId(row)];
 			if (price == null)
-				throw new IllegalStateException("can't price "+position.getTicker());
+				throw new IllegalStateException("can't price "+positions.ticker(row));
 
-			// new BigDecimal(bigInteger) has scale 0.
+			// the quantity has scale 0.
 			// multiplying our price BigDecimal (whose scale is X) by one whose scale is 0, the result has scale X
 			// so no loss of precision
-			BigDecimal entryValue = price.multiply(new BigDecimal(position.getPositionSize()));
+			BigDecimal entryValue = price.multiply(positions.decimalQuantity(row));
 			nav = nav.add(entryValue);
-			entries.add(new PortfolioEntry(position, price, entryValue));
+			entries.add(new PortfolioEntry(positions.position(row), price, entryValue));
 		}
 
 		return new PortfolioUpdate(
 				currentTimestamp,
 				entries,
-				// equity updates are already made. just transform the map into a list
-				equityPrices.entrySet().stream()
-						.map(entry -> new EquityPriceUpdate(entry.getKey(), entry.getValue()))
-						.collect(Collectors.toList()),
-				nav
+				equityPriceUpdates,
+				nav,
+				sequence,
+				true
 		);
 	}
 
 	/**
-	 * using the pricing service, obtain the price of all options among the open position
+	 * using the pricing service, obtain the price of the given options.
+	 * If a pricing executor is configured, the options are split in contiguous chunks priced in parallel;
+	 * each chunk writes the prices of its own options, so the outcome doesn't depend on thread timing.
+	 * A {@link BatchOptionPriceService} gets all the options of a chunk in a single call
 	 * @param currentTimestamp
-	 * @param openPositionsWithRef	open positions, which includes options to price
-	 * @param equityPrices			it must contain prices for all equities which are necessary to compute option prices
-	 * @return
+	 * @param optionIds		ids of the options to price
+	 * @param count			how many of the ids to take, from the first
+	 * @param unitPrices	by instrument id: it must contain the prices of the underlyings, and it receives the
+	 *                      prices of the options
 	 */
-	private Map<String, BigDecimal> retrieveOptionPrices(
+	private void retrieveOptionPrices(
 			LocalDateTime currentTimestamp,
-			Map<String, Instrument> openPositionsWithRef,
-			Map<String, BigDecimal> equityPrices
+			int[] optionIds,
+			int count,
+			BigDecimal[] unitPrices
 	) {
-		return openPositionsWithRef.entrySet()
-				.stream().filter(entry -> entry.getValue() instanceof EuOption)
-				.collect(Collectors.toMap(
-						entry -> entry.getKey(),
-						entry -> this.priceService.price(
-								(EuOption) entry.getValue(),
-								currentTimestamp.toLocalDate(),
-								equityPrices.get(((EuOption) entry.getValue()).getUnderlying().getTicker())
-						)
-				));
+		final LocalDate currentDate = currentTimestamp.toLocalDate();
+
+		if (this.priceService instanceof BatchOptionPriceService) {
+			this.retrieveOptionPricesInBatch((BatchOptionPriceService) this.priceService,
+					optionIds, count, currentDate, unitPrices);
+			return;
+		}
+
+		if (this.pricingExecutor == null || count < 2) {
+			for (int i = 0; i < count; i++)
+				unitPrices[optionIds[i]] = this.priceOption(optionIds[i], currentDate, unitPrices);
+			return;
+		}
+
+		int chunks = Math.min(this.pricingParallelism, count);
+		List<Callable<Void>> tasks = new ArrayList<>(chunks);
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			final int from = chunk * count / chunks;
+			final int to = (chunk + 1) * count / chunks;
+			tasks.add(() -> {
+				for (int i = from; i < to; i++)
+					unitPrices[optionIds[i]] = this.priceOption(optionIds[i], currentDate, unitPrices);
+				return null;
+			});
+		}
+		// the executor makes the prices written by its threads visible to this one
+		this.invokePricingTasks(tasks);
 	}
 
 	/**
-	 * uses the market data to price all equities among the "open positions".
-	 * It also prices equities which are underlying of the options
-	 * @param currentTimestamp
-	 * @param openPositions
-	 * @return	equity ticker -> price
+	 * the options are copied into the arrays of the option book, which is priced in place
 	 */
-	private Map<String, BigDecimal> extractEquityPricesFromPositions(
-			LocalDateTime currentTimestamp,
-			Map<String, Instrument> openPositions
+	private void retrieveOptionPricesInBatch(
+			BatchOptionPriceService batchPriceService,
+			int[] optionIds,
+			int count,
+			LocalDate currentDate,
+			BigDecimal[] unitPrices
 	) {
-		Map<String, BigDecimal> equityPrices = new HashMap<>();
-		for (Map.Entry<String, Instrument> position : openPositions.entrySet()) {
-			String equityTicker;
-			if (position.getValue() instanceof Equity)
-				equityTicker = position.getKey();
-			else if (position.getValue() instanceof EuOption)
-				equityTicker = ((EuOption) position.getValue()).getUnderlying().getTicker();
+		this.optionBook.fill(optionIds, count, this.instrumentRegistry, currentDate, unitPrices);
+		int size = this.optionBook.size();
+
+		if (this.pricingExecutor == null || size < 2)
+			this.optionBook.price(batchPriceService, 0, size);
+		else {
+			int chunks = Math.min(this.pricingParallelism, size);
+			List<Callable<Void>> tasks = new ArrayList<>(chunks);
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				final int from = chunk * size / chunks;
+				final int to = (chunk + 1) * size / chunks;
+				tasks.add(() -> {
+					this.optionBook.price(batchPriceService, from, to);
+					return null;
+				});
+			}
+			// the executor makes the prices written by its threads visible to this one
+			this.invokePricingTasks(tasks);
+		}
+
+		for (int i = 0; i < size; i++)
+			unitPrices[optionIds[i]] = batchPriceService.toPrice(this.optionBook.priceAt(i));
+	}
+
+	/**
+	 * @param tasks
+	 * @return	the results of the tasks, in the same order
+	 */
+	private <T> List<T> invokePricingTasks(List<Callable<T>> tasks){
+		try {
+			List<T> results = new ArrayList<>(tasks.size());
+			for (Future<T> future : this.pricingExecutor.invokeAll(tasks))
+				results.add(future.get());
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while pricing options", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException("can't price options", e.getCause());
+		}
+	}
+
+	private BigDecimal priceOption(int optionId, LocalDate currentDate, BigDecimal[] unitPrices){
+		return this.priceService.price(this.instrumentRegistry.option(optionId), currentDate,
+				unitPrices[this.instrumentRegistry.underlyingId(optionId)]);
+	}
+
+	/**
+	 * the positions, with what the update derives from them. With a {@link VersionedPositionService}, they're
+	 * derived again only when the version changes
+	 * @param currentTimestamp
+	 */
+	private OpenPositions openPositions(LocalDateTime currentTimestamp){
+		if (!(this.positionService instanceof VersionedPositionService))
+			return this.derive(this.positionService.getPositions(currentTimestamp), -1);
+
+		PositionSnapshot snapshot = ((VersionedPositionService) this.positionService).getSnapshot(currentTimestamp);
+		OpenPositions previous = this.openPositions;
+		if (previous != null && previous.version == snapshot.getVersion())
+			return previous;
+		this.openPositions = this.derive(snapshot.getPositions(), snapshot.getVersion());
+		return this.openPositions;
+	}
+
+	private OpenPositions derive(List<Position> positions, long version){
+		this.derivedPositionVersions++;
+		// one row per traded instrument, positions on the same ticker netted
+		PositionTable positionTable = new PositionTable(positions);
+		if (!positionTable.oversizedTickers().isEmpty())
+			Logger.log("leaving out the positions on "+positionTable.oversizedTickers()+": they don't fit a long");
+
+		// .. and be sure they're loaded into the cache, with a single request for the new ones
+		Map<String, Instrument> openPositionsWithRef = this.cachingReferenceData.getInstruments(positionTable.tickers());
+		positionTable.registerInstruments(this.instrumentRegistry, openPositionsWithRef);
+
+		// the equities to price: the ones traded, and the underlyings of the options, each once in order of appearance
+		boolean[] seen = new boolean[this.instrumentRegistry.size()];
+		int[] equityIds = new int[positionTable.size()];
+		int[] optionIds = new int[positionTable.size()];
+		int equities = 0, options = 0;
+		for (int row = 0; row < positionTable.size(); row++) {
+			int id = positionTable.instrumentId(row);
+			Instrument instrument = this.instrumentRegistry.instrument(id);
+			int equityId;
+			if (instrument instanceof Equity)
+				equityId = id;
+			else if (instrument instanceof EuOption) {
+				equityId = this.instrumentRegistry.underlyingId(id);
+				optionIds[options++] = id;
+			}
 			else
 				throw new Error("derivative not expected");
-			equityPrices.computeIfAbsent(equityTicker, ticker -> this.marketDataService.getPrice(ticker, currentTimestamp));
+			if (!seen[equityId]) {
+				seen[equityId] = true;
+				equityIds[equities++] = equityId;
+			}
+		}
+		List<String> equityTickers = new ArrayList<>(equities);
+		for (int i = 0; i < equities; i++)
+			equityTickers.add(this.instrumentRegistry.ticker(equityIds[i]));
+		return new OpenPositions(version, positionTable,
+				Arrays.copyOf(equityIds, equities), equityTickers, Arrays.copyOf(optionIds, options));
+	}
+
+	/**
+	 * @return	how many times the positions were derived (tickers collected, reference data looked up).
+	 * 			With a {@link VersionedPositionService}, once per version
+	 */
+	long getDerivedPositionVersions(){
+		return this.derivedPositionVersions;
+	}
+
+	/**
+	 * the positions of an update and what's derived from them, which only depends on the positions
+	 */
+	private static class OpenPositions {
+		// -1 if the position service is not versioned
+		private final long version;
+		private final PositionTable positions;
+		// ids of the equities to price, including the underlyings of the options, with their tickers in the same order
+		private final int[] equityIds;
+		private final List<String> equityTickers;
+		// ids of the options to price
+		private final int[] optionIds;
+
+		private OpenPositions(long version, PositionTable positions, int[] equityIds, List<String> equityTickers,
+				int[] optionIds) {
+			this.version = version;
+			this.positions = positions;
+			this.equityIds = equityIds;
+			this.equityTickers = equityTickers;
+			this.optionIds = optionIds;
 		}
-		return equityPrices;
 	}
 
 
@@ -0,0 +1,167 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.Instrument;
+import com.crypto.portfolio.api.interfaces.Position;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * the open positions in a compact form, one row per ticker: positions on the same ticker are netted when the table
+ * is built, so each instrument is priced and valued once per update.
+ *
+ * Rows are numbered in the order their ticker first appears; quantities are longs, which is plenty for any
+ * realistic book. A ticker whose position, or net, doesn't fit a long is left out of the table rather than failing
+ * the whole update: the caller tells about it (see {@link #oversizedTickers()}).
+ * The public {@link Position} of a row, with its BigInteger size, and its quantity as a BigDecimal are only created
+ * when the row is published, once per table: the positions of a versioned service are converted once per version,
+ * not once per update.
+ *
+ * Once the reference data of the rows is known, {@link #registerInstruments(InstrumentRegistry, Map)} links each row to
+ * the id of its instrument, so prices can be read from arrays indexed by id.
+ */
+@NotThreadSafe
+class PositionTable {
+
+	private final String[] tickers;
+	private final long[] quantities;
+	// the position of the row as given to the table if it was the only one on its ticker, created when asked otherwise
+	private final Position[] positions;
+	private final BigDecimal[] decimalQuantities;
+	// id of the instrument of each row, null till the instruments are registered
+	private int[] instrumentIds;
+	private final List<String> oversizedTickers;
+
+	/**
+	 * @param positions	in any order, possibly several on the same ticker. The tickers whose position, or net,
+	 *                  doesn't fit a long get no row
+	 */
+	PositionTable(List<Position> positions) {
+		Map<String, Integer> rows = new HashMap<>(positions.size() * 4 / 3 + 1);
+		String[] tickers = new String[positions.size()];
+		long[] quantities = new long[positions.size()];
+		Position[] originals = new Position[positions.size()];
+		boolean[] oversized = new boolean[positions.size()];
+		int size = 0;
+		for (Position position : positions) {
+			Integer row = rows.putIfAbsent(position.getTicker(), size);
+			if (row == null) {
+				row = size++;
+				tickers[row] = position.getTicker();
+				originals[row] = position;
+			} else
+				// the netted position is a new one
+				originals[row] = null;
+			if (oversized[row])
+				continue;
+
+			BigInteger positionSize = position.getPositionSize();
+			if (positionSize.bitLength() >= Long.SIZE)
+				oversized[row] = true;
+			else
+				try {
+					quantities[row] = Math.addExact(quantities[row], positionSize.longValue());
+				} catch (ArithmeticException e) {
+					oversized[row] = true;
+				}
+		}
+
+		// the oversized tickers are taken out, the others keep their order
+		List<String> oversizedTickers = new ArrayList<>();
+		int kept = 0;
+		for (int row = 0; row < size; row++) {
+			if (oversized[row]) {
+				oversizedTickers.add(tickers[row]);
+				continue;
+			}
+			tickers[kept] = tickers[row];
+			quantities[kept] = quantities[row];
+			originals[kept] = originals[row];
+			kept++;
+		}
+		this.tickers = Arrays.copyOf(tickers, kept);
+		this.quantities = Arrays.copyOf(quantities, kept);
+		this.positions = Arrays.copyOf(originals, kept);
+		this.decimalQuantities = new BigDecimal[kept];
+		this.oversizedTickers = Collections.unmodifiableList(oversizedTickers);
+	}
+
+	/**
+	 * @return	number of rows, i.e. of distinct tickers
+	 */
+	int size(){
+		return this.tickers.length;
+	}
+
+	String ticker(int row){
+		return this.tickers[row];
+	}
+
+	long quantity(int row){
+		return this.quantities[row];
+	}
+
+	/**
+	 * @return	the quantity with scale 0, created at the first call only
+	 */
+	BigDecimal decimalQuantity(int row){
+		BigDecimal quantity = this.decimalQuantities[row];
+		if (quantity == null) {
+			quantity = BigDecimal.valueOf(this.quantities[row]);
+			this.decimalQuantities[row] = quantity;
+		}
+		return quantity;
+	}
+
+	/**
+	 * @return	the public position of the row: the one given to the table if it was alone on its ticker,
+	 * 			otherwise the net one, created at the first call only
+	 */
+	Position position(int row){
+		Position position = this.positions[row];
+		if (position == null) {
+			position = new Position(BigInteger.valueOf(this.quantities[row]), this.tickers[row]);
+			this.positions[row] = position;
+		}
+		return position;
+	}
+
+	/**
+	 * registers the instrument of each row and keeps its id
+	 * @param instruments	ticker -> instrument, for all the rows
+	 */
+	void registerInstruments(InstrumentRegistry registry, Map<String, Instrument> instruments){
+		int[] instrumentIds = new int[this.tickers.length];
+		for (int row = 0; row < this.tickers.length; row++) {
+			Instrument instrument = instruments.get(this.tickers[row]);
+			if (instrument == null)
+				throw new IllegalStateException("no reference data for "+this.tickers[row]);
+			instrumentIds[row] = registry.register(instrument);
+		}
+		this.instrumentIds = instrumentIds;
+	}
+
+	/**
+	 * @return	the id of the instrument of the row, once registered
+	 */
+	int instrumentId(int row){
+		return this.instrumentIds[row];
+	}
+
+	/**
+	 * @return	the distinct tickers, in row order
+	 */
+	List<String> tickers(){
+		return Collections.unmodifiableList(Arrays.asList(this.tickers));
+	}
+
+	/**
+	 * @return	the tickers left out since their position, or net, doesn't fit a long. Usually none
+	 */
+	List<String> oversizedTickers(){
+		return this.oversizedTickers;
+	}
+
+}
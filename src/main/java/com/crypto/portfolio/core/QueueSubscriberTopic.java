@@ -0,0 +1,42 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+import com.crypto.portfolio.api.subscriber.SubscriptionSpec;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a queue of the portfolio updates not consumed yet by a subscriber.
+ * If the queue is full, new updates will be discarded
+ */
+class QueueSubscriberTopic extends SubscriberTopic {
+
+	private final BlockingQueue<PortfolioUpdate> queue;
+
+	QueueSubscriberTopic(String description, SubscriptionSpec spec, int maxCapacity) {
+		super(description, spec);
+		this.queue = new LinkedBlockingQueue<>(maxCapacity);
+	}
+
+	@Override
+	public PortfolioUpdate waitForNextUpdate() throws InterruptedException {
+		return queue.take();
+	}
+
+	@Override
+	boolean add(PortfolioUpdate portfolioUpdate){
+		return this.queue.offer(portfolioUpdate);
+	}
+
+	@Override
+	boolean add(PortfolioUpdate portfolioUpdate, long timeout, TimeUnit unit) throws InterruptedException {
+		return this.queue.offer(portfolioUpdate, timeout, unit);
+	}
+
+	@Override
+	long getLag() {
+		return this.queue.size();
+	}
+}
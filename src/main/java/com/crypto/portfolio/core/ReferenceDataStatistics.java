@@ -0,0 +1,89 @@
+package com.crypto.portfolio.core;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * snapshot of how the reference data cache is doing. Once warmed up, misses and loads should stop growing.
+ * @see PortfolioService#getReferenceDataStatistics()
+ */
+@Immutable
+public final class ReferenceDataStatistics {
+
+	private final long hits;
+	private final long misses;
+	private final long notFoundHits;
+	private final long loads;
+	private final long loadNanos;
+	private final int cachedInstruments;
+	private final int cachedNotFound;
+
+	ReferenceDataStatistics(
+			long hits, long misses, long notFoundHits, long loads, long loadNanos,
+			int cachedInstruments, int cachedNotFound
+	) {
+		this.hits = hits;
+		this.misses = misses;
+		this.notFoundHits = notFoundHits;
+		this.loads = loads;
+		this.loadNanos = loadNanos;
+		this.cachedInstruments = cachedInstruments;
+		this.cachedNotFound = cachedNotFound;
+	}
+
+	/**
+	 * @return	number of tickers found in the cache
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return	number of tickers which had to be loaded
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return	number of tickers rejected straight away, because not found by an earlier request
+	 */
+	public long getNotFoundHits() {
+		return notFoundHits;
+	}
+
+	/**
+	 * @return	number of requests to the reference data service, including the preload
+	 */
+	public long getLoads() {
+		return loads;
+	}
+
+	/**
+	 * @return	total time spent waiting for the reference data service
+	 */
+	public long getLoadMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(loadNanos);
+	}
+
+	public int getCachedInstruments() {
+		return cachedInstruments;
+	}
+
+	public int getCachedNotFound() {
+		return cachedNotFound;
+	}
+
+	@Override
+	public String toString() {
+		return "ReferenceDataStatistics{" +
+				"hits=" + hits +
+				", misses=" + misses +
+				", notFoundHits=" + notFoundHits +
+				", loads=" + loads +
+				", loadMicros=" + getLoadMicros() +
+				", cachedInstruments=" + cachedInstruments +
+				", cachedNotFound=" + cachedNotFound +
+				'}';
+	}
+}
@@ -0,0 +1,107 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+import com.crypto.portfolio.api.subscriber.PortfolioUpdateSubscriberQueue;
+import com.crypto.portfolio.api.subscriber.SubscriptionSpec;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * reads the updates from a {@link BroadcastRingBuffer} shared by all subscribers, keeping its own position.
+ * The service doesn't do anything per subscriber: the subscriber pulls the updates.
+ *
+ * Waiting for an update doesn't take locks: the subscriber spins for a short while, then parks for increasing times
+ * up to one millisecond. So it adds at most a millisecond of latency, which is negligible compared to the update
+ * intervals.
+ *
+ * If the subscriber falls behind by more than the ring capacity, it skips ahead to the oldest update still available.
+ * A topic is meant to be consumed by one thread.
+ */
+class RingSubscriberTopic implements PortfolioUpdateSubscriberQueue {
+
+	private static final int SPINS = 100;
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final String description;
+	private final SubscriptionSpec spec;
+	private final BroadcastRingBuffer ring;
+
+	// sequence of the next update to read; written by the subscriber only
+	private volatile long nextSequence;
+	private volatile long missedUpdates;
+
+	/**
+	 * the subscriber will receive the updates published from now on
+	 */
+	RingSubscriberTopic(String description, SubscriptionSpec spec, BroadcastRingBuffer ring) {
+		this.description = description;
+		this.spec = spec;
+		this.ring = ring;
+		this.nextSequence = ring.getLastPublished() + 1;
+	}
+
+	@Override
+	public PortfolioUpdate waitForNextUpdate() throws InterruptedException {
+		long next = this.nextSequence;
+		int idle = 0;
+		while (true) {
+			long lastPublished = this.ring.getLastPublished();
+			if (next <= lastPublished) {
+				if (!this.ring.isAvailable(next)) {
+					// lapped by the producer
+					long oldest = lastPublished - this.ring.getUsableCapacity() + 1;
+					this.missedUpdates += oldest - next;
+					next = oldest;
+					continue;
+				}
+				PortfolioUpdate update = this.ring.get(next);
+				// the slot could have been overwritten while we were reading it
+				if (this.ring.isAvailable(next)) {
+					this.nextSequence = next + 1;
+					return update;
+				}
+				continue;
+			}
+
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (idle < SPINS)
+				idle++;
+			else
+				LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(idle++ - SPINS, 10)));
+		}
+	}
+
+	/**
+	 * @return	the number of published updates the subscriber has not read yet
+	 */
+	long getLag(){
+		return Math.max(0, this.ring.getLastPublished() + 1 - this.nextSequence);
+	}
+
+	/**
+	 * @return	the number of updates lost because the subscriber was too slow
+	 */
+	long getMissedUpdates(){
+		return this.missedUpdates;
+	}
+
+	/**
+	 * @return	how many updates the subscriber can lag behind without losing any
+	 */
+	int getCapacity(){
+		return this.ring.getUsableCapacity();
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * @return	which part of the updates the subscriber receives
+	 */
+	SubscriptionSpec getSpec() {
+		return spec;
+	}
+}
@@ -0,0 +1,235 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.Instrument;
+import com.crypto.portfolio.api.Logger;
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+import com.crypto.portfolio.api.subscriber.PortfolioUpdateSubscriberQueue;
+import com.crypto.portfolio.api.subscriber.SubscriptionSpec;
+import com.crypto.portfolio.core.PortfolioService.DeliveryPolicy;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * keeps track of the subscribers and delivers the portfolio updates to them.
+ * Subscribers can be added or removed by any thread, while updates are published by the service thread only.
+ *
+ * Queue-based subscribers get their updates one by one; ring subscribers share a {@link BroadcastRingBuffer} per
+ * {@link SubscriptionSpec}, which is published to once per update. A ring is dropped with its last reader.
+ * Specs asking for deltas have their own {@link DeltaEncoder}, which must see every update. It's dropped with the
+ * last subscriber of the spec, so a new one starts from a new encoder and a snapshot
+ */
+class SubscriberRegistry {
+
+	private final int maxQueueCapacity;
+
+	// topics interested in portfolio updates
+	private final Collection<SubscriberTopic> subscriberTopics = new LinkedBlockingQueue<>();
+
+	// subscribers reading from a broadcast ring, one ring for each spec
+	private final Collection<RingSubscriberTopic> ringSubscribers = new LinkedBlockingQueue<>();
+	private final Map<SubscriptionSpec, BroadcastRingBuffer> broadcastRings = new ConcurrentHashMap<>();
+	// readers of each ring, guarded by this
+	private final Map<SubscriptionSpec, Integer> ringReaders = new HashMap<>();
+
+	private final Map<SubscriptionSpec, DeltaEncoder> deltaEncoders = new ConcurrentHashMap<>();
+	// subscribers of each delta spec, whatever their delivery, guarded by this
+	private final Map<SubscriptionSpec, Integer> deltaSubscribers = new HashMap<>();
+
+	SubscriberRegistry(int maxQueueCapacity) {
+		this.maxQueueCapacity = maxQueueCapacity;
+	}
+
+	/**
+	 * @throws IllegalArgumentException	if deltas are asked with a conflating delivery
+	 */
+	synchronized PortfolioUpdateSubscriberQueue add(String id, SubscriptionSpec spec, DeliveryPolicy deliveryPolicy){
+		Objects.requireNonNull(spec);
+		if (!spec.isDelta())
+			return this.addSubscriber(id, spec, deliveryPolicy);
+
+		if (deliveryPolicy == DeliveryPolicy.CONFLATING)
+			throw new IllegalArgumentException("deltas can't be conflated");
+		DeltaEncoder deltaEncoder = this.deltaEncoders.computeIfAbsent(
+				spec, ignored -> new DeltaEncoder(spec.getSnapshotInterval())
+		);
+		PortfolioUpdateSubscriberQueue subscriber = this.addSubscriber(id, spec, deliveryPolicy);
+		this.deltaSubscribers.merge(spec, 1, Integer::sum);
+		// requested once registered, so the subscriber can't miss it
+		deltaEncoder.requestSnapshot();
+		return subscriber;
+	}
+
+	private PortfolioUpdateSubscriberQueue addSubscriber(String id, SubscriptionSpec spec, DeliveryPolicy deliveryPolicy){
+		switch (Objects.requireNonNull(deliveryPolicy)){
+			case BOUNDED_QUEUE:
+				return this.addTopic(new QueueSubscriberTopic(id, spec, this.maxQueueCapacity));
+			case CONFLATING:
+				return this.addTopic(new ConflatingSubscriberTopic(id, spec));
+			case BROADCAST_RING:
+				RingSubscriberTopic ringSubscriber = new RingSubscriberTopic(id, spec, this.broadcastRings.computeIfAbsent(
+						spec, ignored -> new BroadcastRingBuffer(this.maxQueueCapacity)
+				));
+				this.ringSubscribers.add(ringSubscriber);
+				this.ringReaders.merge(spec, 1, Integer::sum);
+				return ringSubscriber;
+			default: throw new Error("not implemented");
+		}
+	}
+
+	private SubscriberTopic addTopic(SubscriberTopic subscriberTopic){
+		this.subscriberTopics.add(subscriberTopic);
+		return subscriberTopic;
+	}
+
+	synchronized boolean remove(PortfolioUpdateSubscriberQueue subscriber){
+		// sequential lookup, using memory address. Makes sense as long as we don't have too many listeners
+		SubscriptionSpec spec;
+		if (this.subscriberTopics.remove(subscriber))
+			spec = ((SubscriberTopic) subscriber).getSpec();
+		else if (this.ringSubscribers.remove(subscriber)) {
+			spec = ((RingSubscriberTopic) subscriber).getSpec();
+			// no one reads it any more: stop projecting updates into it
+			if (this.ringReaders.merge(spec, -1, Integer::sum) == 0) {
+				this.ringReaders.remove(spec);
+				this.broadcastRings.remove(spec);
+			}
+		}
+		else return false;
+
+		// an encoder only makes sense against the updates its subscribers received
+		if (spec.isDelta() && this.deltaSubscribers.merge(spec, -1, Integer::sum) == 0) {
+			this.deltaSubscribers.remove(spec);
+			this.deltaEncoders.remove(spec);
+		}
+		return true;
+	}
+
+	/**
+	 * the next update for the subscriber spec will be a full snapshot. Nothing changes if the spec has no deltas
+	 * @throws IllegalArgumentException	if the subscriber is not registered
+	 */
+	void requestSnapshot(PortfolioUpdateSubscriberQueue subscriber){
+		SubscriptionSpec spec = null;
+		for (SubscriberTopic subscriberTopic : this.subscriberTopics)
+			if (subscriberTopic == subscriber)
+				spec = subscriberTopic.getSpec();
+		for (RingSubscriberTopic ringSubscriber : this.ringSubscribers)
+			if (ringSubscriber == subscriber)
+				spec = ringSubscriber.getSpec();
+		if (spec == null)
+			throw new IllegalArgumentException("unknown subscriber");
+
+		DeltaEncoder deltaEncoder = this.deltaEncoders.get(spec);
+		if (deltaEncoder != null)
+			deltaEncoder.requestSnapshot();
+	}
+
+	/**
+	 * @throws IllegalArgumentException	if the subscriber is not registered
+	 */
+	long getLag(PortfolioUpdateSubscriberQueue subscriber){
+		for (SubscriberTopic subscriberTopic : this.subscriberTopics)
+			if (subscriberTopic == subscriber)
+				return subscriberTopic.getLag();
+		for (RingSubscriberTopic ringSubscriber : this.ringSubscribers)
+			if (ringSubscriber == subscriber)
+				return ringSubscriber.getLag();
+		throw new IllegalArgumentException("unknown subscriber");
+	}
+
+	/**
+	 * @return	the rings updates are published to
+	 */
+	int getBroadcastRingCount(){
+		return this.broadcastRings.size();
+	}
+
+	/**
+	 * @return	the delta encoders updates go through
+	 */
+	int getDeltaEncoderCount(){
+		return this.deltaEncoders.size();
+	}
+
+	boolean isEmpty(){
+		return this.subscriberTopics.isEmpty() && this.ringSubscribers.isEmpty();
+	}
+
+	/**
+	 * delivers the update without ever waiting: subscribers whose queue is full lose it
+	 * @param update			the full update
+	 * @param referenceData		ticker -> instrument, for the subscribers filtering positions
+	 */
+	void publish(PortfolioUpdate update, Function<String, Instrument> referenceData){
+		UpdateProjector projector = this.projectorOf(update, referenceData);
+		for (Map.Entry<SubscriptionSpec, BroadcastRingBuffer> ring : this.broadcastRings.entrySet()) {
+			PortfolioUpdate projection = projector.project(ring.getKey());
+			if (projection != null)
+				ring.getValue().publish(projection);
+		}
+
+		for (SubscriberTopic subscriberTopic : this.subscriberTopics) {
+			PortfolioUpdate projection = projector.project(subscriberTopic.getSpec());
+			if (projection != null && !subscriberTopic.add(projection))
+				Logger.log("the queue for the subscriber "+subscriberTopic.getDescription()+" is full");
+		}
+	}
+
+	/**
+	 * delivers the update, waiting for the subscribers to have room for it
+	 * @param update			the full update
+	 * @param referenceData		ticker -> instrument, for the subscribers filtering positions
+	 * @param running			waiting stops as soon as it returns false
+	 * @param waitMillis		how often we check for room, and log about it
+	 * @throws InterruptedException
+	 */
+	void publishWaiting(
+			PortfolioUpdate update,
+			Function<String, Instrument> referenceData,
+			BooleanSupplier running,
+			long waitMillis
+	) throws InterruptedException {
+		UpdateProjector projector = this.projectorOf(update, referenceData);
+
+		// the rings don't wait for readers, so we don't publish till the slowest one has room
+		for (RingSubscriberTopic ringSubscriber : this.ringSubscribers) {
+			while (running.getAsBoolean() && ringSubscriber.getLag() >= ringSubscriber.getCapacity()) {
+				Logger.log("waiting for the subscriber "+ringSubscriber.getDescription()+" to catch up");
+				Thread.sleep(waitMillis);
+			}
+		}
+		for (Map.Entry<SubscriptionSpec, BroadcastRingBuffer> ring : this.broadcastRings.entrySet()) {
+			PortfolioUpdate projection = projector.project(ring.getKey());
+			if (projection != null)
+				ring.getValue().publish(projection);
+		}
+
+		for (SubscriberTopic subscriberTopic : this.subscriberTopics) {
+			PortfolioUpdate projection = projector.project(subscriberTopic.getSpec());
+			while (projection != null && running.getAsBoolean() &&
+					!subscriberTopic.add(projection, waitMillis, TimeUnit.MILLISECONDS))
+				Logger.log("waiting for the subscriber "+subscriberTopic.getDescription()+" to catch up");
+		}
+	}
+
+	/**
+	 * the encoders are copied first: subscribers may come or go, with their encoder, while the update is published
+	 */
+	private UpdateProjector projectorOf(PortfolioUpdate update, Function<String, Instrument> referenceData){
+		Map<SubscriptionSpec, DeltaEncoder> deltaEncoders = new HashMap<>(this.deltaEncoders);
+		UpdateProjector projector = new UpdateProjector(update, referenceData, deltaEncoders);
+		// every delta is encoded against the previous update, so each encoder sees all updates, subscribers or not
+		for (SubscriptionSpec spec : deltaEncoders.keySet())
+			projector.project(spec);
+		return projector;
+	}
+
+}
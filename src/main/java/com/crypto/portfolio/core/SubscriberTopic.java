@@ -2,42 +2,57 @@ package com.crypto.portfolio.core;
 
 import com.crypto.portfolio.api.subscriber.PortfolioUpdateSubscriberQueue;
 import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+import com.crypto.portfolio.api.subscriber.SubscriptionSpec;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * this implementation should not be visible to the user as it contains critical
  * configuration of the topic which should only be managed by the PortfolioService.
  *
- * Keeps a queue of the portfolio updates not consumed yet by a subscriber.
- * If the queue is full, new updates will be discarded
+ * Keeps the portfolio updates not consumed yet by a subscriber. How many of them are kept, and what happens
+ * when the subscriber doesn't keep up, depends on the implementation
+ * @see PortfolioService.DeliveryPolicy
  */
-class SubscriberTopic implements PortfolioUpdateSubscriberQueue {
+abstract class SubscriberTopic implements PortfolioUpdateSubscriberQueue {
 
-	private final BlockingQueue<PortfolioUpdate> queue;
 	private final String description;
+	private final SubscriptionSpec spec;
 
-	SubscriberTopic(String description, int maxCapacity) {
+	SubscriberTopic(String description, SubscriptionSpec spec) {
 		this.description = description;
-		this.queue = new LinkedBlockingQueue<>(maxCapacity);
-	}
-
-	@Override
-	public PortfolioUpdate waitForNextUpdate() throws InterruptedException {
-		return queue.take();
+		this.spec = spec;
 	}
 
 	/**
 	 * adds an update to the subscriber's topic.
 	 * @param portfolioUpdate
-	 * @return	true if all good. false if the queue is full and the update will be lost
+	 * @return	true if all good. false if the topic is full and the update will be lost
 	 */
-	boolean add(PortfolioUpdate portfolioUpdate){
-		return this.queue.offer(portfolioUpdate);
-	}
+	abstract boolean add(PortfolioUpdate portfolioUpdate);
+
+	/**
+	 * adds an update to the subscriber's topic, waiting if necessary for the subscriber to make room
+	 * @param portfolioUpdate
+	 * @param timeout
+	 * @param unit
+	 * @return	true if all good. false if the topic was still full after the timeout
+	 */
+	abstract boolean add(PortfolioUpdate portfolioUpdate, long timeout, TimeUnit unit) throws InterruptedException;
+
+	/**
+	 * @return	the number of updates the subscriber has not consumed yet
+	 */
+	abstract long getLag();
 
 	public String getDescription() {
 		return description;
 	}
+
+	/**
+	 * @return	which part of the updates the subscriber receives
+	 */
+	SubscriptionSpec getSpec() {
+		return spec;
+	}
 }
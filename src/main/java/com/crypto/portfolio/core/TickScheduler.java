@@ -0,0 +1,103 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.core.PortfolioService.OverrunPolicy;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * paces the service at a fixed rate: tick N is due at (start + N * period) on the wall clock, no matter
+ * how long the computation of the previous ticks took. So the time spent computing doesn't add up to the period
+ * and the schedule doesn't drift.
+ *
+ * A tick overruns when it completes after the following tick was due. The missed ticks are then either skipped or
+ * coalesced, according to the {@link OverrunPolicy}.
+ *
+ * Only the service thread drives the scheduler; statistics can be read by any thread.
+ */
+class TickScheduler {
+
+	private final long periodNanos;
+	private final OverrunPolicy overrunPolicy;
+
+	private long startNanos;
+	// index of the tick currently being computed
+	private long currentTick;
+
+	private volatile long ticks;
+	private volatile long overruns;
+	private volatile long missedTicks;
+	private volatile long lastLatenessNanos;
+	private volatile long maxLatenessNanos;
+
+	TickScheduler(long periodMillis, OverrunPolicy overrunPolicy) {
+		if (periodMillis < 0)
+			throw new IllegalArgumentException("the period can't be negative");
+		this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+		this.overrunPolicy = Objects.requireNonNull(overrunPolicy);
+	}
+
+	/**
+	 * the first tick is due right now
+	 */
+	void start(){
+		this.startNanos = System.nanoTime();
+		this.currentTick = 0;
+		this.ticks = 1;
+	}
+
+	/**
+	 * to be called when the current tick is completed. Waits till the next tick is due
+	 * @return	the number of periods passed since the previous tick: 1 if on schedule, more if ticks were
+	 * 			skipped or coalesced. The emulated time should move forward accordingly
+	 * @throws InterruptedException
+	 */
+	int awaitNextTick() throws InterruptedException {
+		long now = System.nanoTime();
+		long nextTick = this.currentTick + 1;
+
+		if (this.periodNanos > 0 && now > this.dueTime(nextTick)) {
+			// overrun: one or more ticks were due in the meantime
+			this.overruns++;
+			long lastDueTick = (now - this.startNanos) / this.periodNanos;
+			long missed = lastDueTick - this.currentTick;
+			switch (this.overrunPolicy) {
+				case SKIP:
+					this.missedTicks += missed;
+					nextTick = lastDueTick + 1;
+					break;
+				case COALESCE:
+					// the last due tick runs straight away, the ones before are merged into it
+					this.missedTicks += missed - 1;
+					nextTick = lastDueTick;
+					break;
+				default: throw new Error("not implemented");
+			}
+		}
+
+		// sleep has millisecond granularity and may wake up a little early
+		long remaining;
+		while ((remaining = this.dueTime(nextTick) - System.nanoTime()) > 0)
+			TimeUnit.NANOSECONDS.sleep(remaining);
+
+		long lateness = Math.max(0, System.nanoTime() - this.dueTime(nextTick));
+		this.lastLatenessNanos = lateness;
+		if (lateness > this.maxLatenessNanos)
+			this.maxLatenessNanos = lateness;
+
+		int periods = (int) (nextTick - this.currentTick);
+		this.currentTick = nextTick;
+		this.ticks++;
+		return periods;
+	}
+
+	TickStatistics statistics(){
+		return new TickStatistics(this.ticks, this.overruns, this.missedTicks,
+				this.lastLatenessNanos, this.maxLatenessNanos);
+	}
+
+	private long dueTime(long tick){
+		return this.startNanos + tick * this.periodNanos;
+	}
+
+}
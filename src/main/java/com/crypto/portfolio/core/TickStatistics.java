@@ -0,0 +1,73 @@
+package com.crypto.portfolio.core;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * snapshot of how well the service is keeping up with its update interval.
+ * A growing number of overruns means the portfolio has outgrown the interval.
+ * @see PortfolioService#getTickStatistics()
+ */
+@Immutable
+public final class TickStatistics {
+
+	private final long ticks;
+	private final long overruns;
+	private final long missedTicks;
+	private final long lastLatenessNanos;
+	private final long maxLatenessNanos;
+
+	TickStatistics(long ticks, long overruns, long missedTicks, long lastLatenessNanos, long maxLatenessNanos) {
+		this.ticks = ticks;
+		this.overruns = overruns;
+		this.missedTicks = missedTicks;
+		this.lastLatenessNanos = lastLatenessNanos;
+		this.maxLatenessNanos = maxLatenessNanos;
+	}
+
+	/**
+	 * @return	number of ticks started so far
+	 */
+	public long getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * @return	number of ticks which completed after the following one was due
+	 */
+	public long getOverruns() {
+		return overruns;
+	}
+
+	/**
+	 * @return	number of ticks which were due but never ran on their own, because skipped or coalesced
+	 */
+	public long getMissedTicks() {
+		return missedTicks;
+	}
+
+	/**
+	 * @return	how late the last tick started, compared to when it was due
+	 */
+	public long getLastLatenessMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(lastLatenessNanos);
+	}
+
+	/**
+	 * @return	the worst lateness seen so far
+	 */
+	public long getMaxLatenessMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(maxLatenessNanos);
+	}
+
+	@Override
+	public String toString() {
+		return "TickStatistics{" +
+				"ticks=" + ticks +
+				", overruns=" + overruns +
+				", missedTicks=" + missedTicks +
+				", lastLatenessMicros=" + getLastLatenessMicros() +
+				", maxLatenessMicros=" + getMaxLatenessMicros() +
+				'}';
+	}
+}
@@ -0,0 +1,119 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.Equity;
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.api.Instrument;
+import com.crypto.portfolio.api.subscriber.EquityPriceUpdate;
+import com.crypto.portfolio.api.subscriber.PortfolioEntry;
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+import com.crypto.portfolio.api.subscriber.SubscriptionSpec;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * builds, for one portfolio update, the projections requested by the subscribers.
+ * Each distinct {@link SubscriptionSpec} is projected once, then shared by all subscribers with that spec.
+ * Specs asking for deltas are first projected as snapshots, then encoded by their {@link DeltaEncoder}.
+ *
+ * A new instance is used for each update, by the service thread only.
+ */
+@NotThreadSafe
+class UpdateProjector {
+
+	private final PortfolioUpdate fullUpdate;
+	private final Function<String, Instrument> referenceData;
+	private final Map<SubscriptionSpec, DeltaEncoder> deltaEncoders;
+	private final Map<SubscriptionSpec, PortfolioUpdate> projections = new HashMap<>();
+
+	/**
+	 * @param fullUpdate		the whole portfolio update
+	 * @param referenceData		ticker -> instrument, used to find the underlying of the positions
+	 * @param deltaEncoders		the encoder of each spec asking for deltas, as of the start of the update: not changed
+	 *                          while projecting
+	 */
+	UpdateProjector(
+			PortfolioUpdate fullUpdate,
+			Function<String, Instrument> referenceData,
+			Map<SubscriptionSpec, DeltaEncoder> deltaEncoders
+	) {
+		this.fullUpdate = fullUpdate;
+		this.referenceData = referenceData;
+		this.deltaEncoders = deltaEncoders;
+	}
+
+	/**
+	 * @param spec
+	 * @return	the update as requested by the spec. The full update itself if the spec doesn't restrict it.
+	 * 			Null for a delta spec without encoder, i.e. whose subscribers came or left while publishing: the ones
+	 * 			which came get a snapshot with the next update
+	 */
+	PortfolioUpdate project(SubscriptionSpec spec){
+		if (spec.isAll())
+			return this.fullUpdate;
+		PortfolioUpdate projection = this.projections.get(spec);
+		if (projection == null) {
+			if (!spec.isDelta())
+				projection = this.buildProjection(spec);
+			else {
+				DeltaEncoder deltaEncoder = this.deltaEncoders.get(spec);
+				if (deltaEncoder == null)
+					return null;
+				// not computeIfAbsent: projecting a delta spec projects its snapshot spec too
+				projection = deltaEncoder.encode(this.project(spec.withSnapshotsOnly()));
+			}
+			this.projections.put(spec, projection);
+		}
+		return projection;
+	}
+
+	private PortfolioUpdate buildProjection(SubscriptionSpec spec){
+		if (!spec.isFiltered() && spec.getContent() == SubscriptionSpec.Content.NAV_ONLY)
+			return new PortfolioUpdate(this.fullUpdate.getTimestamp(), Collections.emptyList(),
+					Collections.emptyList(), this.fullUpdate.getTotalValue(), this.fullUpdate.getSequence(), true);
+
+		List<PortfolioEntry> entries = new ArrayList<>();
+		Set<String> underlyings = new HashSet<>();
+		BigDecimal nav = BigDecimal.ZERO;
+		for (PortfolioEntry entry : this.fullUpdate.getEntries()) {
+			String ticker = entry.getPosition().getTicker();
+			String underlying = this.underlyingOf(ticker);
+			if (spec.includes(ticker, underlying)) {
+				entries.add(entry);
+				underlyings.add(underlying);
+				nav = nav.add(entry.getValue());
+			}
+		}
+		if (!spec.isFiltered())
+			nav = this.fullUpdate.getTotalValue();
+
+		List<EquityPriceUpdate> equityPriceUpdates = new ArrayList<>();
+		if (spec.getContent() == SubscriptionSpec.Content.FULL) {
+			for (EquityPriceUpdate equityPriceUpdate : this.fullUpdate.getEquityPriceUpdates())
+				if (!spec.isFiltered() || underlyings.contains(equityPriceUpdate.getEquityTicker()))
+					equityPriceUpdates.add(equityPriceUpdate);
+		}
+
+		return new PortfolioUpdate(
+				this.fullUpdate.getTimestamp(),
+				spec.getContent() == SubscriptionSpec.Content.NAV_ONLY ? Collections.emptyList() : entries,
+				equityPriceUpdates,
+				nav,
+				this.fullUpdate.getSequence(),
+				true
+		);
+	}
+
+	private String underlyingOf(String ticker){
+		Instrument instrument = this.referenceData.apply(ticker);
+		if (instrument instanceof Equity)
+			return ticker;
+		else if (instrument instanceof EuOption)
+			return ((EuOption) instrument).getUnderlying().getTicker();
+		else
+			throw new Error("derivative not expected");
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.crypto.portfolio.app;
+
+import com.crypto.portfolio.app.database.ConnectionPool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static com.crypto.portfolio.app.database.H2Constants.connectionSupplier;
+
+/**
+ * a connection is lent to one borrower at a time, and the room freed by a broken one is used by the waiting borrowers
+ */
+public class ConnectionPoolTest {
+
+	private static final String URL = "jdbc:h2:mem:poolTest;DB_CLOSE_DELAY=-1";
+
+	@Test
+	public void closingTwiceReturnsOnce() {
+		try (ConnectionPool pool = new ConnectionPool(connectionSupplier(URL), 2, 1000)) {
+			ConnectionPool.PooledConnection connection = pool.borrow();
+			connection.close();
+			connection.close();
+
+			ConnectionPool.PooledConnection first = pool.borrow();
+			ConnectionPool.PooledConnection second = pool.borrow();
+			Assertions.assertSame(connection, first);
+			Assertions.assertNotSame(first, second);
+			first.close();
+			second.close();
+		}
+	}
+
+	@Test
+	public void waitersOpenInPlaceOfABrokenConnection() throws InterruptedException {
+		try (ConnectionPool pool = new ConnectionPool(connectionSupplier(URL), 1, 5000)) {
+			ConnectionPool.PooledConnection broken = pool.borrow();
+			Thread breaker = new Thread(() -> {
+				try {
+					Thread.sleep(100);
+					broken.connection().close();
+				} catch (InterruptedException | SQLException e) {
+					throw new IllegalStateException(e);
+				}
+				broken.close();
+			});
+			breaker.start();
+
+			// waits for the only connection, which is discarded rather than given back
+			long start = System.currentTimeMillis();
+			try (ConnectionPool.PooledConnection connection = pool.borrow()) {
+				Assertions.assertNotSame(broken, connection);
+				Assertions.assertFalse(connection.connection().isClosed());
+			} catch (SQLException e) {
+				throw new IllegalStateException(e);
+			}
+			Assertions.assertTrue(System.currentTimeMillis() - start < 2000);
+			breaker.join();
+		}
+	}
+
+}
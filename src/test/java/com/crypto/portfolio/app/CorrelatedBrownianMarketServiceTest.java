@@ -0,0 +1,143 @@
+package com.crypto.portfolio.app;
+
+import com.crypto.portfolio.api.Equity;
+import com.crypto.portfolio.app.implementations.CorrelatedBrownianMarketService;
+import com.crypto.portfolio.app.utils.BrownianUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the simulated returns must be correlated as configured, both when moving live and when reading a pre-generated path
+ */
+public class CorrelatedBrownianMarketServiceTest {
+
+	private static final LocalDateTime BEGIN_TS = LocalDateTime.of(2022,1,1,0,0);
+	private static final Equity APPLE = new Equity("AAPL", 0.4, 0.5);
+	private static final Equity TESLA = new Equity("TSLA", 0.2, 0.5);
+	private static final List<Equity> EQUITIES = Arrays.asList(APPLE, TESLA);
+	private static final long HOUR_MILLIS = 3600 * 1000;
+
+	@Test
+	public void choleskyFactor(){
+		double[][] correlations = {
+				{1, 0.5, 0.2},
+				{0.5, 1, -0.3},
+				{0.2, -0.3, 1}
+		};
+		double[] lower = BrownianUtils.cholesky(correlations);
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++) {
+				double product = 0;
+				for (int k = 0; k < 3; k++)
+					product += lower[i * 3 + k] * lower[j * 3 + k];
+				Assertions.assertEquals(correlations[i][j], product, 1e-12);
+			}
+
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> BrownianUtils.cholesky(new double[][]{{1, 0.5}, {0.4, 1}}));
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> BrownianUtils.cholesky(new double[][]{{1, 1}, {1, 1}}));
+	}
+
+	@Test
+	public void pregeneratedPathIsCorrelated(){
+		CorrelatedBrownianMarketService marketService = newMarketService(0.8);
+		int steps = 20000;
+		marketService.pregeneratePath(HOUR_MILLIS, steps);
+		Assertions.assertEquals(0.8, sampleCorrelation(marketService, steps), 0.05);
+	}
+
+	@Test
+	public void livePricesAreCorrelated(){
+		CorrelatedBrownianMarketService marketService = newMarketService(-0.5);
+		Assertions.assertEquals(-0.5, sampleCorrelation(marketService, 5000), 0.05);
+	}
+
+	/**
+	 * over one unit of time, the log return averages mu - sigma^2 / 2, so that the price itself grows at mu
+	 */
+	@Test
+	public void driftMatchesTheExpectedReturn(){
+		final long UNIT_MILLIS = 12L * 7 * 24 * HOUR_MILLIS;
+		int samples = 20000;
+		double sum = 0;
+		for (int i = 0; i < samples; i++) {
+			CorrelatedBrownianMarketService marketService = newMarketService(0);
+			double price = marketService.getPrice(APPLE.getTicker(), BEGIN_TS.plus(UNIT_MILLIS, ChronoUnit.MILLIS)).doubleValue();
+			sum += Math.log(price / 180);
+		}
+		// the standard error of the mean is 0.5 / sqrt(samples), about 0.0035
+		double sigma = APPLE.getAnnualizedStandardDeviation();
+		Assertions.assertEquals(APPLE.getExpectedReturn() - sigma * sigma / 2, sum / samples, 0.02);
+	}
+
+	@Test
+	public void leavingThePath(){
+		CorrelatedBrownianMarketService marketService = newMarketService(0.3);
+		marketService.pregeneratePath(HOUR_MILLIS, 10);
+
+		// skipping steps of the grid is fine, and the same time gets the same price
+		BigDecimal price = marketService.getPrice(APPLE.getTicker(), BEGIN_TS.plusHours(3));
+		Assertions.assertEquals(price, marketService.getPrice(APPLE.getTicker(), BEGIN_TS.plusHours(3)));
+		marketService.getPrice(APPLE.getTicker(), BEGIN_TS.plusHours(5));
+
+		// off the grid, and beyond the path
+		Assertions.assertTrue(marketService.getPrice(TESLA.getTicker(), BEGIN_TS.plusHours(5).plusMinutes(1)).signum() > 0);
+		Assertions.assertTrue(marketService.getPrice(TESLA.getTicker(), BEGIN_TS.plusHours(6)).signum() > 0);
+		Assertions.assertTrue(marketService.getPrice(TESLA.getTicker(), BEGIN_TS.plusHours(20)).signum() > 0);
+
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> marketService.getPrice(APPLE.getTicker(), BEGIN_TS.plusHours(19)));
+		Assertions.assertThrows(IllegalStateException.class,
+				() -> marketService.getPrice("AMZN", BEGIN_TS.plusHours(20)));
+	}
+
+	private static CorrelatedBrownianMarketService newMarketService(double correlation){
+		return new CorrelatedBrownianMarketService(
+				EQUITIES,
+				new double[]{180, 900},
+				new double[][]{{1, correlation}, {correlation, 1}},
+				BEGIN_TS
+		);
+	}
+
+	/**
+	 * @return	the correlation of the hourly log returns of the two equities
+	 */
+	private static double sampleCorrelation(CorrelatedBrownianMarketService marketService, int steps){
+		double[] appleReturns = new double[steps];
+		double[] teslaReturns = new double[steps];
+		double previousApple = 180, previousTesla = 900;
+		for (int step = 0; step < steps; step++) {
+			Map<String, BigDecimal> prices = marketService.getPrices(
+					Arrays.asList(APPLE.getTicker(), TESLA.getTicker()), BEGIN_TS.plusHours(step + 1)
+			);
+			double apple = prices.get(APPLE.getTicker()).doubleValue();
+			double tesla = prices.get(TESLA.getTicker()).doubleValue();
+			appleReturns[step] = Math.log(apple / previousApple);
+			teslaReturns[step] = Math.log(tesla / previousTesla);
+			previousApple = apple;
+			previousTesla = tesla;
+		}
+
+		double appleMean = Arrays.stream(appleReturns).average().getAsDouble();
+		double teslaMean = Arrays.stream(teslaReturns).average().getAsDouble();
+		double covariance = 0, appleVariance = 0, teslaVariance = 0;
+		for (int step = 0; step < steps; step++) {
+			double a = appleReturns[step] - appleMean;
+			double t = teslaReturns[step] - teslaMean;
+			covariance += a * t;
+			appleVariance += a * a;
+			teslaVariance += t * t;
+		}
+		return covariance / Math.sqrt(appleVariance * teslaVariance);
+	}
+
+}
@@ -3,17 +3,25 @@ package com.crypto.portfolio.app;
 import com.crypto.portfolio.api.Equity;
 import com.crypto.portfolio.api.EuOption;
 import com.crypto.portfolio.api.Instrument;
+import com.crypto.portfolio.api.interfaces.ReferenceDataService;
 import com.crypto.portfolio.app.database.DbDataPreparer;
 import com.crypto.portfolio.app.database.DbSchemaBuilder;
+import com.crypto.portfolio.app.database.H2Constants;
 import com.crypto.portfolio.app.database.ReferenceDataInDbService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.*;
 import java.util.function.Supplier;
 
 import static com.crypto.portfolio.app.database.H2Constants.connectionSupplier;
@@ -48,6 +56,160 @@ public class DatabaseTest {
 		assertOptionsAreSame(TESLA_P, (EuOption) dbService.findInstrument(TESLA_P.getTicker()));
 	}
 
+	@Test
+	public void testBatchLookup() throws SQLException {
+		Supplier<Connection> connector = connectionSupplier("jdbc:h2:mem:refDataBatchTest;DB_CLOSE_DELAY=-1");
+		new DbSchemaBuilder(connector).createSchema();
+
+		Equity APPLE = new Equity("APPLE", 0, 1);
+		EuOption APPLE_C = new EuOption("APPLE-MAR-2022-100-C", APPLE, new BigDecimal("100"), LocalDate.of(2022,1,1), EuOption.OptionType.CALL);
+		Equity TESLA = new Equity("TESLA", 0, 1);
+		EuOption TESLA_P = new EuOption("TESLA-MAR-2022-100-P", TESLA, new BigDecimal("100"), LocalDate.of(2022,1,1), EuOption.OptionType.PUT);
+		new DbDataPreparer(connector).insertInstruments(APPLE_C, APPLE, TESLA_P);
+
+		ReferenceDataInDbService dbService = new ReferenceDataInDbService(connector);
+
+		Map<String, Instrument> instruments = dbService.findInstruments(Arrays.asList(
+				APPLE.getTicker(), APPLE_C.getTicker(), TESLA_P.getTicker()
+		));
+		Assertions.assertEquals(3, instruments.size());
+		Assertions.assertEquals(APPLE, instruments.get(APPLE.getTicker()));
+		assertOptionsAreSame(APPLE_C, (EuOption) instruments.get(APPLE_C.getTicker()));
+		assertOptionsAreSame(TESLA_P, (EuOption) instruments.get(TESLA_P.getTicker()));
+
+		Assertions.assertTrue(dbService.findInstruments(Collections.emptyList()).isEmpty());
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> dbService.findInstruments(Arrays.asList(APPLE.getTicker(), "MISSING")));
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> dbService.findInstruments(Arrays.asList(TESLA_P.getTicker(), "MISSING-MAR-2022-100-P")));
+
+		Map<String, Instrument> all = dbService.findAllInstruments();
+		Assertions.assertEquals(4, all.size());
+		Assertions.assertEquals(TESLA, all.get(TESLA.getTicker()));
+		assertOptionsAreSame(APPLE_C, (EuOption) all.get(APPLE_C.getTicker()));
+		assertOptionsAreSame(TESLA_P, (EuOption) all.get(TESLA_P.getTicker()));
+	}
+
+	@Test
+	public void testCsvBulkLoad() throws SQLException, IOException {
+		Supplier<Connection> connector = connectionSupplier("jdbc:h2:mem:refDataBulkTest;DB_CLOSE_DELAY=-1");
+		new DbSchemaBuilder(connector).createSchema();
+
+		StringBuilder equities = new StringBuilder("ticker,expectedReturn,standardDeviation\n");
+		StringBuilder options = new StringBuilder("ticker,equityTicker,strike,maturity,type\n");
+		int optionsPerEquity = 1000;
+		for (char letter = 'A'; letter < 'A' + 20; letter++) {
+			String equity = "EQ" + letter;
+			equities.append(equity).append(",0.1,0.3\n");
+			for (int strike = 1; strike <= optionsPerEquity; strike++)
+				options.append(equity).append("-MAR-2023-").append(strike).append(strike % 2 == 0 ? "-C" : "-P")
+						.append(',').append(equity).append(',').append(strike)
+						.append(",2023-03-01,").append(strike % 2 == 0 ? 'C' : 'P').append('\n');
+		}
+
+		List<Integer> batchSizes = new ArrayList<>();
+		DbDataPreparer preparer = new DbDataPreparer(connector, 5000, new DbDataPreparer.BatchListener() {
+			@Override
+			public void batchStored(String table, int batch, int batchRows, int totalRows, long batchNanos) {
+				batchSizes.add(batchRows);
+			}
+
+			@Override
+			public void loadCompleted(String table, int batches, int totalRows, long loadNanos) {
+				DbDataPreparer.BatchListener.LOG_TOTALS.loadCompleted(table, batches, totalRows, loadNanos);
+			}
+		});
+		Assertions.assertEquals(20, preparer.importEquitiesFromCsv(new StringReader(equities.toString())));
+		Assertions.assertEquals(20 * optionsPerEquity, preparer.importOptionsFromCsv(new StringReader(options.toString())));
+		Assertions.assertEquals(Arrays.asList(20, 5000, 5000, 5000, 5000), batchSizes);
+
+		try (ReferenceDataInDbService dbService = new ReferenceDataInDbService(connector)) {
+			Assertions.assertEquals(20 + 20 * optionsPerEquity, dbService.findAllInstruments().size());
+			EuOption option = (EuOption) dbService.findInstrument("EQC-MAR-2023-7-P");
+			Assertions.assertEquals("EQC", option.getUnderlying().getTicker());
+			Assertions.assertEquals(LocalDate.of(2023,3,1), option.getMaturity());
+			Assertions.assertEquals(EuOption.OptionType.PUT, option.getOptionType());
+
+			// an unknown underlying in the last batch: nothing of the file is stored
+			String failing = "ticker,equityTicker,strike,maturity,type\n" +
+					"EQA-JUN-2023-1-C,EQA,1,2023-06-01,C\n" +
+					"MISSING-JUN-2023-1-C,MISSING,1,2023-06-01,C\n";
+			Assertions.assertThrows(SQLException.class,
+					() -> new DbDataPreparer(connector, 1, DbDataPreparer.BatchListener.LOG_TOTALS)
+							.importOptionsFromCsv(new StringReader(failing)));
+			Assertions.assertEquals(20 + 20 * optionsPerEquity, dbService.findAllInstruments().size());
+		}
+	}
+
+	@Test
+	public void testFileDatabaseAndOptionSlices(@TempDir Path directory) throws SQLException {
+		Supplier<Connection> connector = connectionSupplier(H2Constants.fileUrl(directory.resolve("refData")));
+		Assertions.assertTrue(new DbSchemaBuilder(connector).createSchema());
+
+		Equity APPLE = new Equity("APPLE", 0, 1);
+		Equity TESLA = new Equity("TESLA", 0, 1);
+		EuOption APPLE_MAR = new EuOption("APPLE-MAR-2022-100-C", APPLE, new BigDecimal("100"), LocalDate.of(2022,3,1), EuOption.OptionType.CALL);
+		EuOption APPLE_JUN = new EuOption("APPLE-JUN-2022-100-P", APPLE, new BigDecimal("100"), LocalDate.of(2022,6,1), EuOption.OptionType.PUT);
+		EuOption APPLE_SEP = new EuOption("APPLE-SEP-2022-120-C", APPLE, new BigDecimal("120"), LocalDate.of(2022,9,1), EuOption.OptionType.CALL);
+		EuOption TESLA_JUN = new EuOption("TESLA-JUN-2022-900-C", TESLA, new BigDecimal("900"), LocalDate.of(2022,6,1), EuOption.OptionType.CALL);
+		new DbDataPreparer(connector).insertInstruments(APPLE_SEP, APPLE_MAR, TESLA_JUN, APPLE_JUN);
+
+		// reopened, the schema and the data are still there
+		try (Connection connection = connector.get()) {
+			connection.createStatement().execute("SHUTDOWN");
+		}
+		Assertions.assertFalse(new DbSchemaBuilder(connector).createSchema());
+
+		try (ReferenceDataInDbService dbService = new ReferenceDataInDbService(connector)) {
+			Assertions.assertEquals(Arrays.asList(APPLE_MAR.getTicker(), APPLE_JUN.getTicker(), APPLE_SEP.getTicker()),
+					tickersOf(dbService.findOptionsOnUnderlying(APPLE.getTicker())));
+			Assertions.assertEquals(Arrays.asList(APPLE_JUN.getTicker(), APPLE_SEP.getTicker()),
+					tickersOf(dbService.findOptionsOnUnderlying(APPLE.getTicker(), LocalDate.of(2022,6,1), LocalDate.of(2022,12,31))));
+			Assertions.assertEquals(Arrays.asList(APPLE_JUN.getTicker(), TESLA_JUN.getTicker()),
+					tickersOf(dbService.findOptionsMaturingBetween(LocalDate.of(2022,4,1), LocalDate.of(2022,6,1))));
+			Assertions.assertTrue(dbService.findOptionsOnUnderlying("AMAZON").isEmpty());
+			assertOptionsAreSame(TESLA_JUN, dbService.findOptionsOnUnderlying(TESLA.getTicker()).get(0));
+
+			// the default implementation, scanning everything, gives the same slices
+			ReferenceDataService scanningAll = new ReferenceDataService() {
+				@Override
+				public Instrument findInstrument(String ticker) {
+					return dbService.findInstrument(ticker);
+				}
+
+				@Override
+				public Map<String, Instrument> findAllInstruments() {
+					return dbService.findAllInstruments();
+				}
+			};
+			Assertions.assertEquals(tickersOf(dbService.findOptionsMaturingBetween(LocalDate.of(2022,1,1), LocalDate.of(2022,6,1))),
+					tickersOf(scanningAll.findOptionsMaturingBetween(LocalDate.of(2022,1,1), LocalDate.of(2022,6,1))));
+			Assertions.assertEquals(tickersOf(dbService.findOptionsOnUnderlying(APPLE.getTicker(), LocalDate.of(2022,6,1), LocalDate.of(2022,12,31))),
+					tickersOf(scanningAll.findOptionsOnUnderlying(APPLE.getTicker(), LocalDate.of(2022,6,1), LocalDate.of(2022,12,31))));
+		}
+
+		// and the slices are read through the indexes
+		try (Connection connection = connector.get();
+			 ResultSet plan = connection.createStatement().executeQuery(
+					 "explain select * from Option o where o.equityTicker = 'APPLE' and o.maturity between '2022-01-01' and '2022-06-01'")) {
+			Assertions.assertTrue(plan.next());
+			Assertions.assertTrue(plan.getString(1).contains("OPTION_UNDERLYING_MATURITY"), plan.getString(1));
+		}
+		try (Connection connection = connector.get();
+			 ResultSet plan = connection.createStatement().executeQuery(
+					 "explain select * from Option o where o.maturity between '2022-01-01' and '2022-06-01'")) {
+			Assertions.assertTrue(plan.next());
+			Assertions.assertTrue(plan.getString(1).contains("OPTION_MATURITY"), plan.getString(1));
+		}
+	}
+
+	private static List<String> tickersOf(List<EuOption> options){
+		List<String> tickers = new ArrayList<>();
+		for (EuOption option : options)
+			tickers.add(option.getTicker());
+		return tickers;
+	}
+
 	private static void assertOptionsAreSame(EuOption expected, EuOption actual){
 		Assertions.assertEquals(expected.getUnderlying(), actual.getUnderlying());
 		Assertions.assertEquals(expected.getTicker(), actual.getTicker());
@@ -0,0 +1,102 @@
+package com.crypto.portfolio.app;
+
+import com.crypto.portfolio.api.interfaces.Position;
+import com.crypto.portfolio.app.utils.CsvReader;
+import com.crypto.portfolio.app.utils.PositionCsvParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the streaming and the chunked parsers must read the same positions as the general csv reader
+ */
+public class PositionCsvParserTest {
+
+	@Test
+	public void parsesLikeTheCsvReader() throws IOException {
+		String csv = "account,positionSize,symbol\r\n" +
+				"A,100,AAPL\r\n" +
+				"B,-50,AMZN-MAR-2022-3000-C\r\n" +
+				"\r\n" +
+				"C,123456789012345678901234567890,TSLA\r\n" +
+				"D,-9223372036854775808,RKLB";
+
+		List<Position> positions = PositionCsvParser.parse(new StringReader(csv));
+		Assertions.assertEquals(4, positions.size());
+		Assertions.assertEquals("AAPL", positions.get(0).getTicker());
+		Assertions.assertEquals(BigInteger.valueOf(-50), positions.get(1).getPositionSize());
+		Assertions.assertEquals(new BigInteger("123456789012345678901234567890"), positions.get(2).getPositionSize());
+		Assertions.assertEquals(BigInteger.valueOf(Long.MIN_VALUE), positions.get(3).getPositionSize());
+
+		Assertions.assertThrows(IOException.class,
+				() -> PositionCsvParser.parse(new StringReader("symbol,size\nAAPL,1")));
+		Assertions.assertThrows(IOException.class,
+				() -> PositionCsvParser.parse(new StringReader("symbol,positionSize\nAAPL,1,2")));
+		Assertions.assertThrows(IOException.class,
+				() -> PositionCsvParser.parse(new StringReader("symbol,positionSize\nAAPL,1e3")));
+		Assertions.assertThrows(IOException.class, () -> PositionCsvParser.parse(new StringReader("")));
+	}
+
+	/**
+	 * a few MB: mapped, the file is split in several chunks
+	 */
+	@Test
+	public void largeBook(@TempDir Path directory) throws IOException {
+		String csv = largeCsv(100_000);
+		Path file = Files.write(directory.resolve("positions.csv"), csv.getBytes(StandardCharsets.UTF_8));
+
+		List<Position> expected = new ArrayList<>();
+		try (CsvReader csvReader = new CsvReader(new StringReader(csv))) {
+			for (Map<String, String> row : csvReader)
+				expected.add(new Position(new BigInteger(row.get("positionSize")), row.get("symbol")));
+		}
+
+		assertSamePositions(expected, PositionCsvParser.parse(new StringReader(csv)));
+		assertSamePositions(expected, PositionCsvParser.parse(file, 4));
+		assertSamePositions(expected, PositionCsvParser.parse(file, 1));
+	}
+
+	/**
+	 * @return	a position file with the given number of option positions
+	 */
+	public static String largeCsv(int rows){
+		StringBuilder csv = new StringBuilder("symbol,positionSize\n");
+		for (int i = 0; i < rows; i++)
+			csv.append("EQ").append((char) ('A' + i % 26)).append("-MAR-2023-").append(i).append("-C,")
+					.append(i % 3 == 0 ? -i : i).append('\n');
+		return csv.toString();
+	}
+
+	@Test
+	public void chunkBoundaries(@TempDir Path directory) throws IOException {
+		// 1MB chunks: a line of about 10 bytes crosses each boundary, or starts right on it
+		for (int padding = 0; padding < 12; padding++) {
+			StringBuilder csv = new StringBuilder("symbol,positionSize\n");
+			for (int i = 0; i < padding; i++)
+				csv.append('\n');
+			int rows = 500_000;
+			for (int i = 0; i < rows; i++)
+				csv.append("AB,").append(i % 100_000).append('\n');
+			Path file = Files.write(directory.resolve("positions" + padding + ".csv"), csv.toString().getBytes(StandardCharsets.UTF_8));
+			assertSamePositions(PositionCsvParser.parse(new StringReader(csv.toString())), PositionCsvParser.parse(file, 3));
+		}
+	}
+
+	private static void assertSamePositions(List<Position> expected, List<Position> actual){
+		Assertions.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assertions.assertEquals(expected.get(i).getTicker(), actual.get(i).getTicker());
+			Assertions.assertEquals(expected.get(i).getPositionSize(), actual.get(i).getPositionSize());
+		}
+	}
+
+}
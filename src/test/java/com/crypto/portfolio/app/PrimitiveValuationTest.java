@@ -0,0 +1,142 @@
+package com.crypto.portfolio.app;
+
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.app.utils.BrownianUtils;
+import com.crypto.portfolio.app.utils.OptionCalcUtils;
+import com.crypto.portfolio.app.utils.StandardisedDistributionSampler;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+/**
+ * the calculations moved from BigDecimal to doubles. Here we verify that the results are the same as the original
+ * BigDecimal formulas (copied below) within the precision we return to users, i.e. 10 significant digits.
+ * The batch pricing must give exactly the same results as the single one
+ */
+public class PrimitiveValuationTest {
+
+	private static final MathContext INTERNAL_PRICE_CONTEXT = new MathContext(13, RoundingMode.HALF_UP);
+	private static final MathContext EXTERNAL_PRICE_CONTEXT = new MathContext(10, RoundingMode.HALF_UP);
+
+	private static final double IR = 0.02;
+	private static final StandardisedDistributionSampler SAMPLER = StandardisedDistributionSampler.closedForm();
+
+	private final Random random = new Random(42);
+
+	@Test
+	public void brownianMotionMatches(){
+		for (int i = 0; i < 10000; i++) {
+			BigDecimal previousPrice = new BigDecimal(1 + random.nextDouble() * 5000, INTERNAL_PRICE_CONTEXT);
+			double multiplier = BrownianUtils.deltaMultiplier(
+					random.nextInt(100000), random.nextDouble(), random.nextDouble(), random.nextGaussian()
+			);
+			if (multiplier < -1)
+				continue;
+
+			BigDecimal expected = previousPrice
+					.multiply(new BigDecimal(multiplier, INTERNAL_PRICE_CONTEXT))
+					.add(previousPrice, INTERNAL_PRICE_CONTEXT);
+			double actual = previousPrice.doubleValue() + previousPrice.doubleValue() * multiplier;
+
+			Assertions.assertEquals(expected.doubleValue(), actual, externalUlp(expected));
+		}
+	}
+
+	@Test
+	public void optionPriceMatches(){
+		for (int i = 0; i < 10000; i++) {
+			BigDecimal stockPrice = new BigDecimal(1 + random.nextDouble() * 5000, INTERNAL_PRICE_CONTEXT);
+			BigDecimal strikePrice = new BigDecimal(stockPrice.doubleValue() * (0.5 + random.nextDouble()), INTERNAL_PRICE_CONTEXT);
+			double deviation = 0.05 + random.nextDouble() * 0.9;
+			double years = 0.01 + random.nextDouble() * 2;
+			EuOption.OptionType type = random.nextBoolean() ? EuOption.OptionType.CALL : EuOption.OptionType.PUT;
+
+			BigDecimal expected = bigDecimalPrice(stockPrice, strikePrice, deviation, years, type);
+			double actual = OptionCalcUtils.priceOption(
+					SAMPLER, stockPrice.doubleValue(), strikePrice.doubleValue(), deviation, years, type
+			);
+
+			// the original formula rounds the strike term to 10 digits, so that's the precision we can expect
+			// from the difference of the two terms
+			Assertions.assertEquals(expected.doubleValue(), actual, externalUlp(strikePrice.max(stockPrice)));
+		}
+	}
+
+	@Test
+	public void batchPricingMatches(){
+		int size = 10000;
+		double[] stockPrices = new double[size];
+		double[] strikePrices = new double[size];
+		double[] deviations = new double[size];
+		double[] years = new double[size];
+		boolean[] calls = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			stockPrices[i] = 1 + random.nextDouble() * 5000;
+			strikePrices[i] = stockPrices[i] * (0.5 + random.nextDouble());
+			deviations[i] = 0.05 + random.nextDouble() * 0.9;
+			years[i] = 0.01 + random.nextDouble() * 2;
+			calls[i] = random.nextBoolean();
+		}
+
+		// in two chunks, as if priced by two threads
+		double[] prices = new double[size];
+		OptionCalcUtils.priceOptions(SAMPLER, stockPrices, strikePrices, deviations, years, calls, prices, 0, size / 3);
+		OptionCalcUtils.priceOptions(SAMPLER, stockPrices, strikePrices, deviations, years, calls, prices, size / 3, size);
+
+		for (int i = 0; i < size; i++) {
+			double expected = OptionCalcUtils.priceOption(SAMPLER, stockPrices[i], strikePrices[i], deviations[i], years[i],
+					calls[i] ? EuOption.OptionType.CALL : EuOption.OptionType.PUT);
+			Assertions.assertEquals(expected, prices[i], 0);
+		}
+
+		years[size - 1] = 0;
+		Assertions.assertThrows(IllegalArgumentException.class, () -> OptionCalcUtils.priceOptions(
+				SAMPLER, stockPrices, strikePrices, deviations, years, calls, prices, 0, size));
+	}
+
+	/**
+	 * the option pricing as it was implemented with BigDecimal
+	 */
+	private static BigDecimal bigDecimalPrice(
+			BigDecimal stockPrice,
+			BigDecimal strikePrice,
+			double annualizedStandardDeviation,
+			double yearsToMaturity,
+			EuOption.OptionType optionType
+	){
+		double d1 = (
+				Math.log(stockPrice.doubleValue()/strikePrice.doubleValue()) +
+				( IR + annualizedStandardDeviation * annualizedStandardDeviation / 2 ) * yearsToMaturity
+		) /
+		( annualizedStandardDeviation * Math.sqrt(yearsToMaturity) );
+		double d2 = d1 - annualizedStandardDeviation * Math.sqrt(yearsToMaturity);
+
+		switch (optionType){
+			case CALL:
+				return stockPrice.multiply( asBD(SAMPLER.oddsLessThan( d1 )), INTERNAL_PRICE_CONTEXT)
+						.add(strikePrice.negate().multiply( asBD(
+								Math.pow(Math.E, - IR * yearsToMaturity) * SAMPLER.oddsLessThan(d2)
+						), EXTERNAL_PRICE_CONTEXT));
+			case PUT:
+				return strikePrice.multiply(asBD(Math.pow(Math.E, - IR * yearsToMaturity) * SAMPLER.oddsLessThan (-d2)), INTERNAL_PRICE_CONTEXT)
+						.add(stockPrice.negate().multiply(asBD(SAMPLER.oddsLessThan(-d1)), EXTERNAL_PRICE_CONTEXT));
+			default: throw new Error("not implemented");
+		}
+	}
+
+	/**
+	 * @return	the value of a unit in the last digit, once the number is rounded with EXTERNAL_PRICE_CONTEXT
+	 */
+	private static double externalUlp(BigDecimal number){
+		return number.round(EXTERNAL_PRICE_CONTEXT).ulp().doubleValue();
+	}
+
+	private static BigDecimal asBD(double d){
+		return new BigDecimal(d, INTERNAL_PRICE_CONTEXT);
+	}
+
+}
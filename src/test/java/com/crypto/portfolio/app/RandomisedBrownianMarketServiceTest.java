@@ -0,0 +1,115 @@
+package com.crypto.portfolio.app;
+
+import com.crypto.portfolio.api.Equity;
+import com.crypto.portfolio.app.implementations.RandomisedBrownianMarketService;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * many threads share the same simulated market: readers of the same equity at the same timestamp must all see
+ * the same price, and no request must get lost or corrupted
+ */
+public class RandomisedBrownianMarketServiceTest {
+
+	private static final LocalDateTime BEGIN_TS = LocalDateTime.of(2022,1,1,0,0);
+	private static final Equity APPLE = new Equity("AAPL", 0.4, 0.2);
+	private static final Equity TESLA = new Equity("TSLA", 0.2, 0.5);
+
+	private static final int THREADS = 8;
+	private static final int STEPS = 2000;
+
+	@Test
+	public void concurrentReadersSeeTheSamePrices() throws Exception {
+		RandomisedBrownianMarketService marketService = new RandomisedBrownianMarketService(ImmutableMap.of(
+				APPLE, new BigDecimal("180"),
+				TESLA, new BigDecimal("900")
+		), BEGIN_TS);
+
+		// all threads ask for the same timestamps, step by step; the barrier keeps them from going back in time
+		CyclicBarrier barrier = new CyclicBarrier(THREADS);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<BigDecimal[]>> futures = new ArrayList<>();
+			for (int thread = 0; thread < THREADS; thread++) {
+				final String ticker = thread % 2 == 0 ? APPLE.getTicker() : TESLA.getTicker();
+				futures.add(executor.submit(() -> {
+					BigDecimal[] prices = new BigDecimal[STEPS];
+					for (int step = 0; step < STEPS; step++) {
+						barrier.await(10, TimeUnit.SECONDS);
+						prices[step] = marketService.getPrice(ticker, BEGIN_TS.plusSeconds(step + 1));
+					}
+					return prices;
+				}));
+			}
+
+			List<BigDecimal[]> results = new ArrayList<>();
+			for (Future<BigDecimal[]> future : futures)
+				results.add(future.get(60, TimeUnit.SECONDS));
+
+			for (int thread = 2; thread < THREADS; thread++)
+				Assertions.assertArrayEquals(results.get(thread % 2), results.get(thread));
+			// the price did move
+			Assertions.assertNotEquals(results.get(0)[0], results.get(0)[STEPS - 1]);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void concurrentBatchesMoveForward() throws Exception {
+		RandomisedBrownianMarketService marketService = new RandomisedBrownianMarketService(ImmutableMap.of(
+				APPLE, new BigDecimal("180"),
+				TESLA, new BigDecimal("900")
+		), BEGIN_TS);
+
+		// each thread only moves forward, but threads interleave freely: some requests arrive late
+		AtomicLong clock = new AtomicLong();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<int[]>> futures = new ArrayList<>();
+			for (int thread = 0; thread < THREADS; thread++) {
+				futures.add(executor.submit(() -> {
+					int[] outcomes = new int[2];
+					for (int step = 0; step < STEPS; step++) {
+						try {
+							marketService.getPrices(Arrays.asList(APPLE.getTicker(), TESLA.getTicker()),
+									BEGIN_TS.plusSeconds(clock.incrementAndGet()));
+							outcomes[0]++;
+						} catch (IllegalArgumentException e) {
+							// another thread already asked for a later timestamp
+							outcomes[1]++;
+						}
+					}
+					return outcomes;
+				}));
+			}
+
+			int served = 0;
+			for (Future<int[]> future : futures) {
+				int[] outcomes = future.get(60, TimeUnit.SECONDS);
+				Assertions.assertEquals(STEPS, outcomes[0] + outcomes[1]);
+				served += outcomes[0];
+			}
+			Assertions.assertTrue(served > 0);
+
+			// the state is still consistent: prices are positive and later requests are still served
+			LocalDateTime later = BEGIN_TS.plusSeconds(clock.get() + 1);
+			Assertions.assertTrue(marketService.getPrice(APPLE.getTicker(), later).signum() > 0);
+			Assertions.assertEquals(marketService.getPrice(TESLA.getTicker(), later), marketService.getPrice(TESLA.getTicker(), later));
+			Assertions.assertThrows(IllegalArgumentException.class,
+					() -> marketService.getPrice(APPLE.getTicker(), later.minusSeconds(1)));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+package com.crypto.portfolio.app;
+
+import com.crypto.portfolio.api.Equity;
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.api.Instrument;
+import com.crypto.portfolio.api.interfaces.ReferenceDataService;
+import com.crypto.portfolio.app.database.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static com.crypto.portfolio.app.database.H2Constants.connectionSupplier;
+
+/**
+ * the snapshot must give back the same instruments as the database, and never be trusted when damaged
+ */
+public class ReferenceDataSnapshotTest {
+
+	private static final int EQUITIES = 20;
+	private static final int OPTIONS_PER_EQUITY = 1000;
+
+	@Test
+	public void roundTrip(@TempDir Path directory) throws IOException {
+		Equity apple = new Equity("AAPL", 0.4, 0.2);
+		Equity tesla = new Equity("TSLA", 0.2, 0.5);
+		EuOption appleCall = new EuOption("AAPL-MAR-2022-100-C", apple, new BigDecimal("100.5000"), LocalDate.of(2022,3,1), EuOption.OptionType.CALL);
+		EuOption teslaPut = new EuOption("TSLA-JUN-2022-900-P", tesla, new BigDecimal("900"), LocalDate.of(2022,6,1), EuOption.OptionType.PUT);
+
+		// tesla only comes as an underlying
+		Path file = directory.resolve("instruments.snapshot");
+		ReferenceDataSnapshot.write(file, 3, Arrays.asList(appleCall, apple, teslaPut));
+		Map<String, Instrument> instruments = ReferenceDataSnapshot.read(file, 3);
+
+		Assertions.assertEquals(new HashSet<>(Arrays.asList("AAPL", "TSLA", appleCall.getTicker(), teslaPut.getTicker())),
+				instruments.keySet());
+		Assertions.assertEquals(tesla, instruments.get("TSLA"));
+		EuOption read = (EuOption) instruments.get(appleCall.getTicker());
+		Assertions.assertEquals(appleCall.getStrike(), read.getStrike());
+		Assertions.assertEquals(appleCall.getMaturity(), read.getMaturity());
+		Assertions.assertEquals(appleCall.getOptionType(), read.getOptionType());
+		// options share the instance of their underlying
+		Assertions.assertSame(instruments.get("AAPL"), read.getUnderlying());
+		Assertions.assertSame(instruments.get("TSLA"), ((EuOption) instruments.get(teslaPut.getTicker())).getUnderlying());
+
+		// taken from another version of the data
+		Assertions.assertThrows(IllegalArgumentException.class, () -> ReferenceDataSnapshot.read(file, 4));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> ReferenceDataSnapshot.read(Files.write(
+				directory.resolve("other"), "not a snapshot, but long enough to have a header".getBytes()), 3));
+	}
+
+	@Test
+	public void warmStart(@TempDir Path directory) throws SQLException, IOException {
+		Supplier<Connection> connector = connectionSupplier("jdbc:h2:mem:refDataSnapshotTest;DB_CLOSE_DELAY=-1");
+		new DbSchemaBuilder(connector).createSchema();
+		List<Instrument> universe = new ArrayList<>();
+		for (char letter = 'A'; letter < 'A' + EQUITIES; letter++) {
+			Equity equity = new Equity("EQ" + letter, 0.1, 0.3);
+			universe.add(equity);
+			for (int strike = 1; strike <= OPTIONS_PER_EQUITY; strike++)
+				universe.add(new EuOption(equity.getTicker() + "-MAR-2023-" + strike + "-C", equity,
+						BigDecimal.valueOf(strike), LocalDate.of(2023,3,1), EuOption.OptionType.CALL));
+		}
+		new DbDataPreparer(connector).insertInstruments(universe);
+		Path file = directory.resolve("instruments.snapshot");
+
+		try (ReferenceDataInDbService dbService = new ReferenceDataInDbService(connector)) {
+			CountingFallback fallback = new CountingFallback(dbService);
+
+			// cold: loaded from the database, and the snapshot is written
+			Map<String, Instrument> fromDatabase = new SnapshotReferenceDataService(fallback, file, dbService::getDataVersion).findAllInstruments();
+			Assertions.assertEquals(1, fallback.loads);
+			Assertions.assertTrue(Files.exists(file));
+
+			// warm: the database is not queried
+			SnapshotReferenceDataService warm = new SnapshotReferenceDataService(fallback, file, dbService::getDataVersion);
+			Map<String, Instrument> fromSnapshot = warm.findAllInstruments();
+			Assertions.assertEquals(1, fallback.loads);
+			Assertions.assertEquals(fromDatabase.keySet(), fromSnapshot.keySet());
+			EuOption option = (EuOption) fromSnapshot.get("EQC-MAR-2023-7-C");
+			Assertions.assertEquals(0, new BigDecimal("7").compareTo(option.getStrike()));
+			Assertions.assertEquals("EQC", option.getUnderlying().getTicker());
+
+			// the option slices of the snapshot are the ones of the database
+			Assertions.assertEquals(dbService.findOptionsOnUnderlying("EQB"), warm.findOptionsOnUnderlying("EQB"));
+			Assertions.assertEquals(dbService.findOptionsOnUnderlying("EQB", LocalDate.of(2023,3,1), LocalDate.of(2023,3,31)),
+					warm.findOptionsOnUnderlying("EQB", LocalDate.of(2023,3,1), LocalDate.of(2023,3,31)));
+			Assertions.assertEquals(dbService.findOptionsMaturingBetween(LocalDate.of(2023,1,1), LocalDate.of(2023,6,1)),
+					warm.findOptionsMaturingBetween(LocalDate.of(2023,1,1), LocalDate.of(2023,6,1)));
+
+			// a damaged snapshot is discarded and written again
+			try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+				raw.seek(raw.length() / 2);
+				int value = raw.read();
+				raw.seek(raw.length() / 2);
+				raw.write(value ^ 0xFF);
+			}
+			SnapshotReferenceDataService service = new SnapshotReferenceDataService(fallback, file, dbService::getDataVersion);
+			Assertions.assertEquals(fromDatabase.keySet(), service.findAllInstruments().keySet());
+			Assertions.assertEquals(2, fallback.loads);
+			Assertions.assertEquals(fromDatabase.keySet(), ReferenceDataSnapshot.read(file, dbService.getDataVersion()).keySet());
+
+			// unknown to the snapshot: asked to the database
+			Assertions.assertThrows(IllegalArgumentException.class, () -> service.findInstrument("MISSING"));
+
+			// the database changed since the snapshot: it's discarded and written again
+			new DbDataPreparer(connector).insertInstruments(new Equity("NEW", 0.1, 0.3));
+			Map<String, Instrument> changed = new SnapshotReferenceDataService(fallback, file, dbService::getDataVersion).findAllInstruments();
+			Assertions.assertEquals(3, fallback.loads);
+			Assertions.assertTrue(changed.containsKey("NEW"));
+			Assertions.assertTrue(ReferenceDataSnapshot.read(file, dbService.getDataVersion()).containsKey("NEW"));
+
+			service.invalidate();
+			Assertions.assertFalse(Files.exists(file));
+		}
+	}
+
+	/**
+	 * counts the full loads
+	 */
+	private static class CountingFallback implements ReferenceDataService {
+		private final ReferenceDataService delegate;
+		private int loads;
+
+		private CountingFallback(ReferenceDataService delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Instrument findInstrument(String ticker) {
+			return this.delegate.findInstrument(ticker);
+		}
+
+		@Override
+		public Map<String, Instrument> findAllInstruments() {
+			this.loads++;
+			return this.delegate.findAllInstruments();
+		}
+
+		@Override
+		public List<EuOption> findOptionsOnUnderlying(String equityTicker) {
+			return this.delegate.findOptionsOnUnderlying(equityTicker);
+		}
+
+		@Override
+		public List<EuOption> findOptionsOnUnderlying(String equityTicker, LocalDate fromMaturity, LocalDate toMaturity) {
+			return this.delegate.findOptionsOnUnderlying(equityTicker, fromMaturity, toMaturity);
+		}
+
+		@Override
+		public List<EuOption> findOptionsMaturingBetween(LocalDate fromMaturity, LocalDate toMaturity) {
+			return this.delegate.findOptionsMaturingBetween(fromMaturity, toMaturity);
+		}
+	}
+
+}
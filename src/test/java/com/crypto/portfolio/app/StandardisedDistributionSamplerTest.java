@@ -0,0 +1,74 @@
+package com.crypto.portfolio.app;
+
+import com.crypto.portfolio.app.utils.StandardisedDistributionSampler;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * checks the accuracy of the cumulative distribution engines against well known values of N(x).
+ * Their latency is compared by {@link com.crypto.portfolio.app.local.DistributionSamplerBenchmark}
+ */
+public class StandardisedDistributionSamplerTest {
+
+	// x -> N(x)
+	private static final double[][] REFERENCE_VALUES = {
+			{-5, 2.866515718791939e-7},
+			{-3, 0.0013498980316300946},
+			{-1.96, 0.024997895148220435},
+			{-1, 0.15865525393145707},
+			{-0.5, 0.3085375387259869},
+			{0, 0.5},
+			{0.25, 0.5987063256829237},
+			{1, 0.8413447460685429},
+			{1.96, 0.9750021048517795},
+			{3, 0.9986501019683699},
+	};
+
+
+	@Test
+	public void closedFormAccuracy(){
+		Assertions.assertTrue(maxError(StandardisedDistributionSampler.closedForm()) < 1e-12);
+	}
+
+	@Test
+	public void tableAccuracy(){
+		Assertions.assertTrue(maxError(StandardisedDistributionSampler.table(4096)) < 1e-5);
+	}
+
+	/**
+	 * the sampling error is about 0.5/sqrt(samples), we leave some margin since it's random
+	 */
+	@Test
+	public void empiricalAccuracy(){
+		Assertions.assertTrue(maxError(StandardisedDistributionSampler.empirical(10000)) < 0.03);
+	}
+
+	@Test
+	public void monotonicAndBounded(){
+		for (StandardisedDistributionSampler sampler : allEngines()) {
+			double previous = 0;
+			for (double x = -10; x <= 10; x += 0.01) {
+				double odds = sampler.oddsLessThan(x);
+				Assertions.assertTrue(odds >= previous, sampler.getMode() + " is not monotonic at " + x);
+				Assertions.assertTrue(odds <= 1, sampler.getMode() + " is above 1 at " + x);
+				previous = odds;
+			}
+		}
+	}
+
+	private static StandardisedDistributionSampler[] allEngines(){
+		return new StandardisedDistributionSampler[]{
+				StandardisedDistributionSampler.closedForm(),
+				StandardisedDistributionSampler.table(4096),
+				StandardisedDistributionSampler.empirical(10000)
+		};
+	}
+
+	private static double maxError(StandardisedDistributionSampler sampler){
+		double max = 0;
+		for (double[] reference : REFERENCE_VALUES)
+			max = Math.max(max, Math.abs(sampler.oddsLessThan(reference[0]) - reference[1]));
+		return max;
+	}
+
+}
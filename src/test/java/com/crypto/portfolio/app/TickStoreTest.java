@@ -0,0 +1,155 @@
+package com.crypto.portfolio.app;
+
+import com.crypto.portfolio.api.Equity;
+import com.crypto.portfolio.app.implementations.RandomisedBrownianMarketService;
+import com.crypto.portfolio.app.ticks.RecordingMarketService;
+import com.crypto.portfolio.app.ticks.TickFileWriter;
+import com.crypto.portfolio.app.ticks.TickReplayMarketService;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * the prices seen through a recording market service must be replayed as they were
+ */
+public class TickStoreTest {
+
+	private static final LocalDateTime BEGIN_TS = LocalDateTime.of(2022,1,1,0,0);
+	private static final Equity APPLE = new Equity("AAPL", 0.4, 0.2);
+	private static final Equity TESLA = new Equity("TSLA", 0.2, 0.5);
+	private static final Equity AMAZON = new Equity("AMZN", 0.5, 0.2);
+	private static final int UPDATES = 5000;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void recordAndReplay() throws IOException {
+		Path file = this.directory.resolve("ticks.bin");
+		RandomisedBrownianMarketService simulator = new RandomisedBrownianMarketService(ImmutableMap.of(
+				APPLE, new BigDecimal("180"),
+				TESLA, new BigDecimal("900"),
+				AMAZON, new BigDecimal("3200")
+		), BEGIN_TS);
+
+		// AMZN is only recorded every 10 updates
+		List<Map<String, BigDecimal>> recorded = new ArrayList<>();
+		try (TickFileWriter writer = new TickFileWriter(file)) {
+			RecordingMarketService recorder = new RecordingMarketService(simulator, writer);
+			for (int update = 0; update < UPDATES; update++) {
+				LocalDateTime timestamp = BEGIN_TS.plusSeconds(2 * (update + 1));
+				Map<String, BigDecimal> prices = recorder.getPrices(Arrays.asList(APPLE.getTicker(), TESLA.getTicker()), timestamp);
+				if (update % 10 == 0)
+					prices.put(AMAZON.getTicker(), recorder.getPrice(AMAZON.getTicker(), timestamp));
+				recorded.add(prices);
+			}
+		}
+		int ticks = UPDATES * 2 + UPDATES / 10;
+		Assertions.assertEquals(40 + ticks * 20 + ticks / TickFileWriter.DEFAULT_INDEX_INTERVAL * 3 * 8, Files.size(file), 100);
+
+		try (TickReplayMarketService replay = new TickReplayMarketService(file)) {
+			Assertions.assertEquals(new HashSet<>(Arrays.asList(APPLE.getTicker(), TESLA.getTicker(), AMAZON.getTicker())),
+					replay.getTickers());
+			Assertions.assertEquals(ticks, replay.getTickCount());
+
+			for (int update = 0; update < UPDATES; update++) {
+				LocalDateTime timestamp = BEGIN_TS.plusSeconds(2 * (update + 1));
+				Map<String, BigDecimal> expected = recorded.get(update);
+				Map<String, BigDecimal> replayed = replay.getPrices(
+						Arrays.asList(APPLE.getTicker(), TESLA.getTicker(), AMAZON.getTicker()), timestamp
+				);
+				assertSamePrice(expected.get(APPLE.getTicker()), replayed.get(APPLE.getTicker()));
+				assertSamePrice(expected.get(TESLA.getTicker()), replayed.get(TESLA.getTicker()));
+				// in between two recordings, the last one applies
+				assertSamePrice(recorded.get(update / 10 * 10).get(AMAZON.getTicker()), replayed.get(AMAZON.getTicker()));
+				assertSamePrice(expected.get(TESLA.getTicker()), replay.getPrice(TESLA.getTicker(), timestamp.plusSeconds(1)));
+			}
+
+			// any order is fine
+			assertSamePrice(recorded.get(0).get(APPLE.getTicker()), replay.getPrice(APPLE.getTicker(), BEGIN_TS.plusSeconds(2)));
+
+			Assertions.assertThrows(IllegalStateException.class, () -> replay.getPrice(APPLE.getTicker(), BEGIN_TS));
+			Assertions.assertThrows(IllegalStateException.class, () -> replay.getPrice("RKLB", BEGIN_TS.plusDays(1)));
+		}
+	}
+
+	@Test
+	public void indexedReplay() throws IOException {
+		Path file = this.directory.resolve("indexed.bin");
+		// more significant digits than a fixed-point format with 6 decimals would keep
+		BigDecimal tiny = new BigDecimal("0.0001234567890123");
+		try (TickFileWriter writer = new TickFileWriter(file, 16)) {
+			writer.write(AMAZON.getTicker(), BEGIN_TS, tiny);
+			for (int tick = 1; tick <= 1000; tick++)
+				writer.write(APPLE.getTicker(), BEGIN_TS.plusSeconds(tick), BigDecimal.valueOf(tick));
+			// a ticker first seen after some rows of the index
+			writer.write(TESLA.getTicker(), BEGIN_TS.plusSeconds(1001), new BigDecimal("901.5"));
+			for (int tick = 1002; tick <= 1100; tick++)
+				writer.write(APPLE.getTicker(), BEGIN_TS.plusSeconds(tick), BigDecimal.valueOf(tick));
+		}
+
+		try (TickReplayMarketService replay = new TickReplayMarketService(file)) {
+			// recorded once, long before: found through the index, not by scanning back
+			Assertions.assertEquals(0, tiny.compareTo(replay.getPrice(AMAZON.getTicker(), BEGIN_TS.plusSeconds(1100))));
+			Assertions.assertEquals(0, tiny.compareTo(replay.getPrice(AMAZON.getTicker(), BEGIN_TS)));
+			assertSamePrice(new BigDecimal("901.5"), replay.getPrice(TESLA.getTicker(), BEGIN_TS.plusSeconds(1100)));
+			Assertions.assertThrows(IllegalStateException.class, () -> replay.getPrice(TESLA.getTicker(), BEGIN_TS.plusSeconds(1000)));
+			for (int tick = 1; tick <= 1100; tick += 7) {
+				Map<String, BigDecimal> prices = replay.getPrices(
+						Arrays.asList(APPLE.getTicker(), AMAZON.getTicker()), BEGIN_TS.plusSeconds(tick));
+				assertSamePrice(BigDecimal.valueOf(tick), prices.get(APPLE.getTicker()));
+				assertSamePrice(tiny, prices.get(AMAZON.getTicker()));
+			}
+		}
+	}
+
+	@Test
+	public void indexScalesWithTheTickers() throws IOException {
+		Path file = this.directory.resolve("wide.bin");
+		int tickers = 2000, ticks = 50_000;
+		try (TickFileWriter writer = new TickFileWriter(file, 16)) {
+			for (int tick = 0; tick < ticks; tick++)
+				writer.write("EQ" + (tick % tickers), BEGIN_TS.plusSeconds(tick), BigDecimal.valueOf(tick));
+		}
+		// a row per 16 ticks would take 16 times the ticks: the interval grew, and the index is a fraction of them
+		Assertions.assertTrue(Files.size(file) < ticks * 20 * 3 / 2, "file of "+Files.size(file)+" bytes");
+
+		try (TickReplayMarketService replay = new TickReplayMarketService(file)) {
+			for (int tick = tickers; tick < ticks; tick += 997) {
+				// the last tick of the ticker written the most ticks ago
+				int oldest = tick - tickers + 1;
+				assertSamePrice(BigDecimal.valueOf(oldest),
+						replay.getPrice("EQ" + (oldest % tickers), BEGIN_TS.plusSeconds(tick)));
+			}
+		}
+	}
+
+	@Test
+	public void rejectsOtherFiles() throws IOException {
+		Path file = this.directory.resolve("other.bin");
+		Files.write(file, new byte[64]);
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new TickReplayMarketService(file));
+	}
+
+	@Test
+	public void ticksInTimeOrder() throws IOException {
+		try (TickFileWriter writer = new TickFileWriter(this.directory.resolve("ticks.bin"))) {
+			writer.write(APPLE.getTicker(), BEGIN_TS.plusSeconds(1), BigDecimal.ONE);
+			Assertions.assertThrows(IllegalArgumentException.class,
+					() -> writer.write(APPLE.getTicker(), BEGIN_TS, BigDecimal.ONE));
+		}
+	}
+
+	private static void assertSamePrice(BigDecimal expected, BigDecimal replayed){
+		Assertions.assertEquals(0, expected.compareTo(replayed), () -> expected+" replayed as "+replayed);
+	}
+
+}
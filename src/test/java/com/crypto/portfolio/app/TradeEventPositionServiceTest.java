@@ -0,0 +1,94 @@
+package com.crypto.portfolio.app;
+
+import com.crypto.portfolio.api.interfaces.Position;
+import com.crypto.portfolio.api.interfaces.PositionSnapshot;
+import com.crypto.portfolio.app.implementations.TradeEventPositionService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * positions at any timestamp must be the net of the fills executed till then, whatever the checkpoints
+ */
+public class TradeEventPositionServiceTest {
+
+	private static final LocalDateTime TS = LocalDateTime.of(2022,1,1,0,0);
+	private static final String[] TICKERS = {"AAPL", "TSLA", "RKLB", "AAPL-FEB-2023-110-C"};
+
+	@Test
+	public void netsTheFills() {
+		TradeEventPositionService positionService = new TradeEventPositionService(2);
+		positionService.submit("AAPL", 100, TS);
+		positionService.submit("TSLA", -20, TS.plusSeconds(1));
+		positionService.submit("AAPL", -100, TS.plusSeconds(2));
+
+		Assertions.assertTrue(positionService.getPositions(TS.minusSeconds(1)).isEmpty());
+		Assertions.assertEquals(BigInteger.valueOf(100), positionService.getPositions(TS).get(0).getPositionSize());
+
+		// AAPL netted to zero is left out
+		PositionSnapshot latest = positionService.getSnapshot(TS.plusSeconds(2));
+		Assertions.assertEquals(3, latest.getVersion());
+		Assertions.assertEquals(1, latest.getPositions().size());
+		Assertions.assertEquals("TSLA", latest.getPositions().get(0).getTicker());
+		Assertions.assertSame(latest, positionService.getSnapshot(TS.plusSeconds(3)));
+
+		// a late fill doesn't change what was already served: it's booked after the latest timestamp asked for
+		positionService.submit("RKLB", 5, TS);
+		Assertions.assertEquals(3, positionService.getSnapshot(TS.plusSeconds(3)).getVersion());
+		PositionSnapshot late = positionService.getSnapshot(TS.plusSeconds(4));
+		Assertions.assertEquals(4, late.getVersion());
+		Assertions.assertEquals("RKLB", late.getPositions().get(1).getTicker());
+
+		// a fill which would overflow is rejected
+		positionService.submit("TSLA", Long.MIN_VALUE, TS.plusSeconds(5));
+		Assertions.assertEquals(4, positionService.getSnapshot(TS.plusSeconds(5)).getVersion());
+		Assertions.assertEquals(4, positionService.getEventCount());
+	}
+
+	@Test
+	public void pointInTimeQueries() throws InterruptedException {
+		TradeEventPositionService positionService = new TradeEventPositionService(64);
+		Random random = new Random(7);
+		int fills = 20_000;
+		long[] quantities = new long[fills];
+		int[] tickers = new int[fills];
+		for (int i = 0; i < fills; i++) {
+			quantities[i] = random.nextInt(1000) - 500;
+			tickers[i] = random.nextInt(TICKERS.length);
+		}
+
+		// submitted from two threads, one fill per second
+		Thread[] producers = new Thread[2];
+		for (int p = 0; p < producers.length; p++) {
+			int first = p;
+			producers[p] = new Thread(() -> {
+				for (int i = first; i < fills; i += producers.length)
+					positionService.submit(TICKERS[tickers[i]], quantities[i], TS.plusSeconds(i));
+			});
+			producers[p].start();
+		}
+		for (Thread producer : producers)
+			producer.join();
+		Assertions.assertEquals(fills, positionService.getSnapshot(TS.plusSeconds(fills)).getVersion());
+
+		for (int query = 0; query < 200; query++) {
+			int seconds = random.nextInt(fills);
+			Map<String, Long> expected = new HashMap<>();
+			for (int i = 0; i <= seconds; i++)
+				expected.merge(TICKERS[tickers[i]], quantities[i], Long::sum);
+			expected.values().removeIf(quantity -> quantity == 0);
+
+			List<Position> positions = positionService.getPositions(TS.plusSeconds(seconds));
+			Assertions.assertEquals(expected.size(), positions.size());
+			for (Position position : positions)
+				Assertions.assertEquals(BigInteger.valueOf(expected.get(position.getTicker())), position.getPositionSize());
+		}
+	}
+
+}
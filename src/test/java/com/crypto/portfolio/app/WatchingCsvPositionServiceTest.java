@@ -0,0 +1,69 @@
+package com.crypto.portfolio.app;
+
+import com.crypto.portfolio.api.interfaces.PositionSnapshot;
+import com.crypto.portfolio.app.implementations.WatchingCsvPositionService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+
+/**
+ * a change of the file must show up as a new version, without the readers ever seeing a broken book
+ */
+public class WatchingCsvPositionServiceTest {
+
+	private static final LocalDateTime TS = LocalDateTime.of(2022,1,1,0,0);
+
+	@Test
+	public void reloadsWhenTheFileChanges(@TempDir Path directory) throws IOException, InterruptedException {
+		Path file = directory.resolve("positions.csv");
+		Files.write(file, "symbol,positionSize\nAAPL,100\n".getBytes(StandardCharsets.UTF_8));
+
+		try (WatchingCsvPositionService positionService = new WatchingCsvPositionService(file)) {
+			PositionSnapshot first = positionService.getSnapshot(TS);
+			Assertions.assertEquals(1, first.getVersion());
+			Assertions.assertSame(first, positionService.getSnapshot(TS.plusSeconds(1)));
+			Assertions.assertEquals(1, positionService.getPositions(TS).size());
+
+			// saved in one go, like most tools do
+			Path temporary = Files.write(directory.resolve("positions.tmp"),
+					"symbol,positionSize\nAAPL,100\nTSLA,-20\n".getBytes(StandardCharsets.UTF_8));
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			PositionSnapshot second = waitForNewVersion(positionService, first);
+			Assertions.assertEquals(2, second.getPositions().size());
+			Assertions.assertEquals(BigInteger.valueOf(-20), second.getPositions().get(1).getPositionSize());
+
+			// a broken file is not published
+			Files.write(file, "symbol,positionSize\nAAPL,lots\n".getBytes(StandardCharsets.UTF_8));
+			Assertions.assertThrows(IOException.class, positionService::reload);
+			Thread.sleep(500);
+			PositionSnapshot current = positionService.getSnapshot(TS);
+			Assertions.assertEquals(2, current.getPositions().size());
+
+			Files.write(file, "symbol,positionSize\nRKLB,5\n".getBytes(StandardCharsets.UTF_8));
+			PositionSnapshot fixed = waitForNewVersion(positionService, current);
+			Assertions.assertEquals("RKLB", fixed.getPositions().get(0).getTicker());
+			Assertions.assertTrue(fixed.getVersion() > current.getVersion());
+		}
+	}
+
+	private static PositionSnapshot waitForNewVersion(WatchingCsvPositionService positionService, PositionSnapshot previous) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (System.currentTimeMillis() < deadline) {
+			PositionSnapshot snapshot = positionService.getSnapshot(TS);
+			if (snapshot.getVersion() > previous.getVersion())
+				return snapshot;
+			Thread.sleep(20);
+		}
+		throw new AssertionError("the file was not reloaded");
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.crypto.portfolio.app.local;
+
+import com.crypto.portfolio.api.Logger;
+import com.crypto.portfolio.app.utils.StandardisedDistributionSampler;
+
+/**
+ * compares the latency of the cumulative distribution engines. It depends on the machine, so it's only reported:
+ * it's meant to help choosing the engine
+ */
+public class DistributionSamplerBenchmark {
+
+	private static final int ITERATIONS = 2_000_000;
+
+	public static void main(String[] args) {
+		StandardisedDistributionSampler[] samplers = {
+				StandardisedDistributionSampler.closedForm(),
+				StandardisedDistributionSampler.table(4096),
+				StandardisedDistributionSampler.empirical(10000)
+		};
+		for (StandardisedDistributionSampler sampler : samplers) {
+			// warm up, then measure
+			run(sampler, ITERATIONS);
+			long start = System.nanoTime();
+			double checksum = run(sampler, ITERATIONS);
+			long elapsed = System.nanoTime() - start;
+			Logger.log(String.format("%-12s %.1f ns/call (checksum %.3f)",
+					sampler.getMode(), (double) elapsed / ITERATIONS, checksum));
+		}
+	}
+
+	private static double run(StandardisedDistributionSampler sampler, int iterations){
+		double sum = 0;
+		for (int i = 0; i < iterations; i++)
+			sum += sampler.oddsLessThan((i % 1000) / 125d - 4);
+		return sum;
+	}
+
+}
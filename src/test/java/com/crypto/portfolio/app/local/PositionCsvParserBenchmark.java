@@ -0,0 +1,59 @@
+package com.crypto.portfolio.app.local;
+
+import com.crypto.portfolio.api.Logger;
+import com.crypto.portfolio.api.interfaces.Position;
+import com.crypto.portfolio.app.PositionCsvParserTest;
+import com.crypto.portfolio.app.utils.CsvReader;
+import com.crypto.portfolio.app.utils.PositionCsvParser;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * compares the time to read a book of positions with the general csv reader, the streaming parser and the
+ * parser of mapped chunks
+ */
+public class PositionCsvParserBenchmark {
+
+	private static final int ROWS = 300_000;
+
+	public static void main(String[] args) throws IOException {
+		String csv = PositionCsvParserTest.largeCsv(ROWS);
+		Path file = Files.createTempFile("positions", ".csv");
+		try {
+			Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+
+			// each parser runs twice, the second one is measured
+			long csvReaderNanos = 0, streamedNanos = 0, chunkedNanos = 0;
+			for (int run = 0; run < 2; run++) {
+				long start = System.nanoTime();
+				List<Position> positions = new ArrayList<>();
+				try (CsvReader csvReader = new CsvReader(new StringReader(csv))) {
+					for (Map<String, String> row : csvReader)
+						positions.add(new Position(new BigInteger(row.get("positionSize")), row.get("symbol")));
+				}
+				csvReaderNanos = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				PositionCsvParser.parse(new StringReader(csv));
+				streamedNanos = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				PositionCsvParser.parse(file, 4);
+				chunkedNanos = System.nanoTime() - start;
+			}
+			Logger.log(String.format("%,d positions: csv reader %d ms, streamed %d ms, mapped in chunks %d ms",
+					ROWS, csvReaderNanos / 1_000_000, streamedNanos / 1_000_000, chunkedNanos / 1_000_000));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.crypto.portfolio.app.local;
+
+import com.crypto.portfolio.api.Equity;
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.api.Logger;
+import com.crypto.portfolio.app.database.DbDataPreparer;
+import com.crypto.portfolio.app.database.DbSchemaBuilder;
+import com.crypto.portfolio.app.database.ReferenceDataInDbService;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.function.Supplier;
+
+import static com.crypto.portfolio.app.database.H2Constants.connectionSupplier;
+
+/**
+ * compares the option lookups per second of the H2 reference data service, with its pooled connections and
+ * statements, against the former approach: a connection, a regex compilation and two statements per lookup
+ */
+public class ReferenceDataLookupBenchmark {
+
+	private static final int ITERATIONS = 20_000;
+
+	public static void main(String[] args) throws SQLException {
+		Supplier<Connection> connector = connectionSupplier("jdbc:h2:mem:refDataThroughput;DB_CLOSE_DELAY=-1");
+		new DbSchemaBuilder(connector).createSchema();
+		Equity apple = new Equity("APPLE", 0, 1);
+		EuOption appleCall = new EuOption("APPLE-MAR-2022-100-C", apple, new BigDecimal("100"), LocalDate.of(2022,1,1), EuOption.OptionType.CALL);
+		new DbDataPreparer(connector).insertInstruments(apple, appleCall);
+
+		try (ReferenceDataInDbService dbService = new ReferenceDataInDbService(connector, 1)) {
+			lookupsPerSecond("pooled", () -> dbService.findInstrument(appleCall.getTicker()));
+		}
+		lookupsPerSecond("per call", () -> findOptionPerCall(connector, appleCall.getTicker()));
+	}
+
+	private static void lookupsPerSecond(String name, Runnable lookup){
+		// warm up, then measure
+		for (int i = 0; i < ITERATIONS; i++)
+			lookup.run();
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++)
+			lookup.run();
+		long elapsed = System.nanoTime() - start;
+		Logger.log(String.format("%-10s %,.0f option lookups/s", name, ITERATIONS * 1e9 / elapsed));
+	}
+
+	private static void findOptionPerCall(Supplier<Connection> connector, String ticker){
+		try (Connection connection = connector.get()) {
+			if (!ticker.matches("[A-Z]+\\-[A-Z]{3}\\-[0-9]{4}\\-[0-9]+-[CP]{1}"))
+				throw new IllegalArgumentException(ticker+" doesn't have a standard format");
+			String equityTicker;
+			try (PreparedStatement statement = connection.prepareStatement("select * from Option where ticker = ?")) {
+				statement.setString(1, ticker);
+				try (ResultSet resultSet = statement.executeQuery()) {
+					if (!resultSet.next())
+						throw new IllegalArgumentException("can't find options with ticker "+ticker);
+					equityTicker = resultSet.getString("equityTicker");
+				}
+			}
+			try (PreparedStatement statement = connection.prepareStatement("select * from Equity where ticker = ?")) {
+				statement.setString(1, equityTicker);
+				try (ResultSet resultSet = statement.executeQuery()) {
+					if (!resultSet.next())
+						throw new IllegalArgumentException("can't find equities with ticker "+equityTicker);
+				}
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.crypto.portfolio.app.local;
+
+import com.crypto.portfolio.api.Equity;
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.api.Instrument;
+import com.crypto.portfolio.api.Logger;
+import com.crypto.portfolio.app.database.DbDataPreparer;
+import com.crypto.portfolio.app.database.DbSchemaBuilder;
+import com.crypto.portfolio.app.database.ReferenceDataInDbService;
+import com.crypto.portfolio.app.database.SnapshotReferenceDataService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.crypto.portfolio.app.database.H2Constants.connectionSupplier;
+
+/**
+ * compares the preload of twenty thousand options from the database against the one from the binary snapshot
+ */
+public class ReferenceDataSnapshotBenchmark {
+
+	private static final int EQUITIES = 20;
+	private static final int OPTIONS_PER_EQUITY = 1000;
+
+	public static void main(String[] args) throws SQLException, IOException {
+		Supplier<Connection> connector = connectionSupplier("jdbc:h2:mem:refDataSnapshotBenchmark;DB_CLOSE_DELAY=-1");
+		new DbSchemaBuilder(connector).createSchema();
+		List<Instrument> universe = new ArrayList<>();
+		for (char letter = 'A'; letter < 'A' + EQUITIES; letter++) {
+			Equity equity = new Equity("EQ" + letter, 0.1, 0.3);
+			universe.add(equity);
+			for (int strike = 1; strike <= OPTIONS_PER_EQUITY; strike++)
+				universe.add(new EuOption(equity.getTicker() + "-MAR-2023-" + strike + "-C", equity,
+						BigDecimal.valueOf(strike), LocalDate.of(2023,3,1), EuOption.OptionType.CALL));
+		}
+		new DbDataPreparer(connector).insertInstruments(universe);
+
+		Path directory = Files.createTempDirectory("snapshotBenchmark");
+		Path file = directory.resolve("instruments.snapshot");
+		try (ReferenceDataInDbService dbService = new ReferenceDataInDbService(connector)) {
+			// cold: loaded from the database, and the snapshot is written
+			long coldStart = System.nanoTime();
+			int instruments = new SnapshotReferenceDataService(dbService, file, dbService::getDataVersion).findAllInstruments().size();
+			long coldNanos = System.nanoTime() - coldStart;
+
+			long warmStart = System.nanoTime();
+			new SnapshotReferenceDataService(dbService, file, dbService::getDataVersion).findAllInstruments();
+			long warmNanos = System.nanoTime() - warmStart;
+			Logger.log(String.format("%,d instruments: %d ms from the database, %d ms from the snapshot",
+					instruments, TimeUnit.NANOSECONDS.toMillis(coldNanos), TimeUnit.NANOSECONDS.toMillis(warmNanos)));
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(directory);
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+import com.crypto.portfolio.api.subscriber.SubscriptionSpec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class BroadcastRingBufferTest {
+
+	private static final LocalDateTime BEGIN_TS = LocalDateTime.of(2022,1,1,0,0);
+
+	@Test
+	public void readersGetUpdatesInOrder() throws InterruptedException {
+		BroadcastRingBuffer ring = new BroadcastRingBuffer(10);
+		RingSubscriberTopic first = new RingSubscriberTopic("first", SubscriptionSpec.all(), ring);
+		RingSubscriberTopic second = new RingSubscriberTopic("second", SubscriptionSpec.all(), ring);
+		for (int i = 0; i < 3; i++)
+			ring.publish(update(i));
+
+		Assertions.assertEquals(3, first.getLag());
+		for (int i = 0; i < 3; i++) {
+			Assertions.assertEquals(BEGIN_TS.plusSeconds(i), first.waitForNextUpdate().getTimestamp());
+			Assertions.assertEquals(BEGIN_TS.plusSeconds(i), second.waitForNextUpdate().getTimestamp());
+		}
+		Assertions.assertEquals(0, first.getLag());
+
+		// a late subscriber only gets the following updates
+		RingSubscriberTopic late = new RingSubscriberTopic("late", SubscriptionSpec.all(), ring);
+		ring.publish(update(3));
+		Assertions.assertEquals(BEGIN_TS.plusSeconds(3), late.waitForNextUpdate().getTimestamp());
+	}
+
+	/**
+	 * a reader lapped by the producer skips to the oldest update still available
+	 */
+	@Test
+	public void slowReaderSkipsAhead() throws InterruptedException {
+		BroadcastRingBuffer ring = new BroadcastRingBuffer(4);
+		RingSubscriberTopic slow = new RingSubscriberTopic("slow", SubscriptionSpec.all(), ring);
+		int capacity = ring.getUsableCapacity();
+		Assertions.assertTrue(capacity >= 4);
+
+		for (int i = 0; i < 20; i++)
+			ring.publish(update(i));
+
+		Assertions.assertEquals(20, slow.getLag());
+		Assertions.assertEquals(BEGIN_TS.plusSeconds(20 - capacity), slow.waitForNextUpdate().getTimestamp());
+		Assertions.assertEquals(20 - capacity, slow.getMissedUpdates());
+		Assertions.assertEquals(capacity - 1, slow.getLag());
+	}
+
+	@Test
+	public void waitingReaderIsWokenUp() throws Exception {
+		BroadcastRingBuffer ring = new BroadcastRingBuffer(4);
+		RingSubscriberTopic reader = new RingSubscriberTopic("reader", SubscriptionSpec.all(), ring);
+		CompletableFuture<PortfolioUpdate> received = CompletableFuture.supplyAsync(() -> {
+			try {
+				return reader.waitForNextUpdate();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		Thread.sleep(50);
+		Assertions.assertFalse(received.isDone());
+
+		PortfolioUpdate update = update(1);
+		ring.publish(update);
+		Assertions.assertSame(update, received.get(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * the producer waits for the slowest reader before publishing (as in backtests): nobody loses updates
+	 */
+	@Test
+	public void concurrentReaders() throws Exception {
+		final int UPDATES = 50000;
+		BroadcastRingBuffer ring = new BroadcastRingBuffer(16);
+		List<RingSubscriberTopic> readers = new ArrayList<>();
+		List<CompletableFuture<Long>> results = new ArrayList<>();
+		for (int r = 0; r < 3; r++) {
+			RingSubscriberTopic reader = new RingSubscriberTopic("reader" + r, SubscriptionSpec.all(), ring);
+			readers.add(reader);
+			results.add(CompletableFuture.supplyAsync(() -> {
+				try {
+					for (int i = 0; i < UPDATES; i++)
+						Assertions.assertEquals(BEGIN_TS.plusSeconds(i), reader.waitForNextUpdate().getTimestamp());
+					return reader.getMissedUpdates();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			}));
+		}
+
+		for (int i = 0; i < UPDATES; i++) {
+			for (RingSubscriberTopic reader : readers)
+				while (reader.getLag() >= ring.getUsableCapacity())
+					Thread.yield();
+			ring.publish(update(i));
+		}
+
+		for (CompletableFuture<Long> result : results)
+			Assertions.assertEquals(0, result.get(30, TimeUnit.SECONDS));
+	}
+
+	private static PortfolioUpdate update(int seconds){
+		return new PortfolioUpdate(BEGIN_TS.plusSeconds(seconds), Collections.emptyList(), Collections.emptyList(), BigDecimal.ZERO);
+	}
+
+}
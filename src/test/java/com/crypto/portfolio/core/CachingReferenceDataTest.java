@@ -0,0 +1,137 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.Equity;
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.api.Instrument;
+import com.crypto.portfolio.api.interfaces.ReferenceDataService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * once preloaded, or once a ticker was asked for, the reference data service must not be asked again;
+ * not even for the tickers which don't exist
+ */
+public class CachingReferenceDataTest {
+
+	private static final Equity APPLE = new Equity("AAPL", 0.4, 0.2);
+	private static final Equity TESLA = new Equity("TSLA", 0.2, 0.5);
+	private static final EuOption APPLE_C = new EuOption("AAPL-MAR-2022-100-C", APPLE, new BigDecimal("100"),
+			LocalDate.of(2022,3,1), EuOption.OptionType.CALL);
+
+	@Test
+	public void preloadServesAllFromMemory(){
+		CountingReferenceData referenceData = new CountingReferenceData(APPLE, TESLA, APPLE_C);
+		CachingReferenceData cache = new CachingReferenceData(referenceData);
+
+		Assertions.assertEquals(3, cache.preload());
+		Assertions.assertSame(APPLE_C, cache.getInstrument(APPLE_C.getTicker()));
+		Assertions.assertEquals(2, cache.getInstruments(Arrays.asList(APPLE.getTicker(), TESLA.getTicker())).size());
+		Assertions.assertEquals(0, referenceData.requests.get());
+
+		ReferenceDataStatistics statistics = cache.statistics();
+		Assertions.assertEquals(3, statistics.getHits());
+		Assertions.assertEquals(0, statistics.getMisses());
+		Assertions.assertEquals(1, statistics.getLoads());
+		Assertions.assertEquals(3, statistics.getCachedInstruments());
+	}
+
+	@Test
+	public void unknownTickersAreRemembered(){
+		CountingReferenceData referenceData = new CountingReferenceData(APPLE, TESLA);
+		CachingReferenceData cache = new CachingReferenceData(referenceData);
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> cache.getInstrument("AMZN"));
+		Assertions.assertEquals(1, referenceData.requests.get());
+		Assertions.assertThrows(IllegalArgumentException.class, () -> cache.getInstrument("AMZN"));
+		Assertions.assertEquals(1, referenceData.requests.get());
+
+		// the batch fails, then finds the unknown one ticker by ticker; the known ones are kept
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> cache.getInstruments(Arrays.asList(APPLE.getTicker(), "RKLB")));
+		Assertions.assertSame(APPLE, cache.getInstrument(APPLE.getTicker()));
+		int requests = referenceData.requests.get();
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> cache.getInstruments(Arrays.asList(TESLA.getTicker(), "RKLB")));
+		Assertions.assertEquals(requests, referenceData.requests.get());
+
+		ReferenceDataStatistics statistics = cache.statistics();
+		Assertions.assertEquals(2, statistics.getCachedNotFound());
+		Assertions.assertEquals(2, statistics.getNotFoundHits());
+	}
+
+	@Test
+	public void concurrentLookups() throws Exception {
+		CountingReferenceData referenceData = new CountingReferenceData(APPLE, TESLA, APPLE_C);
+		CachingReferenceData cache = new CachingReferenceData(referenceData);
+
+		int threads = 8;
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Instrument>> futures = new ArrayList<>();
+			for (int thread = 0; thread < threads; thread++)
+				futures.add(executor.submit(() -> {
+					start.await();
+					Instrument instrument = null;
+					for (int i = 0; i < 1000; i++)
+						instrument = cache.getInstrument(APPLE_C.getTicker());
+					return instrument;
+				}));
+			start.countDown();
+			for (Future<Instrument> future : futures)
+				Assertions.assertSame(APPLE_C, future.get(30, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+		// only the racing first lookups reach the service
+		Assertions.assertTrue(referenceData.requests.get() <= threads);
+		Assertions.assertEquals(threads * 1000, cache.statistics().getHits() + cache.statistics().getMisses());
+	}
+
+	/**
+	 * counts the requests, whatever their size
+	 */
+	private static class CountingReferenceData implements ReferenceDataService {
+		private final Map<String, Instrument> instruments = new HashMap<>();
+		private final AtomicInteger requests = new AtomicInteger();
+
+		private CountingReferenceData(Instrument... instruments) {
+			for (Instrument instrument : instruments)
+				this.instruments.put(instrument.getTicker(), instrument);
+		}
+
+		@Override
+		public Instrument findInstrument(String ticker) {
+			this.requests.incrementAndGet();
+			Instrument instrument = this.instruments.get(ticker);
+			if (instrument == null)
+				throw new IllegalArgumentException("can't find "+ticker);
+			return instrument;
+		}
+
+		@Override
+		public Map<String, Instrument> findInstruments(Collection<String> tickers) {
+			this.requests.incrementAndGet();
+			Map<String, Instrument> found = new HashMap<>();
+			for (String ticker : tickers) {
+				Instrument instrument = this.instruments.get(ticker);
+				if (instrument == null)
+					throw new IllegalArgumentException("can't find "+ticker);
+				found.put(ticker, instrument);
+			}
+			return found;
+		}
+
+		@Override
+		public Map<String, Instrument> findAllInstruments() {
+			return new HashMap<>(this.instruments);
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+import com.crypto.portfolio.api.subscriber.SubscriptionSpec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class ConflatingSubscriberTopicTest {
+
+	private static final LocalDateTime BEGIN_TS = LocalDateTime.of(2022,1,1,0,0);
+
+	/**
+	 * a slow subscriber only gets the latest update
+	 */
+	@Test
+	public void latestUpdateWins() throws InterruptedException {
+		ConflatingSubscriberTopic topic = new ConflatingSubscriberTopic("test", SubscriptionSpec.all());
+		PortfolioUpdate latest = null;
+		for (int i = 0; i < 5; i++) {
+			latest = update(i);
+			Assertions.assertTrue(topic.add(latest));
+		}
+		Assertions.assertSame(latest, topic.waitForNextUpdate());
+
+		// nothing left: the next update is the one added afterwards
+		PortfolioUpdate next = update(10);
+		topic.add(next);
+		Assertions.assertSame(next, topic.waitForNextUpdate());
+	}
+
+	/**
+	 * a subscriber waiting on an empty topic is woken up by the next update
+	 */
+	@Test
+	public void waitingSubscriberIsWokenUp() throws Exception {
+		ConflatingSubscriberTopic topic = new ConflatingSubscriberTopic("test", SubscriptionSpec.all());
+		CompletableFuture<PortfolioUpdate> received = CompletableFuture.supplyAsync(() -> {
+			try {
+				return topic.waitForNextUpdate();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		Thread.sleep(50);
+		Assertions.assertFalse(received.isDone());
+
+		PortfolioUpdate update = update(1);
+		topic.add(update);
+		Assertions.assertSame(update, received.get(5, TimeUnit.SECONDS));
+	}
+
+	private static PortfolioUpdate update(int seconds){
+		return new PortfolioUpdate(BEGIN_TS.plusSeconds(seconds), Collections.emptyList(), Collections.emptyList(), BigDecimal.ZERO);
+	}
+
+}
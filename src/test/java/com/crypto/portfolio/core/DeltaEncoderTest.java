@@ -0,0 +1,137 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.interfaces.Position;
+import com.crypto.portfolio.api.subscriber.EquityPriceUpdate;
+import com.crypto.portfolio.api.subscriber.PortfolioEntry;
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+import com.crypto.portfolio.api.subscriber.PortfolioView;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * a stream of full updates where only a few prices move at each tick: the deltas must only carry those, and
+ * a view applying them must always match the full update
+ */
+public class DeltaEncoderTest {
+
+	private static final LocalDateTime BEGIN_TS = LocalDateTime.of(2022,1,1,0,0);
+	private static final int POSITIONS = 50;
+
+	private final Random random = new Random(42);
+	private final BigDecimal[] prices = new BigDecimal[POSITIONS];
+	private long sequence;
+
+	@Test
+	public void deltasRebuildTheFullUpdates(){
+		DeltaEncoder encoder = new DeltaEncoder(10);
+		PortfolioView view = new PortfolioView();
+		for (int i = 0; i < POSITIONS; i++)
+			this.prices[i] = BigDecimal.valueOf(100 + i);
+
+		for (int tick = 0; tick < 100; tick++) {
+			int moved = this.random.nextInt(3);
+			for (int i = 0; i < moved; i++)
+				this.prices[this.random.nextInt(POSITIONS)] = BigDecimal.valueOf(this.random.nextInt(1000));
+
+			PortfolioUpdate full = this.update(POSITIONS);
+			PortfolioUpdate encoded = encoder.encode(full);
+
+			Assertions.assertEquals(tick % 10 == 0, encoded.isSnapshot());
+			if (!encoded.isSnapshot()) {
+				Assertions.assertTrue(encoded.getEntries().size() <= moved);
+				Assertions.assertEquals(encoded.getEntries().size(), encoded.getEquityPriceUpdates().size());
+			}
+			Assertions.assertEquals(full.getSequence(), encoded.getSequence());
+			Assertions.assertTrue(view.apply(encoded));
+			assertSameState(full, view);
+		}
+	}
+
+	@Test
+	public void snapshotOnRequestAndOnNewPositions(){
+		DeltaEncoder encoder = new DeltaEncoder(1000);
+		for (int i = 0; i < POSITIONS; i++)
+			this.prices[i] = BigDecimal.ONE;
+
+		Assertions.assertTrue(encoder.encode(this.update(POSITIONS)).isSnapshot());
+		PortfolioUpdate delta = encoder.encode(this.update(POSITIONS));
+		Assertions.assertFalse(delta.isSnapshot());
+		Assertions.assertTrue(delta.getEntries().isEmpty());
+		Assertions.assertTrue(delta.getEquityPriceUpdates().isEmpty());
+
+		encoder.requestSnapshot();
+		Assertions.assertTrue(encoder.encode(this.update(POSITIONS)).isSnapshot());
+		Assertions.assertFalse(encoder.encode(this.update(POSITIONS)).isSnapshot());
+
+		// a position closed
+		Assertions.assertTrue(encoder.encode(this.update(POSITIONS - 1)).isSnapshot());
+		Assertions.assertFalse(encoder.encode(this.update(POSITIONS - 1)).isSnapshot());
+	}
+
+	@Test
+	public void viewDetectsGaps(){
+		DeltaEncoder encoder = new DeltaEncoder(1000);
+		PortfolioView view = new PortfolioView();
+		for (int i = 0; i < POSITIONS; i++)
+			this.prices[i] = BigDecimal.ONE;
+
+		// no snapshot yet
+		encoder.encode(this.update(POSITIONS));
+		Assertions.assertFalse(view.apply(encoder.encode(this.update(POSITIONS))));
+		Assertions.assertFalse(view.isSynchronised());
+
+		encoder.requestSnapshot();
+		Assertions.assertTrue(view.apply(encoder.encode(this.update(POSITIONS))));
+
+		// one delta lost
+		this.prices[0] = BigDecimal.TEN;
+		encoder.encode(this.update(POSITIONS));
+		this.prices[1] = BigDecimal.TEN;
+		Assertions.assertFalse(view.apply(encoder.encode(this.update(POSITIONS))));
+		Assertions.assertFalse(view.isSynchronised());
+
+		encoder.requestSnapshot();
+		PortfolioUpdate full = this.update(POSITIONS);
+		Assertions.assertTrue(view.apply(encoder.encode(full)));
+		assertSameState(full, view);
+	}
+
+	/**
+	 * one equity position for each price
+	 */
+	private PortfolioUpdate update(int positions){
+		List<PortfolioEntry> entries = new ArrayList<>();
+		List<EquityPriceUpdate> equityPriceUpdates = new ArrayList<>();
+		BigDecimal nav = BigDecimal.ZERO;
+		for (int i = 0; i < positions; i++) {
+			String ticker = "EQ" + i;
+			BigDecimal value = this.prices[i].multiply(BigDecimal.valueOf(i + 1));
+			entries.add(new PortfolioEntry(new Position(BigInteger.valueOf(i + 1), ticker), this.prices[i], value));
+			equityPriceUpdates.add(new EquityPriceUpdate(ticker, this.prices[i]));
+			nav = nav.add(value);
+		}
+		return new PortfolioUpdate(BEGIN_TS.plusSeconds(this.sequence), entries, equityPriceUpdates, nav,
+				++this.sequence, true);
+	}
+
+	private static void assertSameState(PortfolioUpdate full, PortfolioView view){
+		Assertions.assertEquals(full.getSequence(), view.getSequence());
+		Assertions.assertEquals(full.getTimestamp(), view.getTimestamp());
+		Assertions.assertEquals(full.getTotalValue(), view.getTotalValue());
+		// unchanged entries may be other instances with the same content
+		Assertions.assertEquals(full.getEntries().toString(), view.getEntries().toString());
+		Map<String, BigDecimal> fullPrices = full.getEquityPriceUpdates().stream()
+				.collect(Collectors.toMap(EquityPriceUpdate::getEquityTicker, EquityPriceUpdate::getPrice));
+		Assertions.assertEquals(fullPrices, view.getEquityPrices());
+	}
+
+}
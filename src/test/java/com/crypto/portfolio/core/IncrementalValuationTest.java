@@ -0,0 +1,159 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.Equity;
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.api.Instrument;
+import com.crypto.portfolio.api.interfaces.Position;
+import com.crypto.portfolio.api.subscriber.EquityPriceUpdate;
+import com.crypto.portfolio.api.subscriber.PortfolioEntry;
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * we feed the incremental valuation with a sequence of ticks, verifying that only what changed is valued again
+ * and that the NAV is always the same as the one summed from scratch
+ */
+public class IncrementalValuationTest {
+
+	private static final LocalDateTime BEGIN_TS = LocalDateTime.of(2022,1,1,0,0);
+
+	private static final Equity APPLE = new Equity("AAPL", 0.4, 0.2);
+	private static final Equity TESLA = new Equity("TSLA", 0.2, 0.3);
+	private static final EuOption APPLE_C = new EuOption("AAPL-C", APPLE, new BigDecimal(100),
+			LocalDate.of(2023,1,1), EuOption.OptionType.CALL);
+	private static final EuOption TESLA_P = new EuOption("TSLA-P", TESLA, new BigDecimal(900),
+			LocalDate.of(2023,1,1), EuOption.OptionType.PUT);
+
+	private static final Map<String, Instrument> REFS = ImmutableMap.of(
+			APPLE.getTicker(), APPLE,
+			APPLE_C.getTicker(), APPLE_C,
+			TESLA_P.getTicker(), TESLA_P
+	);
+
+	private final InstrumentRegistry registry = new InstrumentRegistry();
+	private final IncrementalValuation valuation = new IncrementalValuation(this.registry);
+	private long sequence;
+	// like the service, the table and option ids are kept while the positions are the same list, and the prices
+	// are written in the same array
+	private List<Position> positions;
+	private PositionTable table;
+	private int[] optionIds;
+	private BigDecimal[] unitPrices = new BigDecimal[0];
+
+	@Test
+	public void onlyChangesAreValued(){
+		Position apple = new Position(BigInteger.valueOf(10), APPLE.getTicker());
+		Position appleC = new Position(BigInteger.valueOf(-5), APPLE_C.getTicker());
+		Position teslaP = new Position(BigInteger.valueOf(3), TESLA_P.getTicker());
+		List<Position> positions = ImmutableList.of(apple, appleC, teslaP);
+
+		PortfolioUpdate first = this.tick(positions, BEGIN_TS, "100", "900");
+		Assertions.assertEquals(2, this.valuation.getRepricedOptions());
+		Assertions.assertEquals(3, this.valuation.getRevaluedPositions());
+		assertNavIsConsistent(first);
+
+		// nothing moved: the very same entries are published again
+		PortfolioUpdate second = this.tick(positions, BEGIN_TS.plusSeconds(2), "100", "900");
+		Assertions.assertEquals(0, this.valuation.getRepricedOptions());
+		Assertions.assertEquals(0, this.valuation.getRevaluedPositions());
+		Assertions.assertEquals(first.getEntries(), second.getEntries());
+		List<PortfolioEntry> secondEntries = new ArrayList<>(second.getEntries());
+		Assertions.assertEquals(first.getTotalValue(), second.getTotalValue());
+
+		// only apple moved: its option only is priced again
+		PortfolioUpdate third = this.tick(positions, BEGIN_TS.plusSeconds(4), "101", "900");
+		Assertions.assertEquals(1, this.valuation.getRepricedOptions());
+		Assertions.assertEquals(2, this.valuation.getRevaluedPositions());
+		Assertions.assertSame(second.getEntries().get(2), third.getEntries().get(2));
+		// what was published before is left as it was
+		Assertions.assertEquals(secondEntries, second.getEntries());
+		Assertions.assertNotSame(second.getEntries().get(0), third.getEntries().get(0));
+		assertNavIsConsistent(third);
+
+		// a new day: all options are priced again
+		this.tick(positions, BEGIN_TS.plusDays(1), "101", "900");
+		Assertions.assertEquals(2, this.valuation.getRepricedOptions());
+	}
+
+	@Test
+	public void positionsChangeOrClose(){
+		Position apple = new Position(BigInteger.valueOf(10), APPLE.getTicker());
+		Position teslaP = new Position(BigInteger.valueOf(3), TESLA_P.getTicker());
+		assertNavIsConsistent(this.tick(ImmutableList.of(apple, teslaP), BEGIN_TS, "100", "900"));
+
+		// apple quantity changed, tesla option closed, apple option opened
+		Position apple2 = new Position(BigInteger.valueOf(20), APPLE.getTicker());
+		Position appleC = new Position(BigInteger.valueOf(-5), APPLE_C.getTicker());
+		PortfolioUpdate update = this.tick(ImmutableList.of(apple2, appleC), BEGIN_TS, "100", "900");
+		Assertions.assertEquals(2, this.valuation.getRevaluedPositions());
+		assertNavIsConsistent(update);
+
+		// the same ticker several times, even the same instance, is netted into one entry
+		update = this.tick(ImmutableList.of(apple2, apple, apple), BEGIN_TS, "100", "900");
+		Assertions.assertEquals(1, update.getEntries().size());
+		Assertions.assertEquals(BigInteger.valueOf(40), update.getEntries().get(0).getPosition().getPositionSize());
+		assertNavIsConsistent(update);
+		assertNavIsConsistent(this.tick(ImmutableList.of(apple2, apple), BEGIN_TS, "110", "900"));
+		assertNavIsConsistent(this.tick(ImmutableList.of(), BEGIN_TS, "110", "900"));
+
+		// the quote of an option not held anymore is forgotten: it's priced again when opened again
+		assertNavIsConsistent(this.tick(ImmutableList.of(teslaP), BEGIN_TS, "110", "900"));
+		Assertions.assertEquals(1, this.valuation.getRepricedOptions());
+	}
+
+
+	private PortfolioUpdate tick(List<Position> positions, LocalDateTime timestamp, String applePrice, String teslaPrice){
+		if (positions != this.positions) {
+			this.positions = positions;
+			this.table = new PositionTable(positions);
+			this.table.registerInstruments(this.registry, REFS);
+			this.optionIds = IntStream.range(0, this.table.size()).map(this.table::instrumentId)
+					.filter(id -> this.registry.instrument(id) instanceof EuOption).toArray();
+			if (this.unitPrices.length < this.registry.size())
+				this.unitPrices = new BigDecimal[this.registry.size()];
+		}
+		PositionTable table = this.table;
+		BigDecimal[] unitPrices = this.unitPrices;
+		List<EquityPriceUpdate> equityPriceUpdates = new ArrayList<>();
+		for (Equity equity : ImmutableList.of(APPLE, TESLA)) {
+			BigDecimal price = new BigDecimal(equity == APPLE ? applePrice : teslaPrice);
+			int id = this.registry.idOf(equity.getTicker());
+			if (id >= 0)
+				unitPrices[id] = price;
+			equityPriceUpdates.add(new EquityPriceUpdate(equity.getTicker(), price));
+		}
+		this.valuation.optionPrices(this.optionIds, unitPrices, timestamp.toLocalDate(),
+				(toReprice, count) -> {
+					// a fake pricer: a tenth of the underlying, plus the day of the month
+					for (int i = 0; i < count; i++)
+						unitPrices[toReprice[i]] = unitPrices[this.registry.underlyingId(toReprice[i])]
+								.movePointLeft(1).add(BigDecimal.valueOf(timestamp.getDayOfMonth()));
+				}
+		);
+		return this.valuation.buildPortfolioUpdate(table, unitPrices, equityPriceUpdates, timestamp, ++this.sequence);
+	}
+
+	private static void assertNavIsConsistent(PortfolioUpdate update){
+		BigDecimal nav = BigDecimal.ZERO;
+		for (PortfolioEntry entry : update.getEntries()) {
+			Assertions.assertEquals(0, entry.getValue().compareTo(
+					entry.getUnitValue().multiply(new BigDecimal(entry.getPosition().getPositionSize()))
+			));
+			nav = nav.add(entry.getValue());
+		}
+		Assertions.assertEquals(0, nav.compareTo(update.getTotalValue()));
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.Equity;
+import com.crypto.portfolio.api.EuOption;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * ids must be dense, stable, and link the options to their underlying
+ */
+public class InstrumentRegistryTest {
+
+	private static final Equity APPLE = new Equity("AAPL", 0.4, 0.2);
+	private static final EuOption APPLE_C = new EuOption("AAPL-C", APPLE, new BigDecimal(100),
+			LocalDate.of(2023,1,1), EuOption.OptionType.CALL);
+
+	@Test
+	public void denseIds(){
+		InstrumentRegistry registry = new InstrumentRegistry();
+		// the underlying is registered first
+		Assertions.assertEquals(1, registry.register(APPLE_C));
+		Assertions.assertEquals(0, registry.idOf("AAPL"));
+		Assertions.assertEquals(0, registry.underlyingId(1));
+		Assertions.assertEquals(-1, registry.underlyingId(0));
+		Assertions.assertEquals(-1, registry.idOf("TSLA"));
+		Assertions.assertSame(APPLE_C, registry.option(1));
+
+		for (int i = 0; i < 100; i++)
+			Assertions.assertEquals(2 + i, registry.register(new Equity("E"+i, 0.1, 0.1)));
+		Assertions.assertEquals(0, registry.register(APPLE));
+		Assertions.assertEquals(102, registry.size());
+		Assertions.assertEquals("E99", registry.ticker(101));
+
+		// new reference data for a known ticker keeps the id
+		Equity apple = new Equity("AAPL", 0.3, 0.2);
+		Assertions.assertEquals(0, registry.register(apple));
+		Assertions.assertSame(apple, registry.instrument(0));
+	}
+
+	@Test
+	public void equalityIncludesTheTicker(){
+		Equity tesla = new Equity("TSLA", 0.4, 0.2);
+		Assertions.assertNotEquals(APPLE, tesla);
+		Assertions.assertEquals(APPLE, new Equity("AAPL", 0.4, 0.2));
+		Assertions.assertEquals(APPLE.hashCode(), new Equity("AAPL", 0.4, 0.2).hashCode());
+		Assertions.assertNotEquals(APPLE, new Equity("AAPL", 0.3, 0.2));
+		Assertions.assertNotEquals(APPLE_C, new EuOption("AAPL-C2", APPLE, new BigDecimal(100),
+				LocalDate.of(2023,1,1), EuOption.OptionType.CALL));
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.interfaces.Position;
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * positions on the same ticker must end up in one row, and sizes beyond a long must be left out
+ */
+public class PositionTableTest {
+
+	@Test
+	public void netsByTicker(){
+		Position apple = new Position(BigInteger.valueOf(10), "AAPL");
+		Position tesla = new Position(BigInteger.valueOf(-3), "TSLA");
+		PositionTable table = new PositionTable(ImmutableList.of(
+				apple, tesla, new Position(BigInteger.valueOf(-4), "AAPL"), new Position(BigInteger.ONE, "AAPL")
+		));
+
+		Assertions.assertEquals(2, table.size());
+		Assertions.assertEquals(ImmutableList.of("AAPL", "TSLA"), table.tickers());
+		Assertions.assertEquals(7, table.quantity(0));
+		Assertions.assertEquals(new BigDecimal(7), table.decimalQuantity(0));
+		Assertions.assertSame(table.decimalQuantity(0), table.decimalQuantity(0));
+		Assertions.assertEquals(BigInteger.valueOf(7), table.position(0).getPositionSize());
+		Assertions.assertSame(table.position(0), table.position(0));
+		// alone on its ticker: the very same position is published
+		Assertions.assertSame(tesla, table.position(1));
+	}
+
+	@Test
+	public void leavesOutOverflows(){
+		Position huge = new Position(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE), "AAPL");
+		Position tesla = new Position(BigInteger.TEN, "TSLA");
+		PositionTable table = new PositionTable(ImmutableList.of(huge, tesla, new Position(BigInteger.ONE.negate(), "AAPL")));
+		Assertions.assertEquals(ImmutableList.of("TSLA"), table.tickers());
+		Assertions.assertSame(tesla, table.position(0));
+		Assertions.assertEquals(ImmutableList.of("AAPL"), table.oversizedTickers());
+
+		Position max = new Position(BigInteger.valueOf(Long.MAX_VALUE), "AAPL");
+		Position min = new Position(BigInteger.valueOf(Long.MIN_VALUE), "TSLA");
+		table = new PositionTable(ImmutableList.of(max, min, max, new Position(BigInteger.ONE.negate(), "TSLA")));
+		Assertions.assertEquals(0, table.size());
+		Assertions.assertEquals(ImmutableList.of("AAPL", "TSLA"), table.oversizedTickers());
+
+		table = new PositionTable(ImmutableList.of(max, new Position(BigInteger.ONE.negate(), "AAPL")));
+		Assertions.assertEquals(Long.MAX_VALUE - 1, table.quantity(0));
+		Assertions.assertTrue(table.oversizedTickers().isEmpty());
+	}
+
+}
@@ -6,11 +6,14 @@ import com.crypto.portfolio.api.Instrument;
 import com.crypto.portfolio.api.interfaces.MarketService;
 import com.crypto.portfolio.api.interfaces.OptionPriceService;
 import com.crypto.portfolio.api.interfaces.Position;
+import com.crypto.portfolio.api.interfaces.PositionSnapshot;
 import com.crypto.portfolio.api.interfaces.ReferenceDataService;
+import com.crypto.portfolio.api.interfaces.VersionedPositionService;
 import com.crypto.portfolio.api.subscriber.EquityPriceUpdate;
 import com.crypto.portfolio.api.subscriber.PortfolioEntry;
 import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
 import com.crypto.portfolio.api.subscriber.PortfolioUpdateSubscriberQueue;
+import com.crypto.portfolio.app.implementations.BlackScholesOptionPriceService;
 import com.crypto.portfolio.app.implementations.StaticPositionService;
 import com.crypto.portfolio.app.utils.OptionCalcUtils;
 import com.crypto.portfolio.app.utils.StandardisedDistributionSampler;
@@ -21,8 +24,13 @@ import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
@@ -99,6 +107,7 @@ public class ServiceHighLevelTest {
 
 		PortfolioUpdateSubscriberQueue id1 = service.addSubscriber("id1");
 		PortfolioUpdateSubscriberQueue id2 = service.addSubscriber("id1");
+		PortfolioUpdateSubscriberQueue id3 = service.addSubscriber("id3", PortfolioService.DeliveryPolicy.BROADCAST_RING);
 
 		service.startService(BEGIN_TS);
 
@@ -106,6 +115,8 @@ public class ServiceHighLevelTest {
 		PortfolioUpdate portfolioUpdate12 = id1.waitForNextUpdate();
 		PortfolioUpdate portfolioUpdate21 = id2.waitForNextUpdate();
 		PortfolioUpdate portfolioUpdate22 = id2.waitForNextUpdate();
+		PortfolioUpdate portfolioUpdate31 = id3.waitForNextUpdate();
+		PortfolioUpdate portfolioUpdate32 = id3.waitForNextUpdate();
 
 		service.kill();
 
@@ -113,6 +124,8 @@ public class ServiceHighLevelTest {
 		// are the same in-memory instance
 		Assertions.assertEquals(portfolioUpdate11, portfolioUpdate21);
 		Assertions.assertEquals(portfolioUpdate12, portfolioUpdate22);
+		Assertions.assertEquals(portfolioUpdate11, portfolioUpdate31);
+		Assertions.assertEquals(portfolioUpdate12, portfolioUpdate32);
 
 		// verify the instruments in the portfolio
 		Assertions.assertEquals(
@@ -139,4 +152,150 @@ public class ServiceHighLevelTest {
 
 	}
 
+	/**
+	 * pricing options across several threads must give exactly the same update as the sequential pricing
+	 */
+	@Test
+	public void testParallelPricing() throws InterruptedException {
+		List<Instrument> instruments = new ArrayList<>();
+		List<Position> positions = new ArrayList<>();
+		instruments.add(RKLB);
+		for (int strike = 1; strike <= 50; strike++) {
+			EuOption option = new EuOption("RKLB-" + strike + "-C", RKLB, new BigDecimal(strike),
+					LocalDate.of(2023, 1, 1), strike % 2 == 0 ? EuOption.OptionType.CALL : EuOption.OptionType.PUT);
+			instruments.add(option);
+			positions.add(new Position(BigInteger.valueOf(strike), option.getTicker()));
+		}
+
+		OptionPriceService singlePricer = (option, localDate, equityPrice) ->
+				OptionCalcUtils.priceOption(SAMPLER, option, equityPrice, localDate);
+		OptionPriceService batchPricer = new BlackScholesOptionPriceService(SAMPLER);
+
+		PortfolioUpdate sequential = firstUpdate(1, singlePricer, instruments, positions);
+		assertSamePrices(sequential, firstUpdate(4, singlePricer, instruments, positions));
+		// the batch pricing, whole book or in chunks, gives the same prices too
+		assertSamePrices(sequential, firstUpdate(1, batchPricer, instruments, positions));
+		assertSamePrices(sequential, firstUpdate(4, batchPricer, instruments, positions));
+	}
+
+	private static void assertSamePrices(PortfolioUpdate expected, PortfolioUpdate actual){
+		Assertions.assertEquals(0, expected.getTotalValue().compareTo(actual.getTotalValue()));
+		Map<String, BigDecimal> actualPrices = actual.getEntries().stream().collect(Collectors.toMap(
+				entry -> entry.getPosition().getTicker(), PortfolioEntry::getUnitValue
+		));
+		for (PortfolioEntry entry : expected.getEntries())
+			Assertions.assertEquals(entry.getUnitValue(), actualPrices.get(entry.getPosition().getTicker()));
+	}
+
+	private static PortfolioUpdate firstUpdate(
+			int parallelism,
+			OptionPriceService priceService,
+			List<Instrument> instruments,
+			List<Position> positions
+	) throws InterruptedException {
+		PortfolioService service = new PortfolioService(
+				2000, 30, 10, parallelism,
+				new StaticPositionService(positions),
+				priceService,
+				(ticker, timestamp) -> new BigDecimal(10),
+				ticker -> instruments.stream().filter(instrument -> instrument.getTicker().equals(ticker))
+						.findAny().orElseThrow(IllegalArgumentException::new)
+		);
+		PortfolioUpdateSubscriberQueue subscriber = service.addSubscriber("parallelism " + parallelism);
+		service.startService(BEGIN_TS);
+		PortfolioUpdate update = subscriber.waitForNextUpdate();
+		service.kill();
+		return update;
+	}
+
+	/**
+	 * in backtest mode the service doesn't sleep between updates, and waits for slow subscribers
+	 * instead of dropping updates
+	 */
+	@Test
+	public void testBacktest() throws InterruptedException {
+		final LocalDateTime END_TS = BEGIN_TS.plusHours(1);
+		final long EXPECTED_TICKS = 3600 / 2 + 1;
+
+		PortfolioService service = new PortfolioService(
+				2000,
+				// the real interval only drives how often a blocked service logs about full queues
+				30,
+				2,
+				new StaticPositionService(ImmutableList.of(new Position(BigInteger.TEN, APPLE.getTicker()))),
+				(option, localDate, equityPrice) -> { throw new IllegalStateException("no options here"); },
+				(ticker, timestamp) -> new BigDecimal(timestamp.getMinute()),
+				ticker -> APPLE
+		);
+		PortfolioUpdateSubscriberQueue subscriber = service.addSubscriber("slow");
+
+		// the consumer only collects: assertions run on this thread, once it's joined
+		List<LocalDateTime> timestamps = new ArrayList<>();
+		AtomicReference<Throwable> consumerFailure = new AtomicReference<>();
+		Thread consumer = new Thread(() -> {
+			try {
+				while (timestamps.size() < EXPECTED_TICKS) {
+					timestamps.add(subscriber.waitForNextUpdate().getTimestamp());
+					if (timestamps.size() % 500 == 0)
+						Thread.sleep(50);
+				}
+			} catch (Throwable e) {
+				consumerFailure.set(e);
+			}
+		});
+		consumer.start();
+
+		// a consumer which stopped draining would block the backtest forever
+		BacktestReport report;
+		try {
+			report = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(60),
+					() -> service.runBacktest(BEGIN_TS, END_TS));
+		} finally {
+			consumer.join(10000);
+			consumer.interrupt();
+		}
+
+		Assertions.assertNull(consumerFailure.get());
+		Assertions.assertEquals(EXPECTED_TICKS, report.getTicks());
+		Assertions.assertEquals(EXPECTED_TICKS, timestamps.size());
+		for (int i = 0; i < timestamps.size(); i++)
+			Assertions.assertEquals(BEGIN_TS.plusSeconds(2L * i), timestamps.get(i));
+		Assertions.assertTrue(report.getTicksPerSecond() > 0);
+		// static positions are a single version, only derived once
+		Assertions.assertEquals(1, service.getDerivedPositionVersions());
+	}
+
+	@Test
+	public void testVersionedPositions() throws InterruptedException {
+		final LocalDateTime SWITCH_TS = BEGIN_TS.plusMinutes(1);
+		PositionSnapshot before = new PositionSnapshot(1, ImmutableList.of(new Position(BigInteger.TEN, APPLE.getTicker())));
+		PositionSnapshot after = new PositionSnapshot(2, ImmutableList.of(
+				new Position(BigInteger.ONE, APPLE.getTicker()),
+				new Position(BigInteger.ONE, TESLA.getTicker())
+		));
+
+		PortfolioService service = new PortfolioService(
+				2000,
+				30,
+				100,
+				(VersionedPositionService) timestamp -> timestamp.isBefore(SWITCH_TS) ? before : after,
+				(option, localDate, equityPrice) -> { throw new IllegalStateException("no options here"); },
+				(ticker, timestamp) -> BigDecimal.TEN,
+				ticker -> ticker.equals(APPLE.getTicker()) ? APPLE : TESLA
+		);
+		PortfolioUpdateSubscriberQueue subscriber = service.addSubscriber("all");
+
+		BacktestReport report = service.runBacktest(BEGIN_TS, BEGIN_TS.plusMinutes(2));
+		Assertions.assertEquals(61, report.getTicks());
+		// the positions were derived once per version, not at each update
+		Assertions.assertEquals(2, service.getDerivedPositionVersions());
+
+		List<PortfolioUpdate> updates = new ArrayList<>();
+		for (int i = 0; i < 61; i++)
+			updates.add(subscriber.waitForNextUpdate());
+		Assertions.assertEquals(0, new BigDecimal(100).compareTo(updates.get(29).getTotalValue()));
+		Assertions.assertEquals(0, new BigDecimal(20).compareTo(updates.get(30).getTotalValue()));
+		Assertions.assertEquals(2, updates.get(30).getEntries().size());
+	}
+
 }
@@ -0,0 +1,89 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.interfaces.Position;
+import com.crypto.portfolio.api.subscriber.EquityPriceUpdate;
+import com.crypto.portfolio.api.subscriber.PortfolioEntry;
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+import com.crypto.portfolio.api.subscriber.PortfolioUpdateSubscriberQueue;
+import com.crypto.portfolio.api.subscriber.SubscriptionSpec;
+import com.crypto.portfolio.core.PortfolioService.DeliveryPolicy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+/**
+ * what the registry keeps per spec must go away with the last subscriber of the spec
+ */
+public class SubscriberRegistryTest {
+
+	private static final LocalDateTime BEGIN_TS = LocalDateTime.of(2022,1,1,0,0);
+
+	private long sequence;
+
+	@Test
+	public void ringsLiveAsLongAsTheirReaders() throws InterruptedException {
+		SubscriberRegistry registry = new SubscriberRegistry(8);
+		PortfolioUpdateSubscriberQueue first = registry.add("first", SubscriptionSpec.all(), DeliveryPolicy.BROADCAST_RING);
+		PortfolioUpdateSubscriberQueue second = registry.add("second", SubscriptionSpec.all(), DeliveryPolicy.BROADCAST_RING);
+		registry.add("nav", SubscriptionSpec.navOnly(), DeliveryPolicy.BROADCAST_RING);
+		Assertions.assertEquals(2, registry.getBroadcastRingCount());
+
+		registry.publish(this.update(), ticker -> null);
+		Assertions.assertEquals(1, first.waitForNextUpdate().getSequence());
+
+		Assertions.assertTrue(registry.remove(first));
+		Assertions.assertEquals(2, registry.getBroadcastRingCount());
+		Assertions.assertTrue(registry.remove(second));
+		Assertions.assertFalse(registry.remove(second));
+		Assertions.assertEquals(1, registry.getBroadcastRingCount());
+
+		// a new reader gets a new ring, and the updates from now on
+		registry.publish(this.update(), ticker -> null);
+		PortfolioUpdateSubscriberQueue third = registry.add("third", SubscriptionSpec.all(), DeliveryPolicy.BROADCAST_RING);
+		Assertions.assertEquals(2, registry.getBroadcastRingCount());
+		registry.publish(this.update(), ticker -> null);
+		Assertions.assertEquals(3, third.waitForNextUpdate().getSequence());
+	}
+
+	@Test
+	public void deltaEncodersLiveAsLongAsTheirSubscribers() throws InterruptedException {
+		SubscriberRegistry registry = new SubscriberRegistry(8);
+		SubscriptionSpec deltas = SubscriptionSpec.all().withDeltas(100);
+		PortfolioUpdateSubscriberQueue queue = registry.add("queue", deltas, DeliveryPolicy.BOUNDED_QUEUE);
+		PortfolioUpdateSubscriberQueue ring = registry.add("ring", deltas, DeliveryPolicy.BROADCAST_RING);
+		Assertions.assertEquals(1, registry.getDeltaEncoderCount());
+
+		registry.publish(this.update(), ticker -> null);
+		registry.publish(this.update(), ticker -> null);
+		Assertions.assertTrue(queue.waitForNextUpdate().isSnapshot());
+		Assertions.assertFalse(queue.waitForNextUpdate().isSnapshot());
+
+		Assertions.assertTrue(registry.remove(queue));
+		Assertions.assertEquals(1, registry.getDeltaEncoderCount());
+		Assertions.assertTrue(registry.remove(ring));
+		Assertions.assertEquals(0, registry.getDeltaEncoderCount());
+
+		// a new subscriber starts from a new encoder, with a snapshot
+		registry.publish(this.update(), ticker -> null);
+		PortfolioUpdateSubscriberQueue later = registry.add("later", deltas, DeliveryPolicy.BOUNDED_QUEUE);
+		Assertions.assertEquals(1, registry.getDeltaEncoderCount());
+		registry.publish(this.update(), ticker -> null);
+		registry.publish(this.update(), ticker -> null);
+		PortfolioUpdate snapshot = later.waitForNextUpdate();
+		Assertions.assertTrue(snapshot.isSnapshot());
+		Assertions.assertEquals(4, snapshot.getSequence());
+		Assertions.assertFalse(later.waitForNextUpdate().isSnapshot());
+	}
+
+	private PortfolioUpdate update(){
+		BigDecimal price = BigDecimal.valueOf(100 + this.sequence);
+		return new PortfolioUpdate(BEGIN_TS.plusSeconds(this.sequence),
+				Collections.singletonList(new PortfolioEntry(new Position(BigInteger.ONE, "AAPL"), price, price)),
+				Collections.singletonList(new EquityPriceUpdate("AAPL", price)), price, ++this.sequence, true);
+	}
+
+}
@@ -0,0 +1,65 @@
+package com.crypto.portfolio.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * timing based tests: margins are wide, so that a busy machine doesn't make them fail
+ */
+public class TickSchedulerTest {
+
+	/**
+	 * the time spent computing is absorbed by the period, rather than added to it
+	 */
+	@Test
+	public void noDrift() throws InterruptedException {
+		final long PERIOD = 100;
+		final int TICKS = 10;
+		TickScheduler scheduler = new TickScheduler(PERIOD, PortfolioService.OverrunPolicy.SKIP);
+
+		long start = System.nanoTime();
+		scheduler.start();
+		for (int i = 0; i < TICKS; i++) {
+			Thread.sleep(PERIOD / 5); // the "computation", leaving most of the period to absorb hiccups
+			Assertions.assertEquals(1, scheduler.awaitNextTick());
+		}
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		// sleeping after the computation would take 1200 millis
+		Assertions.assertTrue(elapsedMillis >= PERIOD * TICKS);
+		Assertions.assertTrue(elapsedMillis < PERIOD * TICKS + PERIOD * 3, "elapsed " + elapsedMillis);
+		Assertions.assertEquals(0, scheduler.statistics().getOverruns());
+		Assertions.assertEquals(TICKS + 1, scheduler.statistics().getTicks());
+	}
+
+	@Test
+	public void overrunSkip() throws InterruptedException {
+		TickScheduler scheduler = new TickScheduler(100, PortfolioService.OverrunPolicy.SKIP);
+		scheduler.start();
+		Thread.sleep(250);
+		// ticks 1 and 2 were missed, we wait for tick 3
+		Assertions.assertEquals(3, scheduler.awaitNextTick());
+
+		TickStatistics statistics = scheduler.statistics();
+		Assertions.assertEquals(1, statistics.getOverruns());
+		Assertions.assertEquals(2, statistics.getMissedTicks());
+	}
+
+	@Test
+	public void overrunCoalesce() throws InterruptedException {
+		TickScheduler scheduler = new TickScheduler(100, PortfolioService.OverrunPolicy.COALESCE);
+		scheduler.start();
+		Thread.sleep(250);
+		// tick 1 is merged into tick 2, which runs straight away and about 50 millis late
+		Assertions.assertEquals(2, scheduler.awaitNextTick());
+
+		TickStatistics statistics = scheduler.statistics();
+		Assertions.assertEquals(1, statistics.getOverruns());
+		Assertions.assertEquals(1, statistics.getMissedTicks());
+		Assertions.assertTrue(statistics.getLastLatenessMicros() >= TimeUnit.MILLISECONDS.toMicros(50));
+		Assertions.assertEquals(statistics.getLastLatenessMicros(), statistics.getMaxLatenessMicros());
+	}
+
+}
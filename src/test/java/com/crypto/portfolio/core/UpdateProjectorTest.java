@@ -0,0 +1,111 @@
+package com.crypto.portfolio.core;
+
+import com.crypto.portfolio.api.Equity;
+import com.crypto.portfolio.api.EuOption;
+import com.crypto.portfolio.api.Instrument;
+import com.crypto.portfolio.api.interfaces.Position;
+import com.crypto.portfolio.api.subscriber.EquityPriceUpdate;
+import com.crypto.portfolio.api.subscriber.PortfolioEntry;
+import com.crypto.portfolio.api.subscriber.PortfolioUpdate;
+import com.crypto.portfolio.api.subscriber.SubscriptionSpec;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class UpdateProjectorTest {
+
+	private static final Equity APPLE = new Equity("AAPL", 0.4, 0.2);
+	private static final Equity TESLA = new Equity("TSLA", 0.2, 0.3);
+	private static final EuOption APPLE_C = new EuOption("AAPL-C", APPLE, new BigDecimal(100),
+			LocalDate.of(2023,1,1), EuOption.OptionType.CALL);
+
+	private static final Map<String, Instrument> REFS = ImmutableMap.of(
+			APPLE.getTicker(), APPLE,
+			TESLA.getTicker(), TESLA,
+			APPLE_C.getTicker(), APPLE_C
+	);
+
+	private static final PortfolioUpdate FULL_UPDATE = new PortfolioUpdate(
+			LocalDateTime.of(2022,1,1,0,0),
+			ImmutableList.of(
+					entry(APPLE, 10, "100"),
+					entry(APPLE_C, -5, "7"),
+					entry(TESLA, 2, "900")
+			),
+			ImmutableList.of(
+					new EquityPriceUpdate(APPLE.getTicker(), new BigDecimal("100")),
+					new EquityPriceUpdate(TESLA.getTicker(), new BigDecimal("900"))
+			),
+			new BigDecimal("2765")
+	);
+
+	private final UpdateProjector projector = new UpdateProjector(FULL_UPDATE, REFS::get, Collections.emptyMap());
+
+	@Test
+	public void allIsTheFullUpdate(){
+		Assertions.assertSame(FULL_UPDATE, this.projector.project(SubscriptionSpec.all()));
+	}
+
+	@Test
+	public void filterByUnderlying(){
+		SubscriptionSpec spec = SubscriptionSpec.all().withUnderlyings(ImmutableSet.of(APPLE.getTicker()));
+		PortfolioUpdate update = this.projector.project(spec);
+
+		Assertions.assertEquals(ImmutableSet.of(APPLE.getTicker(), APPLE_C.getTicker()), tickers(update));
+		Assertions.assertEquals(ImmutableList.of(APPLE.getTicker()), update.getEquityPriceUpdates().stream()
+				.map(EquityPriceUpdate::getEquityTicker).collect(Collectors.toList()));
+		Assertions.assertEquals(0, new BigDecimal("965").compareTo(update.getTotalValue()));
+
+		// the same spec is projected once
+		Assertions.assertSame(update, this.projector.project(
+				SubscriptionSpec.all().withUnderlyings(ImmutableSet.of(APPLE.getTicker()))
+		));
+	}
+
+	@Test
+	public void filterByTickerEntriesOnly(){
+		PortfolioUpdate update = this.projector.project(SubscriptionSpec.all()
+				.withTickers(ImmutableSet.of(TESLA.getTicker()))
+				.withContent(SubscriptionSpec.Content.ENTRIES_ONLY));
+
+		Assertions.assertEquals(ImmutableSet.of(TESLA.getTicker()), tickers(update));
+		Assertions.assertTrue(update.getEquityPriceUpdates().isEmpty());
+		Assertions.assertEquals(0, new BigDecimal("1800").compareTo(update.getTotalValue()));
+	}
+
+	@Test
+	public void navOnly(){
+		PortfolioUpdate update = this.projector.project(SubscriptionSpec.navOnly());
+		Assertions.assertTrue(update.getEntries().isEmpty());
+		Assertions.assertTrue(update.getEquityPriceUpdates().isEmpty());
+		Assertions.assertEquals(FULL_UPDATE.getTotalValue(), update.getTotalValue());
+		Assertions.assertEquals(FULL_UPDATE.getTimestamp(), update.getTimestamp());
+	}
+
+	@Test
+	public void deltasWithoutEncoderAreSkipped(){
+		// its subscribers left, or came, while the update was published
+		Assertions.assertNull(this.projector.project(SubscriptionSpec.all().withDeltas(10)));
+	}
+
+	private static PortfolioEntry entry(Instrument instrument, int quantity, String price){
+		BigDecimal unitValue = new BigDecimal(price);
+		return new PortfolioEntry(new Position(BigInteger.valueOf(quantity), instrument.getTicker()),
+				unitValue, unitValue.multiply(BigDecimal.valueOf(quantity)));
+	}
+
+	private static Object tickers(PortfolioUpdate update){
+		return update.getEntries().stream().map(entry -> entry.getPosition().getTicker()).collect(Collectors.toSet());
+	}
+
+}